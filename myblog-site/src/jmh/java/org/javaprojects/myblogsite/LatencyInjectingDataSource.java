@@ -0,0 +1,59 @@
+package org.javaprojects.myblogsite;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * DataSource that delays every statement execution by a fixed latency, so an in-memory H2 behaves like
+ * a database behind a network hop. The delay happens while the pooled connection is held.
+ */
+public class LatencyInjectingDataSource extends DelegatingDataSource {
+    private final Duration latency;
+
+    public LatencyInjectingDataSource(DataSource targetDataSource, Duration latency) {
+        super(targetDataSource);
+        this.latency = latency;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(Connection.class, super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(Connection.class, super.getConnection(username, password));
+    }
+
+    private <T> T wrap(Class<T> type, Object target) {
+        Object proxy = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (instance, method, args) -> {
+                    String name = method.getName();
+                    if (type != Connection.class && name.startsWith("execute")) {
+                        Thread.sleep(latency.toMillis());
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    return switch (name) {
+                        case "createStatement" -> wrap(Statement.class, result);
+                        case "prepareStatement" -> wrap(PreparedStatement.class, result);
+                        case "prepareCall" -> wrap(CallableStatement.class, result);
+                        default -> result;
+                    };
+                });
+        return type.cast(proxy);
+    }
+}
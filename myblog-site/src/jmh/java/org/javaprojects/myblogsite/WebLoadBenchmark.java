@@ -0,0 +1,131 @@
+package org.javaprojects.myblogsite;
+
+import org.javaprojects.myblogsite.services.PostCountsService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the feed and post pages with platform and virtual request threads while every SQL statement
+ * takes {@code dbLatencyMillis} to execute.
+ * <p>
+ * The connection pool is bigger than the Tomcat thread pool here, so with platform threads the throughput
+ * is capped by request threads blocked on the database, with virtual threads it is capped by the pool only.
+ * The posts cache is disabled, so every request reaches the database.
+ * </p>
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=WebLoadBenchmark -PjmhProfilers=}, the empty list of profilers turns
+ * off the gc profiler that is not useful for this test.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(256)
+public class WebLoadBenchmark {
+    private static final int POSTS = 1000;
+    private static final int TOMCAT_THREADS = 50;
+    private static final int DB_POOL_SIZE = 100;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"10"})
+    public int dbLatencyMillis;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private URI baseUri;
+    private Path uploadDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        uploadDirectory = Files.createTempDirectory("myblog-load-test");
+        context = new SpringApplicationBuilder(MyblogSiteApplication.class, SlowDatabaseConfiguration.class)
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.datasource.hikari.maximum-pool-size=" + DB_POOL_SIZE,
+                        "spring.cache.type=none",
+                        "logging.level.root=WARN",
+                        "application.images.upload-directory-location-path=" + uploadDirectory.toUri(),
+                        "benchmark.db-latency-millis=" + dbLatencyMillis)
+                .run();
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("""
+                INSERT INTO posts (title, description, content, image_url, created_at) \
+                SELECT 'Title ' || x, 'Description ' || x, 'Content ' || x, '/images/default_image.jpg', \
+                  DATEADD(SECOND, x, CURRENT_TIMESTAMP) \
+                FROM SYSTEM_RANGE(1, ?)""", POSTS);
+        jdbcTemplate.update("INSERT INTO post_stats (post_id) "
+                + "SELECT id FROM posts WHERE id NOT IN (SELECT post_id FROM post_stats)");
+        context.getBean(PostCountsService.class).reconcile();
+        httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        httpClient.close();
+        FileSystemUtils.deleteRecursively(uploadDirectory.toFile());
+    }
+
+    @Benchmark
+    public int feed() throws Exception {
+        return get("/posts?limit=10");
+    }
+
+    @Benchmark
+    public int post() throws Exception {
+        return get("/posts/" + ThreadLocalRandom.current().nextInt(1, POSTS + 1));
+    }
+
+    private int get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path)).GET().build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + path + " returned " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class SlowDatabaseConfiguration {
+        @Bean
+        static BeanPostProcessor latencyInjectingDataSourcePostProcessor(Environment environment) {
+            long latencyMillis = environment.getProperty("benchmark.db-latency-millis", Long.class, 0L);
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && !(bean instanceof LatencyInjectingDataSource)) {
+                        return new LatencyInjectingDataSource(dataSource, Duration.ofMillis(latencyMillis));
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.javaprojects.myblogsite.dto;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the regular expression splitting of tag lists that was used before with {@link TagCodec}.
+ * {@code gc.alloc.rate.norm} of the gc profiler shows bytes allocated per operation.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=TagCodecBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagCodecBenchmark {
+    @Param({"java", "java, spring, jdbc, h2, caffeine", "java|spring  jdbc,h2"})
+    public String tags;
+
+    @Benchmark
+    public Set<String> parseRegex() {
+        return Set.of(tags.split("[,| ]\\s*"));
+    }
+
+    @Benchmark
+    public Set<String> parseCodec() {
+        return TagCodec.parse(tags);
+    }
+
+    @Benchmark
+    public String normalizeRegex() {
+        return String.join(", ", Set.of(tags.split("[,| ]\\s*")));
+    }
+
+    @Benchmark
+    public String normalizeCodec() {
+        return TagCodec.normalize(tags);
+    }
+}
@@ -0,0 +1,70 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Creates an in-memory H2 database with the application schema and fills it with generated posts.
+ * <p>
+ * Rows are generated by set-based {@code INSERT ... SELECT} statements over {@code SYSTEM_RANGE}, so even
+ * a million posts are seeded in seconds. Posts are one second apart, every post has
+ * {@code commentsPerPost} comments, {@code tagsPerPost} tags out of {@code distinctTags} and
+ * {@code id % 100} likes. The {@code post_stats} read model is rebuilt at the end.
+ * </p>
+ */
+public final class BlogDataSeeder {
+    public static final LocalDateTime FIRST_POST_CREATED_AT = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private BlogDataSeeder() {
+    }
+
+    /**
+     * @param posts           number of posts
+     * @param commentsPerPost number of comments of every post
+     * @param tagsPerPost     number of tags of every post, must not exceed {@code distinctTags}
+     * @param distinctTags    number of distinct tag names, they are named {@code tag0 .. tagN}
+     * @return seeded database, it has to be shut down by the caller
+     */
+    public static EmbeddedDatabase seed(int posts, int commentsPerPost, int tagsPerPost, int distinctTags) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("db/schema.sql")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("""
+                INSERT INTO posts (title, description, content, image_url, created_at) \
+                SELECT 'Title ' || x, 'Description ' || x, 'Content of the post ' || x, '/images/default_image.jpg', \
+                  DATEADD(SECOND, x, CAST(? AS TIMESTAMP)) \
+                FROM SYSTEM_RANGE(1, ?)""", FIRST_POST_CREATED_AT, posts);
+        if (commentsPerPost > 0) {
+            jdbcTemplate.update("""
+                    INSERT INTO comments (content, post_id, created_at) \
+                    SELECT 'Comment ' || c.x, p.id, DATEADD(SECOND, c.x, p.created_at) \
+                    FROM posts AS p, SYSTEM_RANGE(1, ?) AS c""", commentsPerPost);
+        }
+        jdbcTemplate.update("INSERT INTO likes (post_id, likes_count) SELECT id, MOD(id, 100) FROM posts");
+        if (tagsPerPost > 0) {
+            jdbcTemplate.update("INSERT INTO tag (name) SELECT 'tag' || x FROM SYSTEM_RANGE(0, ?)", distinctTags - 1);
+            jdbcTemplate.update("""
+                    INSERT INTO post_tag (post_id, tag_id) \
+                    SELECT p.id, t.id \
+                    FROM posts AS p, SYSTEM_RANGE(0, ?) AS k, tag AS t \
+                    WHERE t.name = 'tag' || MOD(p.id + k.x, ?)""", tagsPerPost - 1, distinctTags);
+        }
+        new JdbcPostRepository(database).rebuildPostStats();
+        return database;
+    }
+
+    /**
+     * @param database seeded database
+     * @return repository that works with the database
+     */
+    public static PostRepository repository(EmbeddedDatabase database) {
+        return new JdbcPostRepository(database);
+    }
+}
@@ -0,0 +1,79 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.javaprojects.myblogsite.models.Post;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inserting posts one by one, as the post form does, with the batched {@link PostRepository#saveAll(List)}
+ * and {@link PostRepository#insertTags(Map)} of the bulk import. Every invocation inserts a chunk of posts with
+ * three tags each, so the score is posts per second.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=BulkInsertBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@OperationsPerInvocation(BulkInsertBenchmark.CHUNK_SIZE)
+public class BulkInsertBenchmark {
+    static final int CHUNK_SIZE = 1000;
+    private static final int DISTINCT_TAGS = 200;
+
+    private EmbeddedDatabase database;
+    private PostRepository repository;
+    private TransactionTemplate transactionTemplate;
+    private List<Post> posts;
+    private List<Set<String>> tags;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BlogDataSeeder.seed(0, 0, 0, 0);
+        repository = BlogDataSeeder.repository(database);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        posts = new ArrayList<>(CHUNK_SIZE);
+        tags = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            posts.add(new Post(null, "Title " + i, "Description " + i, "Content of the post " + i,
+                    "/images/default_image.jpg", BlogDataSeeder.FIRST_POST_CREATED_AT.plusSeconds(i)));
+            tags.add(Set.of("tag" + i % DISTINCT_TAGS, "tag" + (i + 1) % DISTINCT_TAGS, "tag" + (i + 2) % DISTINCT_TAGS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public void onePostAtATime() {
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            long id = repository.save(posts.get(i));
+            repository.insertTags(tags.get(i), id);
+        }
+    }
+
+    @Benchmark
+    public void batchedChunk() {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> ids = repository.saveAll(posts);
+            Map<Long, Set<String>> tagsByPostId = new HashMap<>(CHUNK_SIZE * 2);
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                tagsByPostId.put(ids.get(i), tags.get(i));
+            }
+            repository.insertTags(tagsByPostId);
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.PageCursor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares OFFSET pagination of the feed with keyset pagination at different page depths.
+ * The latency of {@code offset} grows with the page number while {@code keyset} stays flat.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=FeedPaginationBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedPaginationBenchmark {
+    private static final int PAGE_SIZE = 10;
+    private static final int TOTAL_POSTS = 60_000;
+
+    @Param({"1", "100", "1000", "5000"})
+    public int page;
+
+    private EmbeddedDatabase database;
+    private PostRepository repository;
+    private PageCursor cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BlogDataSeeder.seed(TOTAL_POSTS, 0, 0, 0);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        repository = BlogDataSeeder.repository(database);
+        // the cursor points to the last row of the previous page, exactly what the feed would hand to the client
+        cursor = page == 1 ? null : jdbcTemplate.queryForObject("""
+                        SELECT created_at, id FROM posts ORDER BY created_at DESC, id DESC \
+                        OFFSET ? ROWS FETCH FIRST 1 ROW ONLY""",
+                (rs, rowNum) -> PageCursor.next(rs.getObject(1, LocalDateTime.class), rs.getLong(2)),
+                (page - 1) * PAGE_SIZE - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<FeedPostDto> offset() {
+        return repository.findAllPosts((page - 1) * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<FeedPostDto> keyset() {
+        return repository.findPostsPage(cursor, PAGE_SIZE);
+    }
+}
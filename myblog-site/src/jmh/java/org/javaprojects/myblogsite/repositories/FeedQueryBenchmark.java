@@ -0,0 +1,72 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the feed query with per-row correlated subqueries (comments count, likes, tags) with the
+ * current feed query that reads ready statistics from the {@code post_stats} read model.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=FeedQueryBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedQueryBenchmark {
+    private static final int TOTAL_POSTS = 100_000;
+    private static final String CORRELATED_FEED_SQL = """
+            SELECT p.id, p.title, p.description, p.image_url, p.created_at, \
+              (SELECT count(*) FROM comments WHERE post_id = p.id) AS commentsCount, \
+              (SELECT likes_count FROM likes WHERE post_id = p.id) AS likesCount, \
+              (SELECT GROUP_CONCAT(t.name SEPARATOR ',') FROM post_tag AS pt JOIN tag AS t ON t.id = pt.tag_id \
+               WHERE pt.post_id = p.id) AS tags \
+            FROM posts AS p \
+            ORDER BY created_at DESC \
+            OFFSET ? FETCH FIRST ? ROWS ONLY""";
+
+    @Param({"10", "50"})
+    public int pageSize;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private PostRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BlogDataSeeder.seed(TOTAL_POSTS, 2, 2, 20);
+        jdbcTemplate = new JdbcTemplate(database);
+        repository = BlogDataSeeder.repository(database);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<FeedPostDto> correlatedSubqueries() {
+        return jdbcTemplate.query(CORRELATED_FEED_SQL, (rs, rowNum) -> FeedPostDto.builder()
+                .setId(rs.getLong("id"))
+                .setTitle(rs.getString("title"))
+                .setImageUrl(rs.getString("image_url"))
+                .setDescription(rs.getString("description"))
+                .setCommentsCount(rs.getLong("commentsCount"))
+                .setLikesCount(rs.getLong("likesCount"))
+                .setTags(rs.getString("tags"))
+                .create(), 0, pageSize);
+    }
+
+    @Benchmark
+    public List<FeedPostDto> postStatsReadModel() {
+        return repository.findAllPosts(0, pageSize);
+    }
+}
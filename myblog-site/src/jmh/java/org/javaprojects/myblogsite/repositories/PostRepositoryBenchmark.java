@@ -0,0 +1,95 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.h2.tools.SimpleResultSet;
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.models.Post;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hot read paths of {@link JdbcPostRepository} on databases of different sizes.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=PostRepositoryBenchmark}, the number of posts can be narrowed with
+ * {@code -PjmhPosts=1000,100000}. The {@code gc} profiler reports the allocation rate next to the throughput.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PostRepositoryBenchmark {
+    private static final int PAGE_SIZE = 10;
+    private static final int DISTINCT_TAGS = 50;
+
+    @Param({"1000", "100000", "1000000"})
+    public int posts;
+
+    @Param({"3"})
+    public int commentsPerPost;
+
+    @Param({"3"})
+    public int tagsPerPost;
+
+    private EmbeddedDatabase database;
+    private PostRepository repository;
+    private SimpleResultSet feedRow;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BlogDataSeeder.seed(posts, commentsPerPost, tagsPerPost, DISTINCT_TAGS);
+        repository = BlogDataSeeder.repository(database);
+        feedRow = new SimpleResultSet();
+        // the row can be read again and again only when the result set is not closed after the last row
+        feedRow.setAutoClose(false);
+        feedRow.addColumn("id", Types.BIGINT, 19, 0);
+        feedRow.addColumn("title", Types.VARCHAR, 256, 0);
+        feedRow.addColumn("description", Types.VARCHAR, 256, 0);
+        feedRow.addColumn("image_url", Types.VARCHAR, 256, 0);
+        feedRow.addColumn("created_at", Types.TIMESTAMP, 26, 6);
+        feedRow.addColumn("comment_count", Types.BIGINT, 19, 0);
+        feedRow.addColumn("like_count", Types.BIGINT, 19, 0);
+        feedRow.addColumn("tags", Types.VARCHAR, 4096, 0);
+        feedRow.addRow(1L, "Title 1", "Description 1", "/images/default_image.jpg",
+                BlogDataSeeder.FIRST_POST_CREATED_AT, 3L, 1L, "tag1, tag2, tag3");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<FeedPostDto> findAllPosts() {
+        return repository.findAllPosts(0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<FeedPostDto> findPostsByTag() {
+        return repository.findPostsByTag("tag" + ThreadLocalRandom.current().nextInt(DISTINCT_TAGS), 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Optional<Post> findPostById() {
+        return repository.findPostById(randomPostId());
+    }
+
+    @Benchmark
+    public FeedPostDto mapFeedRow() throws SQLException {
+        feedRow.beforeFirst();
+        feedRow.next();
+        return FeedPostRowMapper.INSTANCE.mapRow(feedRow, 0);
+    }
+
+    private long randomPostId() {
+        return ThreadLocalRandom.current().nextLong(1, posts + 1);
+    }
+}
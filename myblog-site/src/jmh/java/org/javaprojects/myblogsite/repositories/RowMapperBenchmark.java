@@ -0,0 +1,133 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.h2.tools.SimpleResultSet;
+import org.javaprojects.myblogsite.dto.CommentDto;
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.models.Post;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SimplePropertyRowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflection-based and label-based row mapping that was used before with the positional
+ * singleton mappers. Every invocation maps a page of {@value #ROWS} rows with a new reflective mapper,
+ * as a query did, so the score is rows per second and {@code gc.alloc.rate.norm} is bytes allocated per row.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=RowMapperBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(RowMapperBenchmark.ROWS)
+public class RowMapperBenchmark {
+    static final int ROWS = 50;
+
+    // the feed mapper that looked columns up by their labels
+    private static final RowMapper<FeedPostDto> FEED_BY_LABEL = (rs, rowNum) -> {
+        String tags = rs.getString("tags");
+        return FeedPostDto.builder()
+                .setId(rs.getLong("id"))
+                .setTitle(rs.getString("title"))
+                .setImageUrl(rs.getString("image_url"))
+                .setDescription(rs.getString("description"))
+                .setCommentsCount(rs.getLong("comment_count"))
+                .setLikesCount(rs.getLong("like_count"))
+                .setTags(tags != null ? tags : "")
+                .setCreatedAt(rs.getObject("created_at", LocalDateTime.class))
+                .create();
+    };
+
+    private SimpleResultSet postRows;
+    private SimpleResultSet commentRows;
+    private SimpleResultSet feedRows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LocalDateTime createdAt = LocalDateTime.of(2025, 1, 1, 0, 0);
+        postRows = resultSet();
+        postRows.addColumn("id", Types.BIGINT, 19, 0);
+        postRows.addColumn("title", Types.VARCHAR, 256, 0);
+        postRows.addColumn("description", Types.VARCHAR, 256, 0);
+        postRows.addColumn("content", Types.VARCHAR, Integer.MAX_VALUE, 0);
+        postRows.addColumn("image_url", Types.VARCHAR, 256, 0);
+        postRows.addColumn("created_at", Types.TIMESTAMP, 26, 6);
+        commentRows = resultSet();
+        commentRows.addColumn("id", Types.BIGINT, 19, 0);
+        commentRows.addColumn("post_id", Types.BIGINT, 19, 0);
+        commentRows.addColumn("content", Types.VARCHAR, Integer.MAX_VALUE, 0);
+        commentRows.addColumn("created_at", Types.TIMESTAMP, 26, 6);
+        feedRows = resultSet();
+        feedRows.addColumn("id", Types.BIGINT, 19, 0);
+        feedRows.addColumn("title", Types.VARCHAR, 256, 0);
+        feedRows.addColumn("description", Types.VARCHAR, 256, 0);
+        feedRows.addColumn("image_url", Types.VARCHAR, 256, 0);
+        feedRows.addColumn("created_at", Types.TIMESTAMP, 26, 6);
+        feedRows.addColumn("comment_count", Types.BIGINT, 19, 0);
+        feedRows.addColumn("like_count", Types.BIGINT, 19, 0);
+        feedRows.addColumn("tags", Types.VARCHAR, 4096, 0);
+        for (long i = 1; i <= ROWS; i++) {
+            postRows.addRow(i, "Title " + i, "Description " + i, "Content " + i, "/images/default_image.jpg",
+                    createdAt.plusSeconds(i));
+            commentRows.addRow(i, 1L, "Comment " + i, createdAt.plusSeconds(i));
+            feedRows.addRow(i, "Title " + i, "Description " + i, "/images/default_image.jpg",
+                    createdAt.plusSeconds(i), 3L, i, "tag1, tag2");
+        }
+    }
+
+    @Benchmark
+    public void postReflective(Blackhole blackhole) throws SQLException {
+        mapAll(postRows, new SimplePropertyRowMapper<>(Post.class), blackhole);
+    }
+
+    @Benchmark
+    public void postPositional(Blackhole blackhole) throws SQLException {
+        mapAll(postRows, PostRowMapper.INSTANCE, blackhole);
+    }
+
+    @Benchmark
+    public void commentReflective(Blackhole blackhole) throws SQLException {
+        mapAll(commentRows, new BeanPropertyRowMapper<>(CommentDto.class), blackhole);
+    }
+
+    @Benchmark
+    public void commentPositional(Blackhole blackhole) throws SQLException {
+        mapAll(commentRows, CommentRowMapper.INSTANCE, blackhole);
+    }
+
+    @Benchmark
+    public void feedByLabel(Blackhole blackhole) throws SQLException {
+        mapAll(feedRows, FEED_BY_LABEL, blackhole);
+    }
+
+    @Benchmark
+    public void feedPositional(Blackhole blackhole) throws SQLException {
+        mapAll(feedRows, FeedPostRowMapper.INSTANCE, blackhole);
+    }
+
+    private static void mapAll(ResultSet rs, RowMapper<?> mapper, Blackhole blackhole) throws SQLException {
+        rs.beforeFirst();
+        int rowNum = 0;
+        while (rs.next()) {
+            blackhole.consume(mapper.mapRow(rs, rowNum++));
+        }
+    }
+
+    private static SimpleResultSet resultSet() {
+        SimpleResultSet rs = new SimpleResultSet();
+        // rows are read again on every invocation, the result set must not close itself after the last row
+        rs.setAutoClose(false);
+        return rs;
+    }
+}
@@ -0,0 +1,76 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.PostProperties;
+import org.javaprojects.myblogsite.configuration.SearchProperties;
+import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.repositories.BlogDataSeeder;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures assembling of the post page by {@link DefaultPostService#findPostById(long)}: the post, its tags,
+ * comments and likes, either by concurrent queries or by one query. The service is created without Spring proxies,
+ * so every call is a miss of the posts cache.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=PostServiceBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PostServiceBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int posts;
+
+    @Param({"3", "30"})
+    public int commentsPerPost;
+
+    @Param({"FAN_OUT", "SINGLE_QUERY"})
+    public PostProperties.DetailsLoading detailsLoading;
+
+    private EmbeddedDatabase database;
+    private ExecutorService executor;
+    private DefaultPostService postService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BlogDataSeeder.seed(posts, commentsPerPost, 3, 50);
+        PostRepository repository = BlogDataSeeder.repository(database);
+        TagIndexService tagIndexService = new TagIndexService(repository);
+        executor = Executors.newFixedThreadPool(16);
+        postService = new DefaultPostService(repository,
+                null,
+                new LikeCounterService(repository),
+                tagIndexService,
+                new PostCountsService(repository, tagIndexService),
+                new SearchIndexService(repository, new SearchProperties("")),
+                new TagFilterService(repository),
+                null,
+                null,
+                new NoOpCacheManager(),
+                new PostProperties(detailsLoading, 20, 16, Duration.ofSeconds(2)),
+                executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        database.shutdown();
+    }
+
+    @Benchmark
+    public PostDto findPostById() {
+        return postService.findPostById(ThreadLocalRandom.current().nextLong(1, posts + 1));
+    }
+}
@@ -0,0 +1,86 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.SearchProperties;
+import org.javaprojects.myblogsite.models.Post;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures latency of full-text queries of {@link SearchIndexService}. Posts are generated from a vocabulary
+ * of {@value #VOCABULARY} words with a skewed distribution, so there are very common and very rare words
+ * as in real texts. Every query has one common, one medium and one rare word. With {@code storage=segment} the
+ * posts are written to disk by a checkpoint and queries read the memory-mapped segment.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=SearchIndexBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SearchIndexBenchmark {
+    private static final int VOCABULARY = 50_000;
+    private static final int WORDS_PER_POST = 30;
+
+    @Param({"100000", "1000000"})
+    public int posts;
+
+    @Param({"memory", "segment"})
+    public String storage;
+
+    private Path indexDirectory;
+    private SearchIndexService searchIndexService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        indexDirectory = Files.createTempDirectory("search-index");
+        searchIndexService = new SearchIndexService(null,
+                new SearchProperties("segment".equals(storage) ? indexDirectory.toString() : ""));
+        Random random = new Random(42);
+        LocalDateTime createdAt = LocalDateTime.of(2025, 1, 1, 0, 0);
+        StringBuilder content = new StringBuilder();
+        for (long id = 1; id <= posts; id++) {
+            content.setLength(0);
+            for (int i = 0; i < WORDS_PER_POST; i++) {
+                content.append(word(random)).append(' ');
+            }
+            searchIndexService.postIndexed(new Post(id, "Title " + word(random), "About " + word(random),
+                    content.toString(), "/images/default_image.jpg", createdAt.plusSeconds(id)));
+        }
+        searchIndexService.checkpoint();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(indexDirectory);
+    }
+
+    @Benchmark
+    public SearchIndexService.SearchHits firstPage() {
+        return searchIndexService.search(query(), 0, 10);
+    }
+
+    @Benchmark
+    public SearchIndexService.SearchHits deepPage() {
+        return searchIndexService.search(query(), 500, 10);
+    }
+
+    private static String query() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return "w" + random.nextInt(10) + " w" + random.nextInt(1000, 3000) + " w" + random.nextInt(20_000, VOCABULARY);
+    }
+
+    private static String word(Random random) {
+        return "w" + (int) Math.min(VOCABULARY - 1, Math.abs(random.nextGaussian()) * 3000);
+    }
+}
@@ -0,0 +1,76 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.SearchProperties;
+import org.javaprojects.myblogsite.repositories.BlogDataSeeder;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the startup of {@link SearchIndexService}: a rebuild reads all posts from the database, opening
+ * the segment of the last checkpoint reads only the {@value #CHANGED_POSTS} posts changed since then.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=SearchIndexStartupBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchIndexStartupBenchmark {
+    private static final int CHANGED_POSTS = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    public int posts;
+
+    private EmbeddedDatabase database;
+    private PostRepository repository;
+    private Path indexDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BlogDataSeeder.seed(posts, 0, 0, 1);
+        repository = BlogDataSeeder.repository(database);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        // the posts were written long before the checkpoint
+        jdbcTemplate.update("UPDATE posts SET updated_at = created_at");
+        indexDirectory = Files.createTempDirectory("search-index");
+        SearchIndexService searchIndexService = new SearchIndexService(repository,
+                new SearchProperties(indexDirectory.toString()));
+        searchIndexService.run(null);
+        jdbcTemplate.update("UPDATE posts SET content = content || ' edited', updated_at = CURRENT_TIMESTAMP WHERE id <= ?",
+                CHANGED_POSTS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.shutdown();
+        FileSystemUtils.deleteRecursively(indexDirectory);
+    }
+
+    @Benchmark
+    public SearchIndexService rebuild() {
+        SearchIndexService searchIndexService = new SearchIndexService(repository, new SearchProperties(""));
+        searchIndexService.rebuild();
+        return searchIndexService;
+    }
+
+    @Benchmark
+    public SearchIndexService openSegment() {
+        SearchIndexService searchIndexService = new SearchIndexService(repository,
+                new SearchProperties(indexDirectory.toString()));
+        if (!searchIndexService.open()) {
+            throw new IllegalStateException("Segment has not been written");
+        }
+        return searchIndexService;
+    }
+}
@@ -0,0 +1,80 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.TagFilter;
+import org.javaprojects.myblogsite.repositories.BlogDataSeeder;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the feed page filtered by tags: the SQL query by one tag against the bitmaps of
+ * {@link TagFilterService} for two tags combined with {@link TagFilter.Mode#ALL} or {@link TagFilter.Mode#ANY}.
+ * Every post has {@value #TAGS_PER_POST} of {@value #DISTINCT_TAGS} tags. The {@code *Ids} benchmarks measure
+ * only the bitmaps, the others also read the posts of the page from the database.
+ * <p>
+ * Run: {@code ./gradlew jmh -PjmhIncludes=TagFilterBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TagFilterBenchmark {
+    private static final int TAGS_PER_POST = 3;
+    private static final int DISTINCT_TAGS = 20;
+    private static final int PAGE_SIZE = 10;
+    private static final TagFilter ALL = new TagFilter(Set.of("tag0", "tag1"), TagFilter.Mode.ALL);
+    private static final TagFilter ANY = new TagFilter(Set.of("tag0", "tag10"), TagFilter.Mode.ANY);
+
+    @Param({"10000", "100000"})
+    public int posts;
+
+    private EmbeddedDatabase database;
+    private PostRepository repository;
+    private TagFilterService tagFilterService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BlogDataSeeder.seed(posts, 0, TAGS_PER_POST, DISTINCT_TAGS);
+        repository = BlogDataSeeder.repository(database);
+        tagFilterService = new TagFilterService(repository);
+        tagFilterService.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<FeedPostDto> sqlOneTag() {
+        return repository.findPostsPageByTag("tag0", null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<FeedPostDto> bitmapAllTags() {
+        return repository.findPostsByIds(tagFilterService.findPostIds(ALL, null, PAGE_SIZE));
+    }
+
+    @Benchmark
+    public List<Long> bitmapAllTagsIds() {
+        return tagFilterService.findPostIds(ALL, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Long> bitmapAnyTagsIds() {
+        return tagFilterService.findPostIds(ANY, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long bitmapAnyTagsCount() {
+        return tagFilterService.countPosts(ANY);
+    }
+}
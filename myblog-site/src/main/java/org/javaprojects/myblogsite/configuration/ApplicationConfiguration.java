@@ -1,9 +1,68 @@
 package org.javaprojects.myblogsite.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
-@EnableConfigurationProperties(ImageProperties.class)
+@EnableCaching
+@EnableScheduling
+@EnableConfigurationProperties({ImageProperties.class, PostProperties.class, ImportProperties.class,
+        SearchProperties.class, ImageVariantProperties.class, StorageProperties.class})
 public class ApplicationConfiguration {
+    public static final String POST_ASSEMBLY_EXECUTOR = "postAssemblyExecutor";
+    public static final String IMAGE_PROCESSING_EXECUTOR = "imageProcessingExecutor";
+
+    /**
+     * Executor for the independent reads of a post page. Both variants are bounded by
+     * {@code application.posts.fan-out-concurrency}: virtual threads by a concurrency limit,
+     * platform threads by the size of the pool. The caller runs the task itself when the pool is saturated.
+     *
+     * @param properties     post page properties
+     * @param virtualThreads whether the application runs on virtual threads
+     * @return executor of post page reads
+     */
+    @Bean(POST_ASSEMBLY_EXECUTOR)
+    public AsyncTaskExecutor postAssemblyExecutor(PostProperties properties,
+                                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("post-assembly-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(properties.fanOutConcurrency());
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("post-assembly-");
+        executor.setCorePoolSize(properties.fanOutConcurrency());
+        executor.setMaxPoolSize(properties.fanOutConcurrency());
+        executor.setQueueCapacity(properties.fanOutConcurrency() * 4);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * Executor of image resizing. Resizing is CPU-bound, so it runs on a few platform threads with a bounded queue,
+     * uploads never wait for it: images that don't fit into the queue are rejected and shown without variants.
+     *
+     * @param properties image variant properties
+     * @return executor of image resizing
+     */
+    @Bean(IMAGE_PROCESSING_EXECUTOR)
+    public AsyncTaskExecutor imageProcessingExecutor(ImageVariantProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("image-processing-");
+        executor.setCorePoolSize(properties.threads());
+        executor.setMaxPoolSize(properties.threads());
+        executor.setQueueCapacity(properties.queueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
 }
@@ -1,11 +1,22 @@
 package org.javaprojects.myblogsite.configuration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
 
+/**
+ * Settings of uploaded images.
+ *
+ * @param uploadDirectoryLocationPath directory the images are stored in
+ * @param defaultImagePath            image of posts without an uploaded image
+ * @param uploadDirectoryHandlerPath  path the images are served under
+ * @param maxFileSize                 the largest image that is stored, checked while the image is being copied
+ */
 @ConfigurationProperties(prefix = "application.images")
 public record ImageProperties(
         Resource uploadDirectoryLocationPath,
         String defaultImagePath,
-        String uploadDirectoryHandlerPath
+        String uploadDirectoryHandlerPath,
+        @DefaultValue("10MB") DataSize maxFileSize
 ) {}
@@ -0,0 +1,25 @@
+package org.javaprojects.myblogsite.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Settings of the resized variants of uploaded images.
+ *
+ * @param widths        widths of the variants in pixels, variants not narrower than the image are skipped
+ * @param threads       number of threads that resize images
+ * @param queueCapacity number of images waiting to be resized, uploads beyond it are shown without variants
+ * @param jpegQuality   quality of JPEG variants from 0 to 1
+ * @param maxPixels     images with more pixels are not decoded and shown without variants, a decoded image
+ *                      takes 4 bytes per pixel
+ */
+@ConfigurationProperties(prefix = "application.image-variants")
+public record ImageVariantProperties(
+        @DefaultValue({"160", "320", "640"}) List<Integer> widths,
+        @DefaultValue("2") int threads,
+        @DefaultValue("100") int queueCapacity,
+        @DefaultValue("0.82") float jpegQuality,
+        @DefaultValue("40000000") long maxPixels
+) {}
@@ -0,0 +1,16 @@
+package org.javaprojects.myblogsite.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the bulk import of posts.
+ *
+ * @param enabled   whether the import endpoint is exposed, it is not protected, so it is off by default
+ * @param chunkSize number of posts written and committed by one transaction
+ */
+@ConfigurationProperties(prefix = "application.import")
+public record ImportProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("1000") int chunkSize
+) {}
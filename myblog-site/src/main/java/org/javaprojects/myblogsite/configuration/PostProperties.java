@@ -0,0 +1,33 @@
+package org.javaprojects.myblogsite.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the post page assembly.
+ *
+ * @param detailsLoading    how the post page is loaded from the database
+ * @param commentsPageSize  number of comments on the post page, the rest are loaded while the user scrolls
+ * @param fanOutConcurrency maximum number of post page reads that run at the same time
+ * @param fanOutTimeout     maximum time to wait for all reads of one post page
+ */
+@ConfigurationProperties(prefix = "application.posts")
+public record PostProperties(
+        @DefaultValue("fan-out") DetailsLoading detailsLoading,
+        @DefaultValue("20") int commentsPageSize,
+        @DefaultValue("32") int fanOutConcurrency,
+        @DefaultValue("2s") Duration fanOutTimeout
+) {
+    public enum DetailsLoading {
+        /**
+         * The post, its tags, comments and likes are read by separate queries that run concurrently.
+         */
+        FAN_OUT,
+        /**
+         * The post, its tags, comments and likes are read by one query, it saves round trips to a remote database.
+         */
+        SINGLE_QUERY
+    }
+}
@@ -0,0 +1,15 @@
+package org.javaprojects.myblogsite.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the full-text search.
+ *
+ * @param indexDirectory directory of the search index on disk, the index is kept only in memory and rebuilt
+ *                       at every startup when it is empty
+ */
+@ConfigurationProperties(prefix = "application.search")
+public record SearchProperties(
+        @DefaultValue("") String indexDirectory
+) {}
@@ -0,0 +1,59 @@
+package org.javaprojects.myblogsite.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Settings of the storage of uploaded images.
+ *
+ * @param type where the images are stored
+ * @param s3   settings of the S3-compatible object store, used when the type is {@code s3}
+ */
+@ConfigurationProperties(prefix = "application.storage")
+public record StorageProperties(
+        @DefaultValue("filesystem") Type type,
+        @DefaultValue S3 s3
+) {
+    public enum Type {
+        /**
+         * The upload directory on the disk of the node, {@code application.images.upload-directory-location-path}.
+         */
+        FILESYSTEM,
+        /**
+         * A bucket of an S3-compatible object store, every node of the application sees the same images.
+         */
+        S3
+    }
+
+    /**
+     * @param endpoint           url of the object store, e.g. {@code https://s3.eu-central-1.amazonaws.com}
+     *                           or {@code http://localhost:9000} for MinIO
+     * @param region             region the requests are signed for
+     * @param bucket             bucket of the images, it must exist
+     * @param accessKey          access key of the application
+     * @param secretKey          secret key of the application
+     * @param pathStyle          whether the bucket is a part of the path, {@code http://host/bucket/key}, instead of
+     *                           the host name, {@code http://bucket.host/key}; MinIO and most stand-ins need it
+     * @param partSize           images larger than it are uploaded in parts, at least 5MB for Amazon S3
+     * @param uploadConcurrency  number of parts of one image that are uploaded at the same time
+     * @param presignedUrlExpiry how long a presigned url of an image is valid, browsers are redirected to it
+     * @param publicUrl          url of a public bucket or a CDN in front of it; browsers are redirected to it
+     *                           instead of a presigned url when it is set
+     */
+    public record S3(
+            @DefaultValue("http://localhost:9000") URI endpoint,
+            @DefaultValue("us-east-1") String region,
+            @DefaultValue("myblog") String bucket,
+            String accessKey,
+            String secretKey,
+            @DefaultValue("true") boolean pathStyle,
+            @DefaultValue("5MB") DataSize partSize,
+            @DefaultValue("4") int uploadConcurrency,
+            @DefaultValue("1h") Duration presignedUrlExpiry,
+            String publicUrl
+    ) {}
+}
@@ -0,0 +1,193 @@
+package org.javaprojects.myblogsite.controllers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.javaprojects.myblogsite.configuration.ImageProperties;
+import org.javaprojects.myblogsite.services.ImageService;
+import org.javaprojects.myblogsite.services.InvalidImageException;
+import org.javaprojects.myblogsite.services.StorageFileNotFoundException;
+import org.javaprojects.myblogsite.services.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Serves uploaded images.
+ * <p>
+ * Responses carry a strong ETag and are revalidated by conditional requests, so a repeated visit costs a
+ * {@code 304} without the body. Content-addressed images never change and are cached by browsers for a year
+ * without revalidation. Single byte ranges are answered with {@code 206}. The file is sent by the sendfile
+ * support of Tomcat when it is available, so its bytes don't pass through the JVM, otherwise by
+ * {@link FileChannel#transferTo}.
+ * </p>
+ * <p>
+ * Images in an object store are not sent by the application, browsers are redirected to them by {@code 302}
+ * and may cache the redirect while its url is valid.
+ * </p>
+ * <p>
+ * Images are uploaded by {@code POST} of the image as the request body, before the form of the post is submitted.
+ * The body is streamed to the storage, unlike a multipart part it isn't written to a temporary file first:
+ * <pre>
+ * curl -X POST -H 'Content-Type: image/jpeg' --data-binary @photo.jpg http://localhost:8080/upload
+ * </pre>
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Controller
+public class ImageController {
+    private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    // exclusive
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePublic();
+
+    private final Optional<ImageService> imageService;
+    private final StorageService storageService;
+    private final long maxFileSize;
+
+    public ImageController(Optional<ImageService> imageService, StorageService storageService,
+                           ImageProperties properties) {
+        this.imageService = imageService;
+        this.storageService = storageService;
+        this.maxFileSize = properties.maxFileSize().toBytes();
+    }
+
+    /**
+     * Stores an uploaded image.
+     *
+     * @param body    the image
+     * @param request request with the length of the image, if it is known
+     * @return {@code 201} with the path of the stored image, to be sent in the {@code uploadedImageUrl} field
+     * of the post form
+     */
+    @PostMapping("${application.images.upload-directory-handler-path}")
+    public ResponseEntity<Map<String, String>> uploadImage(InputStream body, HttpServletRequest request) {
+        if (request.getContentLengthLong() > maxFileSize) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "The image is larger than " + maxFileSize + " bytes"));
+        }
+        String url = storageService.handleStreamUpload(body);
+        logger.info("Uploaded image {}", url);
+        return ResponseEntity.created(ServletUriComponentsBuilder.fromContextPath(request).path(url).build().toUri())
+                .body(Map.of("url", url));
+    }
+
+    /**
+     * @param path     path of the image in the upload directory
+     * @param request  request with optional conditional and range headers
+     * @param response response the image is written to
+     * @throws IOException if the image can't be sent
+     */
+    @GetMapping("${application.images.upload-directory-handler-path}/{*path}")
+    public void getImage(@PathVariable String path, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Optional<StorageService.ReadUrl> readUrl = storageService.getReadUrl(storageService.getImageDirectory() + path);
+        if (readUrl.isPresent()) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL,
+                    CacheControl.maxAge(readUrl.get().maxAge()).cachePrivate().getHeaderValue());
+            response.sendRedirect(readUrl.get().url().toString());
+            return;
+        }
+        ImageService.ImageFile image = imageService.orElseThrow().findImage(path);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, (image.immutable() ? IMMUTABLE : REVALIDATE).getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(image.etag(), image.lastModified().toEpochMilli())) {
+            return;
+        }
+        response.setContentType(image.contentType().toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        long start = 0;
+        long end = image.size();
+        HttpRange range = range(request, image);
+        if (range != null) {
+            try {
+                start = range.getRangeStart(image.size());
+                end = range.getRangeEnd(image.size()) + 1;
+            } catch (IllegalArgumentException e) {
+                // the range starts after the end of the image
+                end = start;
+            }
+            if (start >= end) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + image.size());
+                response.setContentLength(0);
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + image.size());
+        }
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, image.file().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(image.file(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            for (long position = start; position < end; ) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+    }
+
+    @ExceptionHandler(StorageFileNotFoundException.class)
+    public ResponseEntity<Void> handleImageNotFound(StorageFileNotFoundException e) {
+        logger.debug(e.getMessage());
+        return ResponseEntity.notFound().build();
+    }
+
+    @ExceptionHandler(InvalidImageException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidImage(InvalidImageException e) {
+        logger.info("Rejected upload: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    // a single range of the current version of the image, several ranges are answered by the whole image
+    private static HttpRange range(HttpServletRequest request, ImageService.ImageFile image) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(image.etag())) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.javaprojects.myblogsite.controllers;
+
+import org.javaprojects.myblogsite.dto.ImportResult;
+import org.javaprojects.myblogsite.services.BulkImportException;
+import org.javaprojects.myblogsite.services.BulkImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Administrative endpoint of the bulk import. The request body is streamed into the database,
+ * so archives of any size can be imported:
+ * <pre>
+ * curl -X POST -H 'Content-Type: application/x-ndjson' --data-binary @posts.jsonl http://localhost:8080/admin/posts/import
+ * </pre>
+ * The endpoint exists only when {@code application.import.enabled} is {@code true}.
+ *
+ * @author Oleh Svyrysov
+ */
+@RestController
+@RequestMapping(path = "/admin/posts")
+@ConditionalOnProperty(prefix = "application.import", name = "enabled", havingValue = "true")
+public class ImportController {
+    private static final Logger logger = LoggerFactory.getLogger(ImportController.class);
+    private final BulkImportService bulkImportService;
+
+    public ImportController(BulkImportService bulkImportService) {
+        this.bulkImportService = bulkImportService;
+    }
+
+    /**
+     * Imports posts of a JSON-lines archive
+     *
+     * @param body archive, one post object per line
+     * @return number of imported posts and duration of the import
+     */
+    @PostMapping(path = "/import", consumes = {"application/x-ndjson", "application/jsonl", "application/json"})
+    public ImportResult importPosts(InputStream body) {
+        return bulkImportService.importPosts(body);
+    }
+
+    @ExceptionHandler(BulkImportException.class)
+    public ResponseEntity<Map<String, Object>> handleImportFailure(BulkImportException e) {
+        logger.warn("Import stopped after {} posts: {}", e.getImported(), e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("imported", e.getImported(), "error", e.getMessage()));
+    }
+}
@@ -1,19 +1,27 @@
 package org.javaprojects.myblogsite.controllers;
 
 import org.javaprojects.myblogsite.dto.CommentDto;
-import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.CommentPage;
+import org.javaprojects.myblogsite.dto.FeedPage;
+import org.javaprojects.myblogsite.dto.PageCursor;
 import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.dto.SearchPage;
+import org.javaprojects.myblogsite.dto.TagCodec;
+import org.javaprojects.myblogsite.dto.TagFilter;
 import org.javaprojects.myblogsite.services.DefaultPostService;
+import org.javaprojects.myblogsite.services.InvalidImageException;
 import org.javaprojects.myblogsite.services.PostService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -21,6 +29,9 @@ import java.util.Set;
 @RequestMapping(path = {"/"})
 public class PostController {
     private static final Logger logger = LoggerFactory.getLogger(PostController.class);
+    private static final int MAX_FEED_PAGE_SIZE = 50;
+    private static final int MAX_COMMENTS_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_PAGE_SIZE = 50;
     private final PostService postService;
 
 
@@ -32,35 +43,78 @@ public class PostController {
     /**
      * All posts get request
      *
-     * @param offset    is element of pagination. It shows where we should start.
+     * @param cursor    is element of pagination. It is an opaque token of the page received from the previous page,
+     *                  the first page is returned when it is absent.
      * @param limit     is element of pagination. It shows how much posts we should return
      * @param tagFilter is element of tag selection. It shows which tag we should filter by
+     * @param tags      is element of tag selection. Several tags to filter by, e.g. {@code tags=cats,dogs}
+     * @param mode      {@code all} to show posts that have all of the tags, {@code any} for posts with any of them
      * @param model     Model
      * @return `feed` view
      */
     @GetMapping(value = {"/", "/posts"})
     public String getAllPosts(
-            @RequestParam(name = "offset", defaultValue = "0") int offset,
+            @RequestParam(name = "cursor", required = false) String cursor,
             @RequestParam(name = "limit", defaultValue = "10") int limit,
             @RequestParam(name = "tag-filter", defaultValue = "all") String tagFilter,
+            @RequestParam(name = "tags", required = false) List<String> tags,
+            @RequestParam(name = "mode", defaultValue = "all") String mode,
             Model model) {
-        long totalPosts = postService.getTotalPostsCount();
+        int pageSize = Math.clamp(limit, 1, MAX_FEED_PAGE_SIZE);
         Set<String> allTags = postService.findAllTags();
-        List<FeedPostDto> posts;
+        Set<String> selectedTags = new LinkedHashSet<>();
+        if (tags != null) {
+            tags.forEach(tag -> selectedTags.addAll(TagCodec.parse(tag)));
+        }
         if (!tagFilter.equals("all")) {
-            posts = postService.findPostsByTagName(tagFilter, offset, limit);
-        } else {
-            posts = postService.findAllPosts(offset, limit);
+            selectedTags.add(tagFilter);
         }
+        TagFilter filter = new TagFilter(selectedTags, TagFilter.Mode.parse(mode));
+        long totalPosts = postService.getPostsCount(filter);
+        FeedPage page = postService.findPostsPage(filter, PageCursor.decode(cursor), pageSize);
 
-        model.addAttribute("posts", posts);
-        model.addAttribute("offset", offset);
+        model.addAttribute("posts", page.posts());
+        model.addAttribute("nextCursor", page.nextCursor());
+        model.addAttribute("previousCursor", page.previousCursor());
+        model.addAttribute("selectedTag", selectedTags.size() == 1 ? selectedTags.iterator().next() : "all");
+        model.addAttribute("selectedTags", selectedTags);
+        model.addAttribute("tagsParam", TagCodec.join(selectedTags));
+        model.addAttribute("mode", filter.mode().name().toLowerCase());
         model.addAttribute("allTags", allTags);
-        model.addAttribute("limit", limit);
+        model.addAttribute("limit", pageSize);
         model.addAttribute("totalPosts", totalPosts);
         return "feed";
     }
 
+    /**
+     * Full-text search over titles, descriptions and contents of posts
+     *
+     * @param query words to look for
+     * @param page  number of the page of results, starts from 0
+     * @param limit number of posts on the page
+     * @param model Model
+     * @return `search` view
+     */
+    @GetMapping("/search")
+    public String search(@RequestParam(name = "q", defaultValue = "") String query,
+                         @RequestParam(name = "page", defaultValue = "0") int page,
+                         @RequestParam(name = "limit", defaultValue = "10") int limit,
+                         Model model) {
+        int pageSize = Math.clamp(limit, 1, MAX_SEARCH_PAGE_SIZE);
+        int pageNumber = Math.max(page, 0);
+        // a long offset can't overflow, pages past the last found post are empty
+        long offset = (long) pageNumber * pageSize;
+        SearchPage result = postService.searchPosts(query, offset, pageSize);
+
+        model.addAttribute("query", query);
+        model.addAttribute("posts", result.posts());
+        model.addAttribute("totalPosts", result.total());
+        model.addAttribute("page", pageNumber);
+        model.addAttribute("limit", pageSize);
+        model.addAttribute("hasNext", offset + pageSize < result.total());
+        return "search";
+    }
+
     /**
      * Post get request
      *
@@ -71,10 +125,10 @@ public class PostController {
     @GetMapping("/posts/{id}")
     public String getPost(@PathVariable("id") Long id, Model model) {
         PostDto post = postService.findPostById(id);
-        long likesCount = postService.getLikes(id);
 
         model.addAttribute("post", post);
-        model.addAttribute("likesCount", likesCount);
+        // the cached page keeps the likes of the moment it was assembled, the live count comes from the counter
+        model.addAttribute("likesCount", postService.getLikes(id));
 
         return "post";
     }
@@ -90,7 +144,7 @@ public class PostController {
         logger.info("Creating PostDto: Title: {}, Content: {}, Image: {}, Tags: {}"
                 , post.getTitle()
                 , post.getContent()
-                , post.getImage().getOriginalFilename()
+                , post.getImage() != null ? post.getImage().getOriginalFilename() : post.getUploadedImageUrl()
                 , post.getTags());
 
         postService.createPost(post);
@@ -132,8 +186,30 @@ public class PostController {
     @GetMapping(value = "/posts/{id}/like", produces = MediaType.TEXT_PLAIN_VALUE)
     @ResponseBody
     public String addLike(@PathVariable("id") Long postId) {
-        postService.addLike(postId);
-        return String.valueOf(postService.getLikes(postId));
+        return String.valueOf(postService.addLike(postId));
+    }
+
+    /**
+     * Comments of the post page by page, the post page loads them while the user scrolls
+     *
+     * @param postId post id
+     * @param cursor is element of pagination. It is an opaque token received with the previous page,
+     *               the first page is returned when it is absent.
+     * @param order  `asc` for the oldest comments first, `desc` for the newest comments first
+     * @param limit  is element of pagination. It shows how much comments we should return
+     * @return page of comments with the cursor to the next page
+     */
+    @GetMapping(value = "/posts/{id}/comments", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public CommentPage getComments(@PathVariable("id") Long postId,
+                                   @RequestParam(name = "cursor", required = false) String cursor,
+                                   @RequestParam(name = "order", defaultValue = "asc") String order,
+                                   @RequestParam(name = "limit", defaultValue = "20") int limit) {
+        Sort.Direction direction = Sort.Direction.fromOptionalString(order).orElse(Sort.Direction.ASC);
+        return postService.findCommentsPage(postId,
+                PageCursor.decode(cursor),
+                direction,
+                Math.clamp(limit, 1, MAX_COMMENTS_PAGE_SIZE));
     }
 
     /**
@@ -189,7 +265,19 @@ public class PostController {
     @DeleteMapping(value = "/posts/{id}/comments/{commentId}")
     public ResponseEntity<?> deleteComment(@PathVariable("id") Long postId, @PathVariable("commentId") Long commentId, @ModelAttribute CommentDto comment) {
         logger.info("Deleting comment: {}", comment);
-        postService.deleteComment(commentId);
+        postService.deleteComment(postId, commentId);
         return ResponseEntity.ok().body("Deleted sucessfully");
     }
+
+    /**
+     * The image of a submitted post is not an image that is accepted
+     *
+     * @param e the reason
+     * @return bad request with the reason
+     */
+    @ExceptionHandler(InvalidImageException.class)
+    public ResponseEntity<String> handleInvalidImage(InvalidImageException e) {
+        logger.info("Rejected image of a post: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
 }
@@ -0,0 +1,12 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.util.List;
+
+/**
+ * One page of comments of a post.
+ *
+ * @param comments   comments of the page in the requested order
+ * @param nextCursor token of the next page or {@code null} if this is the last page
+ */
+public record CommentPage(List<CommentDto> comments, String nextCursor) {
+}
@@ -0,0 +1,17 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.util.List;
+
+/**
+ * One page of the feed with opaque cursors to the neighbour pages.
+ *
+ * @param posts          posts of the page, the newest first
+ * @param nextCursor     token of the page with older posts or {@code null} if this is the last page
+ * @param previousCursor token of the page with newer posts or {@code null} if this is the first page
+ */
+public record FeedPage(List<FeedPostDto> posts, String nextCursor, String previousCursor) {
+
+    public static FeedPage empty() {
+        return new FeedPage(List.of(), null, null);
+    }
+}
@@ -1,5 +1,6 @@
 package org.javaprojects.myblogsite.dto;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 
 /**
@@ -13,6 +14,10 @@ public class FeedPostDto {
     private Long commentsCount;
     private Long likesCount;
     private String tags;
+    private LocalDateTime createdAt;
+    // resized variants of the image, null until they are created
+    private String imageSrcset;
+    private String imageWebpSrcset;
 
     private FeedPostDto(Builder builder) {
         this.id = builder.id;
@@ -22,6 +27,7 @@ public class FeedPostDto {
         this.commentsCount = builder.commentsCount;
         this.likesCount = builder.likesCount;
         this.tags = builder.tags;
+        this.createdAt = builder.createdAt;
     }
 
     public FeedPostDto() {
@@ -87,6 +93,30 @@ public class FeedPostDto {
         this.tags = tags;
     }
 
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getImageSrcset() {
+        return imageSrcset;
+    }
+
+    public void setImageSrcset(String imageSrcset) {
+        this.imageSrcset = imageSrcset;
+    }
+
+    public String getImageWebpSrcset() {
+        return imageWebpSrcset;
+    }
+
+    public void setImageWebpSrcset(String imageWebpSrcset) {
+        this.imageWebpSrcset = imageWebpSrcset;
+    }
+
     public static class Builder {
         Long id;
         String title;
@@ -95,6 +125,7 @@ public class FeedPostDto {
         Long commentsCount;
         Long likesCount;
         String tags;
+        LocalDateTime createdAt;
 
         public Builder setId(Long id) {
             this.id = id;
@@ -132,7 +163,12 @@ public class FeedPostDto {
         }
 
         public Builder setTags(Collection<String> tags) {
-            this.tags = String.join(", ", tags);
+            this.tags = TagCodec.join(tags);
+            return this;
+        }
+
+        public Builder setCreatedAt(LocalDateTime createdAt) {
+            this.createdAt = createdAt;
             return this;
         }
 
@@ -0,0 +1,11 @@
+package org.javaprojects.myblogsite.dto;
+
+/**
+ * Resized copy of an uploaded image.
+ *
+ * @param width       width of the variant in pixels
+ * @param contentType media type of the variant, e.g. {@code image/jpeg}
+ * @param url         url of the variant
+ */
+public record ImageVariant(int width, String contentType, String url) {
+}
@@ -0,0 +1,10 @@
+package org.javaprojects.myblogsite.dto;
+
+/**
+ * Outcome of a bulk import.
+ *
+ * @param imported      number of posts that were written and committed
+ * @param chunks        number of committed transactions
+ * @param elapsedMillis duration of the import
+ */
+public record ImportResult(long imported, int chunks, long elapsedMillis) {}
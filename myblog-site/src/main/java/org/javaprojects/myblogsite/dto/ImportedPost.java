@@ -0,0 +1,22 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * One post of an imported archive, every line of a JSON-lines archive is one such object.
+ *
+ * @param title       title of the post
+ * @param description short description of the post
+ * @param content     text of the post
+ * @param imageUrl    url of the post image, the default image is used when it is absent
+ * @param tags        tag list in the same format as in the post form, e.g. {@code "cats, dogs"}
+ * @param createdAt   creation time of the post, the time of the import is used when it is absent
+ */
+public record ImportedPost(
+        String title,
+        String description,
+        String content,
+        String imageUrl,
+        String tags,
+        LocalDateTime createdAt
+) {}
@@ -0,0 +1,75 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a list ordered by {@code created_at} and {@code id} that is used for keyset (seek) pagination.
+ * <p>
+ * Instead of skipping {@code OFFSET} rows the database seeks directly to the first row after the cursor, so
+ * every page costs the same no matter how deep it is. The cursor is sent to the client as an opaque token
+ * (see {@link #encode()}) and it also remembers the direction of the page it points to.
+ * </p>
+ *
+ * @param createdAt creation time of the boundary row
+ * @param id        id of the boundary row, it breaks ties between rows with the same creation time
+ * @param direction which page the cursor points to relative to the boundary row
+ */
+public record PageCursor(LocalDateTime createdAt, long id, Direction direction) {
+    private static final char SEPARATOR = '|';
+
+    public enum Direction {
+        /** rows that are older than the boundary row */
+        NEXT,
+        /** rows that are newer than the boundary row */
+        PREVIOUS
+    }
+
+    public static PageCursor next(LocalDateTime createdAt, long id) {
+        return new PageCursor(createdAt, id, Direction.NEXT);
+    }
+
+    public static PageCursor previous(LocalDateTime createdAt, long id) {
+        return new PageCursor(createdAt, id, Direction.PREVIOUS);
+    }
+
+    public boolean isBackward() {
+        return direction == Direction.PREVIOUS;
+    }
+
+    /**
+     * @return url-safe opaque token of the cursor
+     */
+    public String encode() {
+        String raw = (isBackward() ? "P" : "N") + SEPARATOR + createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Restores a cursor from the token created by {@link #encode()}.
+     *
+     * @param token opaque token received from the client
+     * @return the cursor or {@code null} if the token is empty or malformed, that means the first page.
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int first = raw.indexOf(SEPARATOR);
+            int last = raw.lastIndexOf(SEPARATOR);
+            if (first != 1 || last <= first) {
+                return null;
+            }
+            Direction direction = raw.charAt(0) == 'P' ? Direction.PREVIOUS : Direction.NEXT;
+            LocalDateTime createdAt = LocalDateTime.parse(raw.substring(first + 1, last));
+            long id = Long.parseLong(raw.substring(last + 1));
+            return new PageCursor(createdAt, id, direction);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+    }
+}
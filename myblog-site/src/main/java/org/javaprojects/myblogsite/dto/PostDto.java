@@ -4,7 +4,6 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
 /**
  * this class is for data exchange between server/client. Manages post data in post page.
@@ -16,9 +15,13 @@ public class PostDto {
     private String content;
     private String imageUrl;
     private MultipartFile image;
+    // path of an image uploaded before the form was submitted, it replaces the image part
+    private String uploadedImageUrl;
     private String tags;
     private Long commentsCount;
+    private Long likesCount;
     private List<CommentDto> comments;
+    private String nextCommentsCursor;
 
     public PostDto() {
     }
@@ -71,17 +74,24 @@ public class PostDto {
         this.image = image;
     }
 
+    public String getUploadedImageUrl() {
+        return uploadedImageUrl;
+    }
+
+    public void setUploadedImageUrl(String uploadedImageUrl) {
+        this.uploadedImageUrl = uploadedImageUrl;
+    }
+
     public String getTags() {
         return tags;
     }
 
     public void setTags(String tags) {
-        Set<String> set = Set.of(tags.split("[,| ]\\s*"));
-        setTags(set);
+        this.tags = TagCodec.normalize(tags);
     }
 
     public void setTags(Collection<String> tags) {
-        this.tags = String.join(", ", tags);
+        this.tags = TagCodec.join(tags);
     }
 
     public Long getCommentsCount() {
@@ -92,6 +102,14 @@ public class PostDto {
         this.commentsCount = commentsCount;
     }
 
+    public Long getLikesCount() {
+        return likesCount;
+    }
+
+    public void setLikesCount(Long likesCount) {
+        this.likesCount = likesCount;
+    }
+
     public List<CommentDto> getComments() {
         return comments;
     }
@@ -100,6 +118,14 @@ public class PostDto {
         this.comments = comments;
     }
 
+    public String getNextCommentsCursor() {
+        return nextCommentsCursor;
+    }
+
+    public void setNextCommentsCursor(String nextCommentsCursor) {
+        this.nextCommentsCursor = nextCommentsCursor;
+    }
+
     public String getDescription() {
         return description;
     }
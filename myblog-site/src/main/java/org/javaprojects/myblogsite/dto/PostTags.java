@@ -0,0 +1,14 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Tags of one post with the position of the post in the feed.
+ *
+ * @param postId    id of the post
+ * @param createdAt creation time of the post
+ * @param tags      tags of the post
+ */
+public record PostTags(long postId, LocalDateTime createdAt, Set<String> tags) {
+}
@@ -0,0 +1,12 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.util.List;
+
+/**
+ * One page of search results.
+ *
+ * @param posts found posts of the page, the most relevant first
+ * @param total number of all found posts
+ */
+public record SearchPage(List<FeedPostDto> posts, long total) {
+}
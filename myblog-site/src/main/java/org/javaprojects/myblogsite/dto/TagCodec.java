@@ -0,0 +1,137 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Parses and formats tag lists as they are typed in the post form and shown on the pages, e.g. {@code "cats, dogs"}.
+ * <p>
+ * Tags are separated by commas, vertical bars or whitespace. Empty and repeated tags are dropped, the order of
+ * the first occurrence is kept. The canonical text form joins tags with {@value #DELIMITER}. Every method scans
+ * the text once by hand instead of running a regular expression and does not build intermediate arrays or lists.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+public final class TagCodec {
+    public static final String DELIMITER = ", ";
+
+    private TagCodec() {
+    }
+
+    /**
+     * @param tags tag list typed by a user, may be {@code null}
+     * @return distinct tags in the order they appear in the text
+     */
+    public static Set<String> parse(String tags) {
+        if (tags == null || tags.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        int length = tags.length();
+        int start = 0;
+        while (start < length) {
+            start = skipSeparators(tags, start);
+            int end = skipTag(tags, start);
+            if (end > start) {
+                result.add(tags.substring(start, end));
+            }
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+     * Brings a tag list to the canonical form. Text that is already canonical is returned as is.
+     *
+     * @param tags tag list typed by a user, may be {@code null}
+     * @return distinct tags joined with {@value #DELIMITER}, an empty string if there are no tags
+     */
+    public static String normalize(String tags) {
+        if (tags == null || tags.isEmpty()) {
+            return "";
+        }
+        int length = tags.length();
+        StringBuilder normalized = new StringBuilder(length);
+        int start = 0;
+        while (start < length) {
+            start = skipSeparators(tags, start);
+            int end = skipTag(tags, start);
+            if (end > start && !contains(normalized, tags, start, end)) {
+                if (!normalized.isEmpty()) {
+                    normalized.append(DELIMITER);
+                }
+                normalized.append(tags, start, end);
+            }
+            start = end;
+        }
+        return normalized.length() == length && tags.contentEquals(normalized) ? tags : normalized.toString();
+    }
+
+    /**
+     * @param tags tags to format
+     * @return tags joined with {@value #DELIMITER}
+     */
+    public static String join(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            return "";
+        }
+        Iterator<String> iterator = tags.iterator();
+        if (tags.size() == 1) {
+            return iterator.next();
+        }
+        int capacity = (tags.size() - 1) * DELIMITER.length();
+        for (String tag : tags) {
+            capacity += tag.length();
+        }
+        StringBuilder joined = new StringBuilder(capacity).append(iterator.next());
+        while (iterator.hasNext()) {
+            joined.append(DELIMITER).append(iterator.next());
+        }
+        return joined.toString();
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ',' || c == '|' || Character.isWhitespace(c);
+    }
+
+    private static int skipSeparators(String text, int from) {
+        while (from < text.length() && isSeparator(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int skipTag(String text, int from) {
+        while (from < text.length() && !isSeparator(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    // looks for text[start, end) among the tags that are already joined, a tag list is short enough for a plain scan
+    private static boolean contains(StringBuilder joined, String text, int start, int end) {
+        int tagLength = end - start;
+        int position = 0;
+        while (position < joined.length()) {
+            int next = joined.indexOf(DELIMITER, position);
+            int tagEnd = next < 0 ? joined.length() : next;
+            if (tagEnd - position == tagLength && regionEquals(joined, position, text, start, tagLength)) {
+                return true;
+            }
+            position = next < 0 ? joined.length() : next + DELIMITER.length();
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(StringBuilder joined, int offset, String text, int start, int length) {
+        for (int i = 0; i < length; i++) {
+            if (joined.charAt(offset + i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,43 @@
+package org.javaprojects.myblogsite.dto;
+
+import java.util.Set;
+
+/**
+ * Tags the feed is filtered by.
+ *
+ * @param tags tags to look for, no filtering when it is empty
+ * @param mode whether posts must have all of the tags or any of them
+ */
+public record TagFilter(Set<String> tags, Mode mode) {
+
+    public enum Mode {
+        /** posts that have every tag */
+        ALL,
+        /** posts that have at least one of the tags */
+        ANY;
+
+        /**
+         * @param mode {@code all} or {@code any} in any case, may be {@code null}
+         * @return the mode, {@link #ALL} if the text is not {@code any}
+         */
+        public static Mode parse(String mode) {
+            return "any".equalsIgnoreCase(mode) ? ANY : ALL;
+        }
+    }
+
+    public TagFilter {
+        tags = Set.copyOf(tags);
+    }
+
+    public static TagFilter none() {
+        return new TagFilter(Set.of(), Mode.ALL);
+    }
+
+    public static TagFilter of(String tag) {
+        return new TagFilter(Set.of(tag), Mode.ALL);
+    }
+
+    public boolean isEmpty() {
+        return tags.isEmpty();
+    }
+}
@@ -0,0 +1,32 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.javaprojects.myblogsite.dto.CommentDto;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Maps rows of {@link #SELECT} to {@link CommentDto}. Columns are read by position instead of the
+ * reflection-based matching of {@code BeanPropertyRowMapper}; one instance is shared by all queries.
+ *
+ * @author Oleh Svyrysov
+ */
+final class CommentRowMapper implements RowMapper<CommentDto> {
+    static final String SELECT = "SELECT id, post_id, content, created_at FROM comments";
+    static final CommentRowMapper INSTANCE = new CommentRowMapper();
+
+    private CommentRowMapper() {
+    }
+
+    @Override
+    public CommentDto mapRow(ResultSet rs, int rowNum) throws SQLException {
+        CommentDto comment = new CommentDto();
+        comment.setId(rs.getLong(1));
+        comment.setPostId(rs.getLong(2));
+        comment.setContent(rs.getString(3));
+        comment.setCreatedAt(rs.getObject(4, LocalDateTime.class));
+        return comment;
+    }
+}
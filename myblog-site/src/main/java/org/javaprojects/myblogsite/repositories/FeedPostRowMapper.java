@@ -0,0 +1,41 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Maps rows of {@link #SELECT} (posts with their {@code post_stats}) to {@link FeedPostDto}. Columns are read
+ * by position, queries may only append conditions and ordering to the select; one instance is shared by all queries.
+ *
+ * @author Oleh Svyrysov
+ */
+final class FeedPostRowMapper implements RowMapper<FeedPostDto> {
+    static final String SELECT = """
+                SELECT p.id, p.title, p.description, p.image_url, p.created_at, \
+                  s.comment_count, s.like_count, s.tags \
+                FROM posts AS p \
+                LEFT JOIN post_stats AS s ON s.post_id = p.id""";
+    static final FeedPostRowMapper INSTANCE = new FeedPostRowMapper();
+
+    private FeedPostRowMapper() {
+    }
+
+    @Override
+    public FeedPostDto mapRow(ResultSet rs, int rowNum) throws SQLException {
+        String tags = rs.getString(8);
+        return FeedPostDto.builder()
+                .setId(rs.getLong(1))
+                .setTitle(rs.getString(2))
+                .setDescription(rs.getString(3))
+                .setImageUrl(rs.getString(4))
+                .setCreatedAt(rs.getObject(5, LocalDateTime.class))
+                .setCommentsCount(rs.getLong(6))
+                .setLikesCount(rs.getLong(7))
+                .setTags(tags != null ? tags : "")
+                .create();
+    }
+}
@@ -2,21 +2,31 @@ package org.javaprojects.myblogsite.repositories;
 
 import org.javaprojects.myblogsite.dto.CommentDto;
 import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.ImageVariant;
+import org.javaprojects.myblogsite.dto.PageCursor;
+import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.dto.PostTags;
 import org.javaprojects.myblogsite.models.Post;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * JdbcPostRepository is a Spring repository that implements {@link PostRepository}
@@ -32,84 +42,245 @@ import java.util.*;
 @Repository
 public class JdbcPostRepository implements PostRepository {
     private static final Logger logger = LoggerFactory.getLogger(JdbcPostRepository.class);
+    // tags of the post formatted as in post_stats, the placeholder is the expression of the post id
+    private static final String POST_TAGS_OF = """
+                COALESCE((SELECT LISTAGG(t.name, ', ') WITHIN GROUP (ORDER BY t.name) \
+                          FROM post_tag AS pt JOIN tag AS t ON t.id = pt.tag_id \
+                          WHERE pt.post_id = %s), '')""";
+    private static final String POST_TAGS_LIST = POST_TAGS_OF.formatted(":postId");
+    private static final String INSERT_POST_SQL =
+            "INSERT INTO posts (title, description, content, image_url, created_at) VALUES (?,?,?,?,?)";
+    // the post row, its tags and its comments in one result set, rows are told apart by the kind column
+    private static final String POST_DETAILS_SELECT = """
+                SELECT 1 AS kind, p.id, p.title, p.description, p.content, p.image_url, p.created_at, \
+                  COALESCE(s.like_count, 0) AS like_count, COALESCE(s.comment_count, 0) AS comment_count \
+                FROM posts AS p \
+                LEFT JOIN post_stats AS s ON s.post_id = p.id \
+                WHERE p.id = :id \
+                UNION ALL \
+                SELECT 2, t.id, t.name, NULL, NULL, NULL, NULL, NULL, NULL \
+                FROM post_tag AS pt \
+                JOIN tag AS t ON t.id = pt.tag_id \
+                WHERE pt.post_id = :id \
+                UNION ALL \
+                SELECT 3, c.id, NULL, NULL, c.content, NULL, c.created_at, NULL, NULL \
+                FROM (SELECT id, content, created_at FROM comments WHERE post_id = :id \
+                      ORDER BY created_at, id FETCH FIRST :commentsLimit ROWS ONLY) AS c \
+                ORDER BY kind, created_at, title, id""";
+    private static final int POST_ROW = 1;
+    private static final int TAG_ROW = 2;
+    private static final int COMMENT_ROW = 3;
     private final JdbcClient jdbcClient;
     private final JdbcTemplate jdbcTemplate;
+    private final TagDictionary tagDictionary;
 
     JdbcPostRepository(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         this.jdbcClient = JdbcClient.create(jdbcTemplate);
-    }
-
-    private static FeedPostDto mapFeedRow(ResultSet rs, int rowNum) throws SQLException {
-        Long id = rs.getLong("id");
-        String title = rs.getString("title");
-        String description = rs.getString("description");
-        String imageUrl = rs.getString("image_url");
-        Long commentsCount = rs.getLong("commentsCount");
-        Long likesCount = rs.getLong("likesCount");
-        String tagsStr = rs.getString("tags");
-
-        Set<String> tags = (tagsStr != null && !tagsStr.isEmpty())
-                ? Set.copyOf(Arrays.asList(tagsStr.split("[,|]\\s*")))
-                : Collections.emptySet();
-
-        return FeedPostDto.builder()
-                .setId(id)
-                .setTitle(title)
-                .setImageUrl(imageUrl)
-                .setDescription(description)
-                .setCommentsCount(commentsCount)
-                .setLikesCount(likesCount)
-                .setTags(tags)
-                .create();
+        this.tagDictionary = new TagDictionary(jdbcClient, jdbcTemplate);
     }
 
     @Override
     public Optional<Post> findPostById(long id) {
-        String sql = "SELECT id, title, description, content, image_url, created_at FROM posts WHERE id = :id";
+        String sql = PostRowMapper.SELECT + " WHERE id = :id";
         return jdbcClient.sql(sql)
                 .params(Map.of("id", id))
-                .query(Post.class)
+                .query(PostRowMapper.INSTANCE)
                 .optional();
     }
 
+    /**
+     * Loads the post with its tags, the oldest comments and numbers of comments and likes in one round trip.
+     * The rows of the result set are ordered by kind, so the post row comes first and the page is assembled
+     * in one pass.
+     *
+     * @param id            id of the post
+     * @param commentsLimit maximum number of comments to load
+     * @return the post page or empty if there is no such post
+     */
+    @Override
+    public Optional<PostDto> findPostDetailsById(long id, int commentsLimit) {
+        return jdbcClient.sql(POST_DETAILS_SELECT)
+                .param("id", id)
+                .param("commentsLimit", commentsLimit)
+                .query(JdbcPostRepository::extractPostDetails);
+    }
+
+    private static Optional<PostDto> extractPostDetails(ResultSet rs) throws SQLException {
+        if (!rs.next() || rs.getInt("kind") != POST_ROW) {
+            return Optional.empty();
+        }
+        PostDto post = new PostDto(rs.getLong("id"),
+                rs.getString("title"),
+                rs.getString("description"),
+                rs.getString("content"),
+                rs.getString("image_url"));
+        post.setLikesCount(rs.getLong("like_count"));
+        post.setCommentsCount(rs.getLong("comment_count"));
+        List<String> tags = new ArrayList<>();
+        List<CommentDto> comments = new ArrayList<>();
+        while (rs.next()) {
+            switch (rs.getInt("kind")) {
+                case TAG_ROW -> tags.add(rs.getString("title"));
+                case COMMENT_ROW -> {
+                    CommentDto comment = new CommentDto();
+                    comment.setId(rs.getLong("id"));
+                    comment.setPostId(post.getId());
+                    comment.setContent(rs.getString("content"));
+                    comment.setCreatedAt(rs.getObject("created_at", LocalDateTime.class));
+                    comments.add(comment);
+                }
+                default -> throw new IllegalStateException("Unexpected row kind " + rs.getInt("kind"));
+            }
+        }
+        if (!tags.isEmpty()) {
+            post.setTags(tags);
+        }
+        post.setComments(comments);
+        return Optional.of(post);
+    }
+
     @Override
     public List<FeedPostDto> findAllPosts(int from, int number) {
-        String sql = """
-                SELECT p.id, p.title, p.description, p.image_url, p.created_at, \
-                  (SELECT count(*) FROM comments WHERE post_id = p.id) AS commentsCount, \
-                  (SELECT likes_count FROM likes WHERE post_id = p.id) AS likesCount, \
-                  (SELECT GROUP_CONCAT(tag_name SEPARATOR ',') FROM tags WHERE post_id = p.id) AS tags \
-                FROM posts AS p \
-                ORDER BY created_at DESC \
+        String sql = FeedPostRowMapper.SELECT + """
+                 ORDER BY created_at DESC \
                 OFFSET ? FETCH FIRST ? ROWS ONLY""";
 
         return jdbcClient.sql(sql)
                 .params(from, number)
-                .query(JdbcPostRepository::mapFeedRow)
+                .query(FeedPostRowMapper.INSTANCE)
                 .list();
     }
 
     @Override
+    public List<FeedPostDto> findPostsPage(PageCursor cursor, int number) {
+        return findFeedPage(null, cursor, number);
+    }
+
+    @Override
+    public List<FeedPostDto> findPostsPageByTag(String tagName, PageCursor cursor, int number) {
+        return findFeedPage(tagName, cursor, number);
+    }
+
+    /**
+     * Loads a page of the feed using keyset (seek) pagination. The database walks the
+     * {@code posts(created_at, id)} index from the cursor position, so the cost doesn't depend on the page depth.
+     *
+     * @param tagName optional tag to filter posts by, {@code null} means all posts
+     * @param cursor  position to start from, {@code null} means the first page
+     * @param number  maximum number of posts to return
+     * @return posts ordered by creation time descending regardless of the cursor direction
+     */
+    private List<FeedPostDto> findFeedPage(String tagName, PageCursor cursor, int number) {
+        boolean backward = cursor != null && cursor.isBackward();
+        List<String> conditions = new ArrayList<>(2);
+        Map<String, Object> params = new HashMap<>();
+        if (tagName != null) {
+            Optional<Long> tagId = tagDictionary.findId(tagName);
+            if (tagId.isEmpty()) {
+                return new ArrayList<>();
+            }
+            conditions.add("p.id IN (SELECT post_id FROM post_tag WHERE tag_id = :tagId)");
+            params.put("tagId", tagId.get());
+        }
+        if (cursor != null) {
+            // the first condition narrows the index range, the second one breaks ties on created_at by id
+            conditions.add(backward
+                    ? "p.created_at >= :createdAt AND (p.created_at > :createdAt OR p.id > :id)"
+                    : "p.created_at <= :createdAt AND (p.created_at < :createdAt OR p.id < :id)");
+            params.put("createdAt", cursor.createdAt());
+            params.put("id", cursor.id());
+        }
+        params.put("number", number);
+
+        String sql = FeedPostRowMapper.SELECT
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + (backward ? " ORDER BY p.created_at ASC, p.id ASC" : " ORDER BY p.created_at DESC, p.id DESC")
+                + " FETCH FIRST :number ROWS ONLY";
+
+        List<FeedPostDto> posts = new ArrayList<>(jdbcClient.sql(sql)
+                .params(params)
+                .query(FeedPostRowMapper.INSTANCE)
+                .list());
+        if (backward) {
+            Collections.reverse(posts);
+        }
+        return posts;
+    }
+
+    /**
+     * Inserts the post with its own creation time, the in-memory indexes get the same time and order the post
+     * like the feed does. A post without the creation time is stamped with the current time.
+     *
+     * @param post post to insert
+     * @return id of the post or -1 if it was not inserted
+     */
+    @Override
+    @Transactional
     public long save(Post post) {
-        String sql = "INSERT INTO posts (title, description, content, image_url, created_at) VALUES (?,?,?,?,?)";
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcClient.sql(sql)
+        jdbcClient.sql(INSERT_POST_SQL)
                 .params(
                         post.title(),
                         post.description(),
                         post.content(),
                         post.imageUrl(),
-                        LocalDateTime.now()
+                        post.createdAt() != null ? post.createdAt() : LocalDateTime.now()
                 )
-                .update(keyHolder);
+                // only the id, H2 returns every column with a default value as a generated key otherwise
+                .update(keyHolder, "id");
         Number key = keyHolder.getKey();
         if (key != null) {
+            jdbcClient.sql("INSERT INTO post_stats (post_id) VALUES (?)")
+                    .params(key.longValue())
+                    .update();
             return key.longValue();
         }
         return -1;
     }
 
+    /**
+     * Inserts the posts by one JDBC batch and reads their generated ids from the same batch.
+     * Posts without the creation time are stamped with the current time.
+     *
+     * @param posts posts to insert
+     * @return ids of the posts in the same order
+     */
+    @Override
+    @Transactional
+    public List<Long> saveAll(List<Post> posts) {
+        if (posts.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_POST_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Post post = posts.get(i);
+                        ps.setString(1, post.title());
+                        ps.setString(2, post.description());
+                        ps.setString(3, post.content());
+                        ps.setString(4, post.imageUrl());
+                        ps.setObject(5, post.createdAt() != null ? post.createdAt() : now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return posts.size();
+                    }
+                },
+                keyHolder);
+        List<Long> ids = keyHolder.getKeyList().stream()
+                .map(keys -> ((Number) keys.values().iterator().next()).longValue())
+                .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO post_stats (post_id) VALUES (?)",
+                ids.stream().map(id -> new Object[]{id}).toList());
+        return ids;
+    }
+
     @Override
     public void update(Post post) {
         String sql = """
@@ -118,7 +289,8 @@ public class JdbcPostRepository implements PostRepository {
                         title       = IFNULL(?, title),
                         description = IFNULL(?, description),
                         content     = IFNULL(?, content),
-                        image_url   = IFNULL(?, image_url)
+                        image_url   = IFNULL(?, image_url),
+                        updated_at  = CURRENT_TIMESTAMP
                     WHERE id = ?
                 """;
 
@@ -139,12 +311,104 @@ public class JdbcPostRepository implements PostRepository {
     }
 
     @Override
+    public Optional<String> findImageUrl(long postId) {
+        return jdbcClient.sql("SELECT image_url FROM posts WHERE id = ?")
+                .params(postId)
+                .query(String.class)
+                .optional();
+    }
+
+    /**
+     * @param imageUrl url of an image
+     * @return number of posts that show the image, images are shared by posts with the same content
+     */
+    @Override
+    public long countPostsByImageUrl(String imageUrl) {
+        return jdbcClient.sql("SELECT count(*) FROM posts WHERE image_url = ?")
+                .params(imageUrl)
+                .query(Long.class)
+                .single();
+    }
+
+    @Override
+    @Transactional
+    public void saveImageVariants(String imageUrl, List<ImageVariant> variants) {
+        String sql = """
+                MERGE INTO image_variants (image_url, width, content_type, url) KEY (image_url, width, content_type) \
+                VALUES (?, ?, ?, ?)""";
+        jdbcTemplate.batchUpdate(sql, variants.stream()
+                .map(variant -> new Object[]{imageUrl, variant.width(), variant.contentType(), variant.url()})
+                .toList());
+    }
+
+    /**
+     * @param imageUrls urls of uploaded images
+     * @return variants keyed by the url of their image in ascending order of width, images without variants
+     * are absent
+     */
+    @Override
+    public Map<String, List<ImageVariant>> findImageVariants(Collection<String> imageUrls) {
+        if (imageUrls.isEmpty()) {
+            return Map.of();
+        }
+        String sql = """
+                SELECT image_url, width, content_type, url FROM image_variants \
+                WHERE image_url IN (:imageUrls) \
+                ORDER BY image_url, width""";
+        Map<String, List<ImageVariant>> variants = new HashMap<>();
+        jdbcClient.sql(sql)
+                .param("imageUrls", List.copyOf(imageUrls))
+                .query((RowCallbackHandler) rs -> variants.computeIfAbsent(rs.getString(1), url -> new ArrayList<>())
+                        .add(new ImageVariant(rs.getInt(2), rs.getString(3), rs.getString(4))));
+        return variants;
+    }
+
+    @Override
+    public void deleteImageVariants(String imageUrl) {
+        jdbcClient.sql("DELETE FROM image_variants WHERE image_url = ?").params(imageUrl).update();
+    }
+
+    /**
+     * Records an image that could not be released yet, a repeated release only moves its time.
+     *
+     * @param imageUrl   url of the image
+     * @param releasedAt time of the release
+     */
+    @Override
+    public void deferImageRelease(String imageUrl, LocalDateTime releasedAt) {
+        jdbcClient.sql("MERGE INTO deferred_image_releases (image_url, released_at) KEY (image_url) VALUES (?, ?)")
+                .params(imageUrl, releasedAt)
+                .update();
+    }
+
+    /**
+     * @param releasedBefore time the releases must be older than
+     * @return urls of the images whose releases were deferred before the time, the oldest first
+     */
+    @Override
+    public List<String> findDeferredImageReleases(LocalDateTime releasedBefore) {
+        return jdbcClient.sql("SELECT image_url FROM deferred_image_releases WHERE released_at < ? ORDER BY released_at")
+                .params(releasedBefore)
+                .query(String.class)
+                .list();
+    }
+
+    @Override
+    public void deleteDeferredImageRelease(String imageUrl) {
+        jdbcClient.sql("DELETE FROM deferred_image_releases WHERE image_url = ?").params(imageUrl).update();
+    }
+
+    @Override
+    @Transactional
     public long addComment(CommentDto comment) {
         String sql = "INSERT INTO comments (post_id, content, created_at) VALUES (?,?,?)";
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcClient.sql(sql)
                 .params(comment.getPostId(), comment.getContent(), comment.getCreatedAt())
-                .update(keyHolder);
+                .update(keyHolder, "id");
+        jdbcClient.sql("UPDATE post_stats SET comment_count = comment_count + 1 WHERE post_id = ?")
+                .params(comment.getPostId())
+                .update();
         Number key = keyHolder.getKey();
         if (key != null) {
             return key.longValue();
@@ -161,62 +425,101 @@ public class JdbcPostRepository implements PostRepository {
     }
 
     @Override
+    @Transactional
     public void deleteComment(long commentId) {
+        String statsSql = """
+                UPDATE post_stats SET comment_count = comment_count - 1 \
+                WHERE post_id = (SELECT post_id FROM comments WHERE id = ?)""";
+        jdbcClient.sql(statsSql).params(commentId).update();
         int num = jdbcClient.sql("DELETE FROM comments WHERE id = ?").params(commentId).update();
         logger.info("Removed from commentd {} lines. commentId = {}", num, commentId);
     }
 
     @Override
     public List<CommentDto> findCommentsByPostId(long postId) {
-        String sql = "SELECT id, post_id, content, created_at FROM comments WHERE post_id = ? order by created_at";
+        String sql = CommentRowMapper.SELECT + " WHERE post_id = ? order by created_at";
 
         return jdbcClient.sql(sql)
                 .params(postId)
-                .query(new BeanPropertyRowMapper<>(CommentDto.class))
+                .query(CommentRowMapper.INSTANCE)
+                .list();
+    }
+
+    /**
+     * Loads a page of comments of the post using keyset pagination over the
+     * {@code comments(post_id, created_at, id)} index, so the cost doesn't depend on the number of comments.
+     *
+     * @param postId id of the post
+     * @param cursor last comment of the previous page, {@code null} means the first page
+     * @param order  {@link Sort.Direction#ASC} for the oldest comments first, {@link Sort.Direction#DESC} for the newest
+     * @param number maximum number of comments to return
+     * @return comments in the requested order
+     */
+    @Override
+    public List<CommentDto> findCommentsPage(long postId, PageCursor cursor, Sort.Direction order, int number) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("postId", postId);
+        params.put("number", number);
+        String seek = "";
+        if (cursor != null) {
+            seek = order.isAscending()
+                    ? " AND created_at >= :createdAt AND (created_at > :createdAt OR id > :id)"
+                    : " AND created_at <= :createdAt AND (created_at < :createdAt OR id < :id)";
+            params.put("createdAt", cursor.createdAt());
+            params.put("id", cursor.id());
+        }
+        String sql = CommentRowMapper.SELECT + " WHERE post_id = :postId" + seek
+                + (order.isAscending() ? " ORDER BY created_at ASC, id ASC" : " ORDER BY created_at DESC, id DESC")
+                + " FETCH FIRST :number ROWS ONLY";
+
+        return jdbcClient.sql(sql)
+                .params(params)
+                .query(CommentRowMapper.INSTANCE)
                 .list();
     }
 
     @Override
     public long getCommentsNumberByPost(long postId) {
-        String sql = "SELECT count(*) FROM comments WHERE post_id = ?";
+        String sql = "SELECT comment_count FROM post_stats WHERE post_id = ?";
 
         return (Long) jdbcClient.sql(sql)
                 .params(postId)
                 .query()
-                .singleValue();
+                .optionalValue().orElse(0L);
     }
 
     @Override
     public Set<String> findTagsByPostId(long postId) {
-        String sql =
-                "SELECT t.tag_name FROM tags AS t LEFT JOIN posts AS p ON p.id = t.post_id WHERE p.id = ?";
+        return tagDictionary.namesOf(findTagIdsByPostId(postId));
+    }
 
-        return jdbcClient.sql(sql)
+    @Override
+    public Set<Long> findTagIdsByPostId(long postId) {
+        return jdbcClient.sql("SELECT tag_id FROM post_tag WHERE post_id = ?")
                 .params(postId)
-                .query(String.class)
+                .query(Long.class)
                 .set();
     }
 
     @Override
     public List<FeedPostDto> findPostsByTag(String tagName, int from, int number) {
-        String sql = """
-                SELECT p.id, p.title, p.description, p.image_url, p.created_at, \
-                  (SELECT count(*) FROM comments WHERE post_id = p.id) AS commentsCount, \
-                  (SELECT likes_count FROM likes WHERE post_id = p.id) AS likesCount, \
-                  (SELECT GROUP_CONCAT(tag_name SEPARATOR ',') FROM tags WHERE post_id = p.id) AS tags \
-                FROM posts AS p \
-                LEFT JOIN tags AS t ON p.id = t.post_id \
-                WHERE t.tag_name = ? \
+        Optional<Long> tagId = tagDictionary.findId(tagName);
+        if (tagId.isEmpty()) {
+            return List.of();
+        }
+        String sql = FeedPostRowMapper.SELECT + """
+                 WHERE p.id IN (SELECT post_id FROM post_tag WHERE tag_id = ?) \
                 ORDER BY created_at DESC \
                 OFFSET ? FETCH NEXT ? ROWS ONLY""";
 
         return jdbcClient.sql(sql)
-                .params(tagName, from, number)
-                .query(JdbcPostRepository::mapFeedRow)
+                .params(tagId.get(), from, number)
+                .query(FeedPostRowMapper.INSTANCE)
                 .list();
     }
 
     @Override
+    @Transactional
     public void addLike(long postId) {
 
         String updateSql = "UPDATE likes SET likes_count = likes_count + 1 WHERE post_id = ?";
@@ -229,34 +532,145 @@ public class JdbcPostRepository implements PostRepository {
                     .params(postId)
                     .update();
         }
+        jdbcClient.sql("UPDATE post_stats SET like_count = like_count + 1 WHERE post_id = ?")
+                .params(postId)
+                .update();
     }
 
+    /**
+     * Adds accumulated likes of several posts with two batched statements: an upsert into {@code likes}
+     * and an increment of {@code post_stats}. Likes of posts that don't exist anymore are skipped.
+     *
+     * @param likesByPostId number of likes to add keyed by post id
+     */
     @Override
-    public void insertTags(Set<String> tags, long postId) {
-        String sql = "INSERT INTO tags (tag_name, post_id) VALUES (?, ?)";
-        List<Object[]> batchArgs = tags.stream()
-                .map(tag -> new Object[]{tag, postId})
+    @Transactional
+    public void addLikes(Map<Long, Long> likesByPostId) {
+        if (likesByPostId.isEmpty()) {
+            return;
+        }
+        String likesSql = """
+                MERGE INTO likes AS l \
+                USING (SELECT id AS post_id, CAST(? AS BIGINT) AS delta FROM posts WHERE id = ?) AS d \
+                  ON l.post_id = d.post_id \
+                WHEN MATCHED THEN UPDATE SET likes_count = l.likes_count + d.delta \
+                WHEN NOT MATCHED THEN INSERT (post_id, likes_count) VALUES (d.post_id, d.delta)""";
+        String statsSql = "UPDATE post_stats SET like_count = like_count + ? WHERE post_id = ?";
+        List<Object[]> batchArgs = likesByPostId.entrySet().stream()
+                .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
                 .toList();
+        jdbcTemplate.batchUpdate(likesSql, batchArgs);
+        jdbcTemplate.batchUpdate(statsSql, batchArgs);
+    }
+
+    /**
+     * Links tags to the post. Missing tags are added to the {@code tag} dictionary, tags that are already
+     * linked to the post are skipped.
+     *
+     * @param tags   tag names
+     * @param postId id of the post
+     */
+    @Override
+    @Transactional
+    public void insertTags(Set<String> tags, long postId) {
+        updateTags(postId, tags, Set.of());
+    }
+
+    /**
+     * Applies a change of the post tags: only the links of removed tags are deleted and only the links of added
+     * tags are inserted, the links of unchanged tags are not touched.
+     *
+     * @param postId  id of the post
+     * @param added   tag names to link to the post, missing tags are added to the {@code tag} dictionary
+     * @param removed tag names to unlink from the post
+     */
+    @Override
+    @Transactional
+    public void updateTags(long postId, Set<String> added, Set<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        if (!removed.isEmpty()) {
+            List<Long> removedIds = removed.stream()
+                    .map(tagDictionary::findId)
+                    .flatMap(Optional::stream)
+                    .toList();
+            if (!removedIds.isEmpty()) {
+                jdbcClient.sql("DELETE FROM post_tag WHERE post_id = :postId AND tag_id IN (:tagIds)")
+                        .param("postId", postId)
+                        .param("tagIds", removedIds)
+                        .update();
+            }
+        }
+        if (!added.isEmpty()) {
+            String sql = "MERGE INTO post_tag (post_id, tag_id) KEY (post_id, tag_id) VALUES (?, ?)";
+            List<Object[]> batchArgs = tagDictionary.resolveIds(added).values().stream()
+                    .map(tagId -> new Object[]{postId, tagId})
+                    .toList();
+            jdbcTemplate.batchUpdate(sql, batchArgs);
+        }
+        jdbcClient.sql("UPDATE post_stats SET tags = " + POST_TAGS_LIST + " WHERE post_id = :postId")
+                .param("postId", postId)
+                .update();
+    }
+
+    /**
+     * Links tags to many posts at once: all missing tags of all posts are added to the {@code tag} dictionary
+     * together, the links are inserted by one batch and {@code post_stats} is updated by one statement.
+     *
+     * @param tagsByPostId tag names keyed by post id
+     */
+    @Override
+    @Transactional
+    public void insertTags(Map<Long, Set<String>> tagsByPostId) {
+        Set<String> names = new HashSet<>();
+        tagsByPostId.values().forEach(names::addAll);
+        if (names.isEmpty()) {
+            return;
+        }
+        Map<String, Long> tagIds = tagDictionary.resolveIds(names);
+        String sql = "MERGE INTO post_tag (post_id, tag_id) KEY (post_id, tag_id) VALUES (?, ?)";
+        List<Object[]> batchArgs = new ArrayList<>();
+        tagsByPostId.forEach((postId, tags) ->
+                tags.forEach(tag -> batchArgs.add(new Object[]{postId, tagIds.get(tag)})));
         jdbcTemplate.batchUpdate(sql, batchArgs);
+        jdbcClient.sql("UPDATE post_stats SET tags = " + POST_TAGS_OF.formatted("post_stats.post_id")
+                        + " WHERE post_id IN (:postIds)")
+                .param("postIds", List.copyOf(tagsByPostId.keySet()))
+                .update();
     }
 
     @Override
+    @Transactional
     public void deleteTagsForPostId(long postId) {
-        String sql = "DELETE FROM tags WHERE post_id = ?";
+        String sql = "DELETE FROM post_tag WHERE post_id = ?";
         jdbcClient.sql(sql).params(postId).update();
+        jdbcClient.sql("UPDATE post_stats SET tags = '' WHERE post_id = ?").params(postId).update();
     }
 
     @Override
     public Set<String> getAllTags() {
-        String sql = "SELECT tag_name FROM tags";
-        return jdbcClient.sql(sql)
-                .query(String.class)
-                .set();
+        String sql = "SELECT DISTINCT tag_id FROM post_tag";
+        return tagDictionary.namesOf(jdbcClient.sql(sql)
+                .query(Long.class)
+                .set());
+    }
+
+    @Override
+    public Map<String, Long> getTagPostCounts() {
+        String sql = """
+                SELECT t.name, count(*) AS posts_count \
+                FROM post_tag AS pt JOIN tag AS t ON t.id = pt.tag_id \
+                GROUP BY t.name""";
+        Map<String, Long> counts = new HashMap<>();
+        jdbcClient.sql(sql)
+                .query((RowCallbackHandler) rs -> counts.put(rs.getString("name"), rs.getLong("posts_count")));
+        return counts;
     }
 
     @Override
     public long getLikesNumberByPostId(long postId) {
-        String sql = "SELECT likes_count FROM likes WHERE post_id = ?";
+        String sql = "SELECT like_count FROM post_stats WHERE post_id = ?";
 
         return (Long) jdbcClient.sql(sql)
                 .params(postId)
@@ -264,6 +678,127 @@ public class JdbcPostRepository implements PostRepository {
                 .optionalValue().orElse(0L);
     }
 
+    /**
+     * Recomputes {@code post_stats} from the base tables {@code comments}, {@code likes} and {@code post_tag}.
+     * Rows of the removed posts are removed by the cascade, so only existing posts are merged.
+     *
+     * @return number of merged rows
+     */
+    @Override
+    @Transactional
+    public int rebuildPostStats() {
+        String sql = """
+                MERGE INTO post_stats (post_id, comment_count, like_count, tags) KEY (post_id) \
+                SELECT p.id, COALESCE(c.comment_count, 0), COALESCE(l.likes_count, 0), COALESCE(t.tags, '') \
+                FROM posts AS p \
+                LEFT JOIN (SELECT post_id, count(*) AS comment_count FROM comments GROUP BY post_id) AS c \
+                  ON c.post_id = p.id \
+                LEFT JOIN likes AS l ON l.post_id = p.id \
+                LEFT JOIN (SELECT pt.post_id, LISTAGG(d.name, ', ') WITHIN GROUP (ORDER BY d.name) AS tags \
+                           FROM post_tag AS pt JOIN tag AS d ON d.id = pt.tag_id GROUP BY pt.post_id) AS t \
+                  ON t.post_id = p.id""";
+        return jdbcClient.sql(sql).update();
+    }
+
+    /**
+     * Streams all posts to the consumer row by row, the posts are never held in memory together.
+     *
+     * @param consumer receiver of the posts
+     */
+    @Override
+    public void forEachPost(Consumer<Post> consumer) {
+        jdbcTemplate.query(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(PostRowMapper.SELECT);
+                    ps.setFetchSize(1000);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(PostRowMapper.INSTANCE.mapRow(rs, rs.getRow())));
+    }
+
+    /**
+     * Streams the posts created or changed after the time to the consumer row by row.
+     *
+     * @param updatedAfter exclusive lower bound of the time of the last change
+     * @param consumer     receiver of the posts
+     */
+    @Override
+    public void forEachPost(LocalDateTime updatedAfter, Consumer<Post> consumer) {
+        jdbcTemplate.query(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(PostRowMapper.SELECT + " WHERE updated_at > ?");
+                    ps.setFetchSize(1000);
+                    ps.setObject(1, updatedAfter);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(PostRowMapper.INSTANCE.mapRow(rs, rs.getRow())));
+    }
+
+    /**
+     * @param consumer receiver of the ids of all posts in ascending order
+     */
+    @Override
+    public void forEachPostId(LongConsumer consumer) {
+        jdbcTemplate.query(connection -> {
+                    PreparedStatement ps = connection.prepareStatement("SELECT id FROM posts ORDER BY id");
+                    ps.setFetchSize(1000);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1)));
+    }
+
+    /**
+     * Streams tags of all posts to the consumer in the feed order from the oldest post.
+     *
+     * @param consumer receiver of the tags of every post
+     */
+    @Override
+    public void forEachPostTags(Consumer<PostTags> consumer) {
+        // the tags are read from post_tag, post_stats of seeded posts is filled only by the first rebuild
+        String sql = """
+                SELECT p.id, p.created_at, t.name \
+                FROM posts AS p \
+                LEFT JOIN post_tag AS pt ON pt.post_id = p.id \
+                LEFT JOIN tag AS t ON t.id = pt.tag_id \
+                ORDER BY p.created_at, p.id""";
+        // the rows of one post are adjacent, its tags are collected until the next post starts
+        List<PostTags> current = new ArrayList<>(1);
+        jdbcTemplate.query(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(sql);
+                    ps.setFetchSize(1000);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> {
+                    long postId = rs.getLong(1);
+                    if (current.isEmpty() || current.getFirst().postId() != postId) {
+                        if (!current.isEmpty()) {
+                            consumer.accept(current.removeFirst());
+                        }
+                        current.add(new PostTags(postId, rs.getObject(2, LocalDateTime.class), new HashSet<>()));
+                    }
+                    String tag = rs.getString(3);
+                    if (tag != null) {
+                        current.getFirst().tags().add(tag);
+                    }
+                });
+        if (!current.isEmpty()) {
+            consumer.accept(current.getFirst());
+        }
+    }
+
+    /**
+     * @param ids ids of the posts
+     * @return posts with their statistics in no particular order, unknown ids are skipped
+     */
+    @Override
+    public List<FeedPostDto> findPostsByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcClient.sql(FeedPostRowMapper.SELECT + " WHERE p.id IN (:ids)")
+                .param("ids", List.copyOf(ids))
+                .query(FeedPostRowMapper.INSTANCE)
+                .list();
+    }
+
     @Override
     public long getTotalPostsCount() {
         String sql = "SELECT count(*) FROM posts";
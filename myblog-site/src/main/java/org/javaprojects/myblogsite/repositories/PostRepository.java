@@ -2,23 +2,58 @@ package org.javaprojects.myblogsite.repositories;
 
 import org.javaprojects.myblogsite.dto.CommentDto;
 import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.ImageVariant;
+import org.javaprojects.myblogsite.dto.PageCursor;
+import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.dto.PostTags;
 import org.javaprojects.myblogsite.models.Post;
 
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 public interface PostRepository {
     Optional<Post> findPostById(long id);
 
+    Optional<PostDto> findPostDetailsById(long id, int commentsLimit);
+
     List<FeedPostDto> findAllPosts(int from, int number);
 
+    List<FeedPostDto> findPostsPage(PageCursor cursor, int number);
+
+    List<FeedPostDto> findPostsPageByTag(String tagName, PageCursor cursor, int number);
+
     long save(Post post);
 
+    List<Long> saveAll(List<Post> posts);
+
     void update(Post post);
 
     void delete(long postId);
 
+    Optional<String> findImageUrl(long postId);
+
+    long countPostsByImageUrl(String imageUrl);
+
+    void saveImageVariants(String imageUrl, List<ImageVariant> variants);
+
+    Map<String, List<ImageVariant>> findImageVariants(Collection<String> imageUrls);
+
+    void deleteImageVariants(String imageUrl);
+
+    void deferImageRelease(String imageUrl, LocalDateTime releasedAt);
+
+    List<String> findDeferredImageReleases(LocalDateTime releasedBefore);
+
+    void deleteDeferredImageRelease(String imageUrl);
+
     long addComment(CommentDto comment);
 
     void updateComment(CommentDto comment);
@@ -27,21 +62,45 @@ public interface PostRepository {
 
     List<CommentDto> findCommentsByPostId(long id);
 
+    List<CommentDto> findCommentsPage(long postId, PageCursor cursor, Sort.Direction order, int number);
+
     long getCommentsNumberByPost(long postId);
 
     void insertTags(Set<String> tags, long postId);
 
+    void insertTags(Map<Long, Set<String>> tagsByPostId);
+
+    void updateTags(long postId, Set<String> added, Set<String> removed);
+
     void deleteTagsForPostId(long postId);
 
     Set<String> getAllTags();
 
+    Map<String, Long> getTagPostCounts();
+
     Set<String> findTagsByPostId(long postId);
 
+    Set<Long> findTagIdsByPostId(long postId);
+
     List<FeedPostDto> findPostsByTag(String tagName, int from, int number);
 
     void addLike(long postId);
 
+    void addLikes(Map<Long, Long> likesByPostId);
+
     long getLikesNumberByPostId(long postId);
 
     long getTotalPostsCount();
+
+    void forEachPost(Consumer<Post> consumer);
+
+    void forEachPost(LocalDateTime updatedAfter, Consumer<Post> consumer);
+
+    void forEachPostId(LongConsumer consumer);
+
+    void forEachPostTags(Consumer<PostTags> consumer);
+
+    List<FeedPostDto> findPostsByIds(Collection<Long> ids);
+
+    int rebuildPostStats();
 }
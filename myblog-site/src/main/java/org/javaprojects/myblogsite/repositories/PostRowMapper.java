@@ -0,0 +1,32 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.javaprojects.myblogsite.models.Post;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Maps rows of {@link #SELECT} to {@link Post}. Columns are read by position, so the mapper doesn't
+ * introspect the record or match column names for every query; one instance is shared by all queries.
+ *
+ * @author Oleh Svyrysov
+ */
+final class PostRowMapper implements RowMapper<Post> {
+    static final String SELECT = "SELECT id, title, description, content, image_url, created_at FROM posts";
+    static final PostRowMapper INSTANCE = new PostRowMapper();
+
+    private PostRowMapper() {
+    }
+
+    @Override
+    public Post mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new Post(rs.getLong(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getString(4),
+                rs.getString(5),
+                rs.getObject(6, LocalDateTime.class));
+    }
+}
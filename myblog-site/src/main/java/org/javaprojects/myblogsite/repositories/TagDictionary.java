@@ -0,0 +1,143 @@
+package org.javaprojects.myblogsite.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TagDictionary maps tag names to the ids of {@code tag} table and back.
+ * <p>
+ * Tags are never removed from the dictionary table, so once a pair is read it stays valid and is kept
+ * in memory: every tag name is stored once in the JVM and most lookups don't touch the database.
+ * Pairs created inside a transaction are cached only after the transaction is committed.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+class TagDictionary {
+    private final JdbcClient jdbcClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Long> idsByName = new ConcurrentHashMap<>();
+    private final Map<Long, String> namesById = new ConcurrentHashMap<>();
+
+    TagDictionary(JdbcClient jdbcClient, JdbcTemplate jdbcTemplate) {
+        this.jdbcClient = jdbcClient;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param name tag name
+     * @return id of the tag or empty if there is no such tag
+     */
+    Optional<Long> findId(String name) {
+        Long id = idsByName.get(name);
+        if (id != null) {
+            return Optional.of(id);
+        }
+        Optional<Long> found = jdbcClient.sql("SELECT id FROM tag WHERE name = ?")
+                .params(name)
+                .query(Long.class)
+                .optional();
+        found.ifPresent(tagId -> remember(Map.of(name, tagId)));
+        return found;
+    }
+
+    /**
+     * Returns ids of the tags and creates the tags that don't exist yet.
+     *
+     * @param names tag names
+     * @return ids keyed by tag name
+     */
+    Map<String, Long> resolveIds(Collection<String> names) {
+        Map<String, Long> ids = new HashMap<>(names.size() * 2);
+        List<String> unknown = new ArrayList<>();
+        for (String name : names) {
+            Long id = idsByName.get(name);
+            if (id != null) {
+                ids.put(name, id);
+            } else {
+                unknown.add(name);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return ids;
+        }
+        selectIds(unknown, ids);
+        List<String> missing = unknown.stream()
+                .filter(name -> !ids.containsKey(name))
+                .toList();
+        if (!missing.isEmpty()) {
+            // all new tags are inserted by one batch and their ids are read back by one query;
+            // MERGE keeps the tag that a concurrent transaction has inserted meanwhile instead of failing
+            jdbcTemplate.batchUpdate("MERGE INTO tag (name) KEY (name) VALUES (?)",
+                    missing.stream().map(name -> new Object[]{name}).toList());
+            selectIds(missing, ids);
+        }
+        Map<String, Long> loaded = new HashMap<>(unknown.size() * 2);
+        unknown.forEach(name -> loaded.put(name, ids.get(name)));
+        remember(loaded);
+        return ids;
+    }
+
+    /**
+     * @param ids tag ids
+     * @return names of the tags, unknown ids are skipped
+     */
+    Set<String> namesOf(Collection<Long> ids) {
+        Set<String> names = new HashSet<>(ids.size() * 2);
+        List<Long> unknown = new ArrayList<>();
+        for (Long id : ids) {
+            String name = namesById.get(id);
+            if (name != null) {
+                names.add(name);
+            } else {
+                unknown.add(id);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            Map<String, Long> loaded = new HashMap<>();
+            jdbcClient.sql("SELECT id, name FROM tag WHERE id IN (:ids)")
+                    .param("ids", unknown)
+                    .query((RowCallbackHandler) rs -> loaded.put(rs.getString("name"), rs.getLong("id")));
+            remember(loaded);
+            names.addAll(loaded.keySet());
+        }
+        return names;
+    }
+
+    private void selectIds(List<String> names, Map<String, Long> ids) {
+        jdbcClient.sql("SELECT id, name FROM tag WHERE name IN (:names)")
+                .param("names", names)
+                .query((RowCallbackHandler) rs -> ids.put(rs.getString("name"), rs.getLong("id")));
+    }
+
+    private void remember(Map<String, Long> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // the rows may disappear if the transaction is rolled back
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache(tags);
+                }
+            });
+        } else {
+            cache(tags);
+        }
+    }
+
+    private void cache(Map<String, Long> tags) {
+        tags.forEach((name, id) -> {
+            // intern the name, so every tag name is stored once in the JVM
+            String interned = namesById.computeIfAbsent(id, tagId -> name);
+            idsByName.putIfAbsent(interned, id);
+        });
+    }
+}
@@ -0,0 +1,25 @@
+package org.javaprojects.myblogsite.services;
+
+/**
+ * Thrown when a bulk import stops on a malformed or invalid record. The posts of the chunks committed
+ * before the failure stay in the database.
+ */
+public class BulkImportException extends RuntimeException {
+    private final long imported;
+
+    public BulkImportException(String message, long imported, Throwable cause) {
+        super(message, cause);
+        this.imported = imported;
+    }
+
+    public BulkImportException(String message, long imported) {
+        this(message, imported, null);
+    }
+
+    /**
+     * @return number of posts committed before the failure
+     */
+    public long getImported() {
+        return imported;
+    }
+}
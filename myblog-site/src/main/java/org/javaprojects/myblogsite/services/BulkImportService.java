@@ -0,0 +1,182 @@
+package org.javaprojects.myblogsite.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.javaprojects.myblogsite.configuration.ImportProperties;
+import org.javaprojects.myblogsite.dto.ImportResult;
+import org.javaprojects.myblogsite.dto.ImportedPost;
+import org.javaprojects.myblogsite.dto.TagCodec;
+import org.javaprojects.myblogsite.models.Post;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BulkImportService streams posts of an archive into the database.
+ * <p>
+ * The archive is read record by record, it is never loaded into memory as a whole. Posts are collected into
+ * chunks of {@code application.import.chunk-size}, every chunk is written by a few JDBC batches (posts with their
+ * generated ids, tags of all posts of the chunk, {@code post_stats}) and committed by its own transaction.
+ * If a record is malformed the import stops, the chunks committed before it stay in the database. Records are
+ * checked against the lengths of the columns before they are written, so an invalid record does not fail
+ * the transaction of its chunk.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class BulkImportService {
+    private static final Logger log = LoggerFactory.getLogger(BulkImportService.class);
+    private static final int MAX_TITLE_LENGTH = 256;
+    private static final int MAX_IMAGE_URL_LENGTH = 256;
+    private static final int MAX_TAG_LENGTH = 256;
+
+    private final PostRepository postRepository;
+    private final PostCountsService postCountsService;
+    private final SearchIndexService searchIndexService;
+    private final TagFilterService tagFilterService;
+    private final StorageService storageService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader reader;
+    private final int chunkSize;
+
+    public BulkImportService(PostRepository postRepository,
+                             PostCountsService postCountsService,
+                             SearchIndexService searchIndexService,
+                             TagFilterService tagFilterService,
+                             StorageService storageService,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             ImportProperties properties) {
+        this.postRepository = postRepository;
+        this.postCountsService = postCountsService;
+        this.searchIndexService = searchIndexService;
+        this.tagFilterService = tagFilterService;
+        this.storageService = storageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reader = objectMapper.readerFor(ImportedPost.class);
+        this.chunkSize = properties.chunkSize();
+    }
+
+    /**
+     * Imports posts of a JSON-lines archive, one {@link ImportedPost} object per line.
+     *
+     * @param jsonLines archive, it is closed when the import ends
+     * @return number of imported posts
+     * @throws BulkImportException if a record can't be read or is invalid
+     */
+    public ImportResult importPosts(InputStream jsonLines) {
+        long started = System.nanoTime();
+        long imported = 0;
+        int chunks = 0;
+        long record = 0;
+        List<ImportedPost> chunk = new ArrayList<>(chunkSize);
+        try (MappingIterator<ImportedPost> records = reader.readValues(jsonLines)) {
+            while (records.hasNextValue()) {
+                record++;
+                chunk.add(validate(records.nextValue(), record, imported));
+                if (chunk.size() == chunkSize) {
+                    imported += write(chunk);
+                    chunks++;
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                imported += write(chunk);
+                chunks++;
+            }
+        } catch (JsonProcessingException e) {
+            throw new BulkImportException("Record " + (record + 1) + " is malformed: " + e.getOriginalMessage(),
+                    imported, e);
+        } catch (IOException e) {
+            throw new BulkImportException("Failed to read the archive", imported, e);
+        } catch (DataAccessException e) {
+            throw new BulkImportException("Failed to write the posts before record " + (record + 1), imported, e);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        log.info("Imported {} posts in {} chunks, {} ms", imported, chunks, elapsedMillis);
+        return new ImportResult(imported, chunks, elapsedMillis);
+    }
+
+    private int write(List<ImportedPost> chunk) {
+        List<Post> posts = new ArrayList<>(chunk.size());
+        List<Set<String>> tags = new ArrayList<>(chunk.size());
+        // posts without the creation time are stamped here, the in-memory indexes need the stored time
+        LocalDateTime now = LocalDateTime.now();
+        for (ImportedPost imported : chunk) {
+            String imageUrl = imported.imageUrl() == null || imported.imageUrl().isBlank()
+                    ? storageService.getDefaultFilePath()
+                    : imported.imageUrl();
+            posts.add(new Post(null, imported.title(), imported.description(), imported.content(), imageUrl,
+                    imported.createdAt() != null ? imported.createdAt() : now));
+            tags.add(TagCodec.parse(imported.tags()));
+        }
+        List<Long> ids = transactionTemplate.execute(status -> {
+            List<Long> savedIds = postRepository.saveAll(posts);
+            Map<Long, Set<String>> tagsByPostId = new HashMap<>(savedIds.size() * 2);
+            for (int i = 0; i < savedIds.size(); i++) {
+                if (!tags.get(i).isEmpty()) {
+                    tagsByPostId.put(savedIds.get(i), tags.get(i));
+                }
+            }
+            postRepository.insertTags(tagsByPostId);
+            // the counts are changed once the chunk is committed
+            tags.forEach(postCountsService::postCreated);
+            return savedIds;
+        });
+        // in-memory indexes are updated only for committed posts
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            tagFilterService.postCreated(ids.get(i), post.createdAt(), tags.get(i));
+            searchIndexService.postIndexed(new Post(ids.get(i), post.title(), post.description(), post.content(),
+                    post.imageUrl(), post.createdAt()));
+        }
+        return posts.size();
+    }
+
+    private static ImportedPost validate(ImportedPost post, long record, long imported) {
+        if (post == null) {
+            throw new BulkImportException("Record " + record + " is empty", imported);
+        }
+        requireText(post.title(), "title", record, imported);
+        requireText(post.description(), "description", record, imported);
+        requireText(post.content(), "content", record, imported);
+        if (post.title().length() > MAX_TITLE_LENGTH || post.description().length() > MAX_TITLE_LENGTH) {
+            throw new BulkImportException("Record " + record + ": title and description must not be longer than "
+                    + MAX_TITLE_LENGTH + " characters", imported);
+        }
+        if (post.imageUrl() != null && post.imageUrl().length() > MAX_IMAGE_URL_LENGTH) {
+            throw new BulkImportException("Record " + record + ": imageUrl must not be longer than "
+                    + MAX_IMAGE_URL_LENGTH + " characters", imported);
+        }
+        for (String tag : TagCodec.parse(post.tags())) {
+            if (tag.length() > MAX_TAG_LENGTH) {
+                throw new BulkImportException("Record " + record + ": tags must not be longer than "
+                        + MAX_TAG_LENGTH + " characters", imported);
+            }
+        }
+        return post;
+    }
+
+    private static void requireText(String value, String field, long record, long imported) {
+        if (value == null || value.isBlank()) {
+            throw new BulkImportException("Record " + record + ": " + field + " is required", imported);
+        }
+    }
+}
@@ -1,30 +1,102 @@
 package org.javaprojects.myblogsite.services;
 
+import org.javaprojects.myblogsite.configuration.PostProperties;
 import org.javaprojects.myblogsite.dto.CommentDto;
+import org.javaprojects.myblogsite.dto.CommentPage;
+import org.javaprojects.myblogsite.dto.FeedPage;
 import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.PageCursor;
 import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.dto.SearchPage;
+import org.javaprojects.myblogsite.dto.TagCodec;
+import org.javaprojects.myblogsite.dto.TagFilter;
 import org.javaprojects.myblogsite.models.Post;
 import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static org.javaprojects.myblogsite.configuration.ApplicationConfiguration.POST_ASSEMBLY_EXECUTOR;
 
 /**
  * DefaultPostService is a Spring service that implements {@link PostService} that works in business layer
+ * <p>
+ * Assembled post pages are cached in {@value #POSTS_CACHE} cache, every method that changes the post,
+ * its comments or tags evicts the entry of that post. Transactional changes evict it after the commit, otherwise
+ * a concurrent read could cache the old page again. Likes don't evict it, a hot post would never be served
+ * from the cache, so callers take the live count from {@link #getLikes(long)}. The independent reads of a post page run
+ * concurrently on the post assembly executor, so a cache miss costs about as much as the slowest of them,
+ * or are done by one query when the database is far away ({@code application.posts.details-loading}).
+ * </p>
  *
  * @author Oleh Svyrysov
  */
 @Service
 public class DefaultPostService implements PostService {
+    public static final String POSTS_CACHE = "posts";
 
     private final PostRepository postRepository;
     private final StorageService storageService;
+    private final LikeCounterService likeCounterService;
+    private final TagIndexService tagIndexService;
+    private final PostCountsService postCountsService;
+    private final SearchIndexService searchIndexService;
+    private final TagFilterService tagFilterService;
+    private final ImageVariantService imageVariantService;
+    private final ImageReleaseService imageReleaseService;
+    private final CacheManager cacheManager;
+    private final PostProperties postProperties;
+    private final Executor postAssemblyExecutor;
 
-    public DefaultPostService(PostRepository postRepository, StorageService storageService) {
+    public DefaultPostService(PostRepository postRepository,
+                              StorageService storageService,
+                              LikeCounterService likeCounterService,
+                              TagIndexService tagIndexService,
+                              PostCountsService postCountsService,
+                              SearchIndexService searchIndexService,
+                              TagFilterService tagFilterService,
+                              ImageVariantService imageVariantService,
+                              ImageReleaseService imageReleaseService,
+                              CacheManager cacheManager,
+                              PostProperties postProperties,
+                              @Qualifier(POST_ASSEMBLY_EXECUTOR) Executor postAssemblyExecutor) {
         this.postRepository = postRepository;
         this.storageService = storageService;
+        this.likeCounterService = likeCounterService;
+        this.tagIndexService = tagIndexService;
+        this.postCountsService = postCountsService;
+        this.searchIndexService = searchIndexService;
+        this.tagFilterService = tagFilterService;
+        this.imageVariantService = imageVariantService;
+        this.imageReleaseService = imageReleaseService;
+        this.cacheManager = cacheManager;
+        this.postProperties = postProperties;
+        this.postAssemblyExecutor = postAssemblyExecutor;
     }
 
     @Override
@@ -37,22 +109,93 @@ public class DefaultPostService implements PostService {
         return postRepository.findPostsByTag(tagName, from, number);
     }
 
+    /**
+     * Returns a page of the feed using keyset pagination. One extra row is requested
+     * to find out whether there is one more page in the direction of the cursor.
+     * Posts filtered by tags are found by the in-memory tag index, only the posts of the page are read
+     * from the database.
+     *
+     * @param filter tags to filter posts by, all posts when it is empty
+     * @param cursor cursor received from the previous page or {@code null} for the first page
+     * @param limit  number of posts on the page
+     * @return the page with cursors to the neighbour pages
+     */
+    @Override
+    public FeedPage findPostsPage(TagFilter filter, PageCursor cursor, int limit) {
+        List<FeedPostDto> rows = filter.isEmpty()
+                ? postRepository.findPostsPage(cursor, limit + 1)
+                : findPostsInOrder(tagFilterService.findPostIds(filter, cursor, limit + 1));
+        boolean backward = cursor != null && cursor.isBackward();
+        if (rows.isEmpty()) {
+            // newer posts could have been removed since the cursor was issued, so start from the beginning
+            return backward ? findPostsPage(filter, null, limit) : FeedPage.empty();
+        }
+        boolean hasMore = rows.size() > limit;
+        List<FeedPostDto> posts = rows;
+        if (hasMore) {
+            // the extra row is the farthest one from the cursor
+            posts = backward ? rows.subList(1, rows.size()) : rows.subList(0, limit);
+        }
+        boolean hasNewer = backward ? hasMore : cursor != null;
+        boolean hasOlder = backward || hasMore;
+
+        FeedPostDto first = posts.get(0);
+        FeedPostDto last = posts.get(posts.size() - 1);
+        String nextCursor = hasOlder ? PageCursor.next(last.getCreatedAt(), last.getId()).encode() : null;
+        String previousCursor = hasNewer ? PageCursor.previous(first.getCreatedAt(), first.getId()).encode() : null;
+        imageVariantService.setImageVariants(posts);
+        return new FeedPage(posts, nextCursor, previousCursor);
+    }
+
     @Override
+    @Cacheable(cacheNames = POSTS_CACHE, key = "#id")
     public PostDto findPostById(long id) {
-        Post post = postRepository.findPostById(id).orElseThrow();
-        Set<String> tags = postRepository.findTagsByPostId(id);
+        // one comment more than the page size tells whether there are more comments to load
+        int commentsLimit = postProperties.commentsPageSize() + 1;
+        if (postProperties.detailsLoading() == PostProperties.DetailsLoading.SINGLE_QUERY) {
+            PostDto postDto = postRepository.findPostDetailsById(id, commentsLimit).orElseThrow();
+            postDto.setLikesCount(likeCounterService.getLikes(id, postDto.getLikesCount()));
+            setFirstCommentsPage(postDto, postDto.getComments());
+            return postDto;
+        }
+        CompletableFuture<Optional<Post>> postFuture = readAsync(() -> postRepository.findPostById(id));
+        CompletableFuture<Set<String>> tagsFuture = readAsync(() -> postRepository.findTagsByPostId(id));
+        CompletableFuture<List<CommentDto>> commentsFuture = readAsync(
+                () -> postRepository.findCommentsPage(id, null, Sort.Direction.ASC, commentsLimit));
+        CompletableFuture<Long> commentsCountFuture = readAsync(() -> postRepository.getCommentsNumberByPost(id));
+        CompletableFuture<Long> likesFuture = readAsync(() -> likeCounterService.getLikes(id));
+        awaitAll(postFuture, tagsFuture, commentsFuture, commentsCountFuture, likesFuture);
+
+        Post post = postFuture.join().orElseThrow();
+        Set<String> tags = tagsFuture.join();
         PostDto postDto = new PostDto(post.id(), post.title(), post.description(), post.content(), post.imageUrl());
         if (!tags.isEmpty()) {
-            postDto.setTags(String.join(", ", tags));
+            // by name, as the single query orders them
+            postDto.setTags(new TreeSet<>(tags));
         }
-        List<CommentDto> comments = findCommentsByPost(id);
-        postDto.setComments(comments);
+        setFirstCommentsPage(postDto, commentsFuture.join());
+        postDto.setCommentsCount(commentsCountFuture.join());
+        postDto.setLikesCount(likesFuture.join());
         return postDto;
     }
 
+    private void setFirstCommentsPage(PostDto postDto, List<CommentDto> rows) {
+        CommentPage page = toCommentPage(rows, postProperties.commentsPageSize());
+        postDto.setComments(page.comments());
+        postDto.setNextCommentsCursor(page.nextCursor());
+    }
+
+    /**
+     * Saves the post with its tags in one transaction, in-memory counters and indexes learn about the post
+     * once it is committed.
+     *
+     * @param postDto new post
+     */
     @Override
+    @Transactional
     public void createPost(PostDto postDto) {
-        String imageUrl = storageService.handleFileUpload(postDto.getImage());
+        String imageUrl = storeImage(postDto);
+        imageVariantService.imageUploaded(imageUrl);
         Post post = new Post(null,
                 postDto.getTitle(),
                 postDto.getDescription(),
@@ -62,18 +205,33 @@ public class DefaultPostService implements PostService {
         );
         long id = postRepository.save(post);
         if (id != -1) {
-            Set<String> tags = Set.of(postDto.getTags().split("[,| ]\\s*"));
+            Set<String> tags = TagCodec.parse(postDto.getTags());
             postRepository.insertTags(tags, id);
+            postCountsService.postCreated(tags);
+            afterCommit(() -> tagFilterService.postCreated(id, post.createdAt(), tags));
+            afterCommit(() -> searchIndexService.postIndexed(new Post(id, post.title(), post.description(),
+                    post.content(), post.imageUrl(), post.createdAt())));
         }
     }
 
+    /**
+     * Updates the post and applies only the difference between its stored and submitted tags,
+     * everything is done in one transaction.
+     *
+     * @param postDto changed post
+     */
     @Override
+    @Transactional
     public void updatePost(PostDto postDto) {
         String imageUrl;
-        if (!postDto.getImage().isEmpty()) {
-            imageUrl = storageService.handleFileUpload(postDto.getImage());
+        String oldImageUrl;
+        if (hasNewImage(postDto)) {
+            imageUrl = storeImage(postDto);
+            imageVariantService.imageUploaded(imageUrl);
+            oldImageUrl = postRepository.findImageUrl(postDto.getId()).orElse(null);
         } else {
             imageUrl = null;
+            oldImageUrl = null;
         }
         Post post = new Post(
                 postDto.getId(),
@@ -84,24 +242,121 @@ public class DefaultPostService implements PostService {
                 LocalDateTime.now()
         );
         postRepository.update(post);
-        Set<String> tags = Set.of(postDto.getTags().split("[,|]\\s*"));
-        postRepository.deleteTagsForPostId(postDto.getId());
-        postRepository.insertTags(tags, postDto.getId());
-        postRepository.update(post);
+        afterCommit(() -> evictPost(postDto.getId()));
+        afterCommit(() -> searchIndexService.postIndexed(post));
+        if (oldImageUrl != null && !oldImageUrl.equals(imageUrl)) {
+            afterCommit(() -> imageReleaseService.release(oldImageUrl));
+        }
+        Set<String> tags = TagCodec.parse(postDto.getTags());
+        Set<String> oldTags = postRepository.findTagsByPostId(postDto.getId());
+        Set<String> added = new HashSet<>(tags);
+        added.removeAll(oldTags);
+        Set<String> removed = new HashSet<>(oldTags);
+        removed.removeAll(tags);
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            postRepository.updateTags(postDto.getId(), added, removed);
+            postCountsService.tagsChanged(removed, added);
+            afterCommit(() -> tagFilterService.tagsChanged(postDto.getId(), removed, added));
+        }
+    }
+
+    // in-memory counters must not count changes that are rolled back, PostCountsService defers its changes
+    // by itself, it announces them before the commit
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
+    /**
+     * Deletes the post in one transaction, in-memory counters and indexes forget the post and its image
+     * is released once the deletion is committed.
+     *
+     * @param postId id of the post
+     */
     @Override
+    @Transactional
     public void deletePost(Long postId) {
+        Set<String> tags = postRepository.findTagsByPostId(postId);
+        Optional<String> imageUrl = postRepository.findImageUrl(postId);
         postRepository.delete(postId);
+        afterCommit(() -> evictPost(postId));
+        afterCommit(() -> likeCounterService.forget(postId));
+        postCountsService.postDeleted(tags);
+        afterCommit(() -> tagFilterService.postRemoved(postId));
+        afterCommit(() -> searchIndexService.postRemoved(postId));
+        imageUrl.ifPresent(url -> afterCommit(() -> imageReleaseService.release(url)));
     }
 
+    private void evictPost(Long postId) {
+        Cache cache = cacheManager.getCache(POSTS_CACHE);
+        if (cache != null) {
+            cache.evict(postId);
+        }
+    }
+
+    // the image has been streamed to the storage before the form was submitted, or it is a part of the form
+    private String storeImage(PostDto postDto) {
+        String uploadedImageUrl = postDto.getUploadedImageUrl();
+        if (uploadedImageUrl != null && !uploadedImageUrl.isBlank()) {
+            if (!storageService.isStoredFile(uploadedImageUrl)) {
+                throw new InvalidImageException("Unknown uploaded image: " + uploadedImageUrl);
+            }
+            return uploadedImageUrl;
+        }
+        return storageService.handleFileUpload(postDto.getImage());
+    }
+
+    private static boolean hasNewImage(PostDto postDto) {
+        return (postDto.getUploadedImageUrl() != null && !postDto.getUploadedImageUrl().isBlank())
+                || (postDto.getImage() != null && !postDto.getImage().isEmpty());
+    }
+
+    /**
+     * Ranks posts by the search index in memory, only the posts of the requested page are read from the database.
+     *
+     * @param query  words to look for in titles, descriptions and contents
+     * @param offset number of the most relevant posts to skip
+     * @param limit  maximum number of posts on the page
+     * @return found posts of the page, the most relevant first
+     */
     @Override
+    public SearchPage searchPosts(String query, long offset, int limit) {
+        SearchIndexService.SearchHits hits = searchIndexService.search(query, offset, limit);
+        List<FeedPostDto> posts = findPostsInOrder(hits.postIds());
+        imageVariantService.setImageVariants(posts);
+        return new SearchPage(posts, hits.total());
+    }
+
+    // posts removed since their ids were found are skipped
+    private List<FeedPostDto> findPostsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, FeedPostDto> postsById = new HashMap<>();
+        postRepository.findPostsByIds(ids).forEach(post -> postsById.put(post.getId(), post));
+        return ids.stream()
+                .map(postsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    @CacheEvict(cacheNames = POSTS_CACHE, key = "#commentDto.postId")
     public void addComment(CommentDto commentDto) {
         commentDto.setCreatedAt(LocalDateTime.now());
         postRepository.addComment(commentDto);
     }
 
     @Override
+    @CacheEvict(cacheNames = POSTS_CACHE, key = "#commentDto.postId")
     public void updateComment(CommentDto commentDto) {
         postRepository.updateComment(commentDto);
     }
@@ -111,14 +366,38 @@ public class DefaultPostService implements PostService {
         return postRepository.findCommentsByPostId(postId);
     }
 
+    /**
+     * Returns a page of comments of the post using keyset pagination. One extra row is requested from
+     * the repository to find out whether there is one more page.
+     *
+     * @param postId id of the post
+     * @param cursor cursor received with the previous page or {@code null} for the first page
+     * @param order  order of comments by creation time
+     * @param limit  number of comments on the page
+     * @return the page with a cursor to the next page
+     */
+    @Override
+    public CommentPage findCommentsPage(long postId, PageCursor cursor, Sort.Direction order, int limit) {
+        return toCommentPage(postRepository.findCommentsPage(postId, cursor, order, limit + 1), limit);
+    }
+
+    private static CommentPage toCommentPage(List<CommentDto> rows, int limit) {
+        if (rows.size() <= limit) {
+            return new CommentPage(rows, null);
+        }
+        List<CommentDto> comments = new ArrayList<>(rows.subList(0, limit));
+        CommentDto last = comments.get(limit - 1);
+        return new CommentPage(comments, PageCursor.next(last.getCreatedAt(), last.getId()).encode());
+    }
+
     @Override
-    public void addLike(long postId) {
-        postRepository.addLike(postId);
+    public long addLike(long postId) {
+        return likeCounterService.addLike(postId);
     }
 
     @Override
     public long getLikes(long postId) {
-        return postRepository.getLikesNumberByPostId(postId);
+        return likeCounterService.getLikes(postId);
     }
 
     @Override
@@ -128,17 +407,49 @@ public class DefaultPostService implements PostService {
 
     @Override
     public Set<String> findAllTags() {
-        return postRepository.getAllTags();
+        return tagIndexService.getAllTags();
     }
 
     @Override
     public long getTotalPostsCount() {
-        return postRepository.getTotalPostsCount();
+        return postCountsService.getTotalPosts();
     }
 
     @Override
-    public void deleteComment(Long commentId) {
+    public long getPostsCount(TagFilter filter) {
+        return filter.isEmpty() ? postCountsService.getTotalPosts() : tagFilterService.countPosts(filter);
+    }
+
+    @Override
+    @CacheEvict(cacheNames = POSTS_CACHE, key = "#postId")
+    public void deleteComment(Long postId, Long commentId) {
         postRepository.deleteComment(commentId);
     }
 
+    private <T> CompletableFuture<T> readAsync(Supplier<T> read) {
+        return CompletableFuture.supplyAsync(read, postAssemblyExecutor);
+    }
+
+    /**
+     * Waits until all reads are completed, but no longer than {@code application.posts.fan-out-timeout}.
+     * The first failure of a read is rethrown, the reads are cancelled on timeout.
+     */
+    private void awaitAll(CompletableFuture<?>... reads) {
+        try {
+            CompletableFuture.allOf(reads).get(postProperties.fanOutTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            for (CompletableFuture<?> read : reads) {
+                read.cancel(true);
+            }
+            throw new QueryTimeoutException("Post page was not loaded in " + postProperties.fanOutTimeout(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the post page", e);
+        }
+    }
 }
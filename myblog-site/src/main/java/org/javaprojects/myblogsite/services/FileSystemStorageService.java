@@ -4,19 +4,31 @@ import org.javaprojects.myblogsite.configuration.ImageProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -25,19 +37,27 @@ import java.util.UUID;
  * <p>
  * It reads configuration properties from an {@link ImageProperties} bean. The service
  * determines the upload directory from the configured resource and ensures the directory exists.
- * Files uploaded via {@link #handleFileUpload(MultipartFile)} are stored in this directory, and
- * a relative path is returned based on the configured {@code imageDirectory} value.
+ * Images uploaded via {@link #handleStreamUpload(InputStream)} or {@link #handleFileUpload(MultipartFile)}
+ * are stored in this directory under the hash of their content, and a relative path is returned based
+ * on the configured {@code imageDirectory} value.
+ * </p>
+ * <p>
+ * It is the default storage, the images are seen only by the node they were uploaded to.
+ * {@link S3StorageService} stores them in an object store shared by all nodes.
  * </p>
  *
  * @author Oleh Svyrysov
  */
 @Service
+@ConditionalOnProperty(prefix = "application.storage", name = "type", havingValue = "filesystem", matchIfMissing = true)
 public class FileSystemStorageService implements StorageService {
 
     private static final Logger log = LoggerFactory.getLogger(FileSystemStorageService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
     private final URI rootLocation;
     private final String imageDirectory;
     private final String defaultFilePath;
+    private final long maxFileSize;
 
     /**
      * Constructs a new {@code FileSystemStorageService} using the provided image properties.
@@ -76,49 +96,212 @@ public class FileSystemStorageService implements StorageService {
 
         this.defaultFilePath = properties.defaultImagePath();
         this.imageDirectory = Path.of(properties.uploadDirectoryHandlerPath()).toString();
+        this.maxFileSize = properties.maxFileSize().toBytes();
     }
 
     /**
      * Handles the upload of a file.
      * <p>
      * If the provided {@link MultipartFile} is null or empty, the default file path is returned.
-     * Otherwise, the method stores the file in the configured upload directory (specified by {@code rootLocation})
-     * and returns a path based on the configured {@code imageDirectory}. The file is stored with its original filename,
-     * or if the original filename is not available, a random UUID is used with a ".jpg" extension.
+     * Otherwise, the file is stored like a streamed upload, see {@link #handleStreamUpload(InputStream)}.
      * </p>
      *
      * @param file the {@link MultipartFile} to upload.
      * @return the relative path to the stored file, or the default file path if the file is null or empty.
+     * @throws InvalidImageException if the file is not an image or is too large.
      * @throws StorageException if an I/O error occurs during the file storage process.
      */
     @Override
     public String handleFileUpload(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            log.warn("Failed to store empty file or it was not uploaded.");
+            return defaultFilePath;
+        }
+        log.info("Storing file: Original name: {}, name: {}, contentType: {}", file.getOriginalFilename(), file.getName(), file.getContentType());
         try {
-            if (file == null || file.isEmpty()) {
-                log.warn("Failed to store empty file or it was not uploaded.");
-                return defaultFilePath;
-            }
-            log.info("Storing file: Original name: {}, name: {}, contentType: {}", file.getOriginalFilename(), file.getName(), file.getContentType());
-            String destinationFileName;
-            String filename = file.getOriginalFilename();
-            if (filename != null && !filename.isEmpty()) {
-                destinationFileName = Path.of(filename).getFileName().toString();
-            } else {
-                destinationFileName = UUID.randomUUID() + ".jpg";
+            return handleStreamUpload(file.getInputStream());
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        }
+    }
+
+    /**
+     * Stores an image by its content.
+     * <p>
+     * The content is copied to a hidden temporary file in the upload directory (specified by {@code rootLocation})
+     * through one direct buffer. While it is copied, its SHA-256 is computed, its size is checked against
+     * {@code maxFileSize} and its first bytes must be the signature of a JPEG, PNG, GIF or WebP image, so an invalid
+     * upload is rejected as soon as it is recognized. The file gets the hash as its name and the extension
+     * of its image type, and is moved to its place by a rename. Files are spread over subdirectories
+     * by the first bytes of the hash, e.g. {@code /upload/3f/a1/3fa1...c2.jpg}. Identical content is stored once,
+     * so uploads never overwrite each other and the returned path always refers to the same content.
+     * </p>
+     *
+     * @param content content of the image, it is closed
+     * @return the relative path to the stored file
+     * @throws InvalidImageException if the content is not an image or is too large
+     * @throws StorageException if an I/O error occurs during the file storage process
+     */
+    @Override
+    public String handleStreamUpload(InputStream content) {
+        Path root = Paths.get(rootLocation.getPath());
+        // the temporary file is in the upload directory, so it is moved to its place without copying
+        Path temporaryFile = root.resolve(".upload-" + UUID.randomUUID());
+        try (ReadableByteChannel source = Channels.newChannel(content)) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                ImageType type = copy(source, temporaryFile, digest);
+                String hash = HexFormat.of().formatHex(digest.digest());
+                Path relativePath = Path.of(type.relativePath(hash));
+                Path destination = root.resolve(relativePath);
+                if (touch(destination)) {
+                    log.info("File {} is stored already, rootLocation: {}", relativePath, rootLocation.getPath());
+                } else {
+                    log.info("Storing file: {}, rootLocation: {}", relativePath, rootLocation.getPath());
+                    Files.createDirectories(destination.getParent());
+                    Files.move(temporaryFile, destination, StandardCopyOption.ATOMIC_MOVE);
+                }
+                log.debug("Properties: imageDirectory: {}, defaultFilePath: {}", imageDirectory, defaultFilePath);
+                return Paths.get(imageDirectory, relativePath.toString()).toString();
+            } finally {
+                Files.deleteIfExists(temporaryFile);
             }
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            log.info("Storing file: {}, rootLocation: {}", destinationFileName, rootLocation.getPath());
-            log.debug("Properties: imageDirectory: {}, defaultFilePath: {}", imageDirectory, defaultFilePath);
-            try (InputStream inputStream = new BufferedInputStream(file.getInputStream())) {
-                Files.copy(inputStream, Paths.get(rootLocation.getPath(), destinationFileName),
-                        StandardCopyOption.REPLACE_EXISTING);
+    // copies the content to the file, hashes and checks it on the way and returns its image type
+    private ImageType copy(ReadableByteChannel source, Path file, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ImageType type = null;
+        long size = 0;
+        try (FileChannel target = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            boolean end = false;
+            while (!end) {
+                end = source.read(buffer) < 0;
+                if (type == null) {
+                    if (buffer.position() < ImageType.SIGNATURE_LENGTH && !end) {
+                        continue;
+                    }
+                    type = ImageType.of(buffer);
+                }
+                size += buffer.position();
+                if (size > maxFileSize) {
+                    throw new InvalidImageException("The image is larger than " + maxFileSize + " bytes");
+                }
+                buffer.flip();
+                digest.update(buffer);
+                buffer.rewind();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
             }
+        }
+        return type;
+    }
+
+    @Override
+    public boolean isStoredFile(String path) {
+        try {
+            Path file = resolve(path);
+            return !file.getFileName().toString().startsWith(".") && Files.isRegularFile(file);
+        } catch (StorageFileNotFoundException e) {
+            return false;
+        }
+    }
 
-            Path path = Paths.get(imageDirectory, destinationFileName);
-            return path.toString();
+    @Override
+    public InputStream readFile(String path) {
+        Path file = resolve(path);
+        try {
+            return Files.newInputStream(file);
+        } catch (IOException e) {
+            throw new StorageFileNotFoundException("Could not read file: " + path, e);
+        }
+    }
 
+    @Override
+    public void storeFile(String path, byte[] content) {
+        Path file = resolve(path);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temporaryFile = file.resolveSibling(".store-" + UUID.randomUUID());
+            try {
+                Files.write(temporaryFile, content);
+                Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
         } catch (IOException e) {
-            throw new StorageException("Failed to store file.", e);
+            throw new StorageException("Failed to store file " + path, e);
+        }
+    }
+
+    /**
+     * Deletes a stored file that no post refers to anymore.
+     * <p>
+     * An upload of the same content reuses the stored file before its post is saved, so the file is kept
+     * if it was stored again within {@link #RELEASE_GRACE_PERIOD}. Paths outside the upload directory,
+     * e.g. the default image, are ignored.
+     * </p>
+     *
+     * @param path the relative path returned by {@link #handleFileUpload(MultipartFile)}
+     * @return whether the file has been deleted
+     */
+    @Override
+    public boolean releaseFile(String path) {
+        if (path == null || !path.startsWith(imageDirectory + "/")) {
+            return false;
+        }
+        try {
+            Path file = resolve(path);
+            Instant modified = Files.getLastModifiedTime(file).toInstant();
+            if (modified.isAfter(Instant.now().minus(RELEASE_GRACE_PERIOD))) {
+                log.info("File {} has been stored recently and is kept", path);
+                return false;
+            }
+            Files.delete(file);
+            log.info("Released file {}", path);
+            return true;
+        } catch (NoSuchFileException e) {
+            log.debug("File {} has been released already", path);
+            return true;
+        } catch (IOException | StorageFileNotFoundException e) {
+            log.warn("Failed to release file {}", path, e);
+            return false;
+        }
+    }
+
+    // files are sent by ImageController
+    @Override
+    public Optional<ReadUrl> getReadUrl(String path) {
+        return Optional.empty();
+    }
+
+    // the file of a path returned by handleFileUpload
+    private Path resolve(String path) {
+        Path root = Paths.get(rootLocation.getPath());
+        if (path == null || !path.startsWith(imageDirectory + "/")) {
+            throw new StorageFileNotFoundException("Not a stored file: " + path);
+        }
+        Path file = root.resolve(path.substring(imageDirectory.length() + 1)).normalize();
+        if (!file.startsWith(root)) {
+            throw new StorageFileNotFoundException("Not a stored file: " + path);
+        }
+        return file;
+    }
+
+    // marks the stored file as used again, returns false if there is no such file
+    private static boolean touch(Path file) throws IOException {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
         }
     }
 
@@ -0,0 +1,75 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * ImageReleaseService deletes stored images that no post shows anymore, together with their variants.
+ * <p>
+ * The storage keeps a file that was stored again within {@link StorageService#RELEASE_GRACE_PERIOD}, because
+ * a post that is being created may refer to it. Such a release, or one that has failed, is recorded in
+ * {@code deferred_image_releases} table and retried every {@code application.images.release-retry-interval},
+ * so images of posts that were deleted or edited right after the upload don't stay in the storage forever.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class ImageReleaseService {
+    private static final Logger log = LoggerFactory.getLogger(ImageReleaseService.class);
+    private final PostRepository postRepository;
+    private final StorageService storageService;
+    private final ImageVariantService imageVariantService;
+
+    public ImageReleaseService(PostRepository postRepository,
+                               StorageService storageService,
+                               ImageVariantService imageVariantService) {
+        this.postRepository = postRepository;
+        this.storageService = storageService;
+        this.imageVariantService = imageVariantService;
+    }
+
+    /**
+     * Deletes the image and its variants unless a post still shows it. Posts with the same image share
+     * the stored file, it is released with the last of them.
+     *
+     * @param imageUrl url of the image of a removed post or the previous image of a changed post
+     */
+    public void release(String imageUrl) {
+        if (imageUrl == null || !imageUrl.startsWith(storageService.getImageDirectory() + "/")) {
+            return;
+        }
+        if (postRepository.countPostsByImageUrl(imageUrl) > 0) {
+            return;
+        }
+        if (storageService.releaseFile(imageUrl) && imageVariantService.imageReleased(imageUrl)) {
+            return;
+        }
+        log.debug("Release of image {} is deferred", imageUrl);
+        postRepository.deferImageRelease(imageUrl, LocalDateTime.now());
+    }
+
+    /**
+     * Retries the releases that were deferred at least {@link StorageService#RELEASE_GRACE_PERIOD} ago.
+     * An image that is still kept is deferred again.
+     */
+    @Scheduled(fixedDelayString = "${application.images.release-retry-interval:PT10M}",
+            initialDelayString = "${application.images.release-retry-interval:PT10M}")
+    public void retryDeferredReleases() {
+        List<String> imageUrls = postRepository.findDeferredImageReleases(
+                LocalDateTime.now().minus(StorageService.RELEASE_GRACE_PERIOD));
+        for (String imageUrl : imageUrls) {
+            postRepository.deleteDeferredImageRelease(imageUrl);
+            release(imageUrl);
+        }
+        if (!imageUrls.isEmpty()) {
+            log.info("Retried releases of {} images", imageUrls.size());
+        }
+    }
+}
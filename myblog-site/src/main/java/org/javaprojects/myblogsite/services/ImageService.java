@@ -0,0 +1,112 @@
+package org.javaprojects.myblogsite.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * ImageService resolves uploaded images in the upload directory for serving over HTTP. Images in an object store
+ * are not sent by the application, so it exists only with {@link FileSystemStorageService}.
+ * <p>
+ * Every image gets a strong ETag, the SHA-256 of its content. Content-addressed files are named by that hash,
+ * resized variants by the hash of their image and their width, so their ETag is taken from the name and they never
+ * change. Other files are hashed once and the hash is
+ * cached until the size or modification time of the file changes.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+@ConditionalOnProperty(prefix = "application.storage", name = "type", havingValue = "filesystem", matchIfMissing = true)
+public class ImageService {
+    // hex SHA-256 of the content, of the image for its resized variants, and an optional extension
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("([0-9a-f]{64}(?:-\\d+w)?)(\\.[A-Za-z0-9]+)?");
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Cache<Path, ImageFile> images = Caffeine.newBuilder().maximumSize(10_000).build();
+
+    public ImageService(StorageService storageService) {
+        this.root = Path.of(storageService.getRootLocation()).toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param path path of the image relative to the upload directory
+     * @return the image file and its metadata
+     * @throws StorageFileNotFoundException if there is no such image or the path leads out of the upload directory
+     */
+    public ImageFile findImage(String path) {
+        Path file = root.resolve(path.startsWith("/") ? path.substring(1) : path).normalize();
+        // hidden files are uploads in progress
+        if (!file.startsWith(root) || file.equals(root) || file.getFileName().toString().startsWith(".")) {
+            throw new StorageFileNotFoundException("Image not found: " + path);
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new StorageFileNotFoundException("Image not found: " + path, e);
+        }
+        if (!attributes.isRegularFile()) {
+            throw new StorageFileNotFoundException("Image not found: " + path);
+        }
+        Instant lastModified = attributes.lastModifiedTime().toInstant();
+        ImageFile cached = images.getIfPresent(file);
+        if (cached != null && cached.size() == attributes.size() && cached.lastModified().equals(lastModified)) {
+            return cached;
+        }
+        String fileName = file.getFileName().toString();
+        var contentAddressed = CONTENT_ADDRESSED.matcher(fileName);
+        boolean immutable = contentAddressed.matches();
+        String hash = immutable ? contentAddressed.group(1) : hash(file);
+        ImageFile image = new ImageFile(file, attributes.size(), lastModified, "\"" + hash + "\"", immutable,
+                MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM));
+        images.put(file, image);
+        return image;
+    }
+
+    private static String hash(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new StorageException("Failed to read image: " + file, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param file         the image file
+     * @param size         size of the file in bytes
+     * @param lastModified modification time of the file
+     * @param etag         strong entity tag of the content, quoted
+     * @param immutable    whether the file is content-addressed and never changes under its name
+     * @param contentType  media type by the file extension
+     */
+    public record ImageFile(Path file, long size, Instant lastModified, String etag, boolean immutable,
+                            MediaType contentType) {
+    }
+}
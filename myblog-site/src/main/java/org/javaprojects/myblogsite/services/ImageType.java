@@ -0,0 +1,65 @@
+package org.javaprojects.myblogsite.services;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Types of images that are accepted for upload, recognized by the signature at the start of their content.
+ * Every storage backend checks uploads by it and names stored images by their hash and type.
+ */
+enum ImageType {
+    JPEG(".jpg"), PNG(".png"), GIF(".gif"), WEBP(".webp");
+
+    static final int SIGNATURE_LENGTH = 12;
+    private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF87_SIGNATURE = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] GIF89_SIGNATURE = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP_SIGNATURE = {'W', 'E', 'B', 'P'};
+
+    private final String extension;
+
+    ImageType(String extension) {
+        this.extension = extension;
+    }
+
+    // the buffer holds the first bytes of the content from its start to its position
+    static ImageType of(ByteBuffer buffer) {
+        byte[] header = new byte[Math.min(SIGNATURE_LENGTH, buffer.position())];
+        buffer.get(0, header);
+        return of(header, header.length);
+    }
+
+    static ImageType of(byte[] content, int length) {
+        byte[] header = Arrays.copyOf(content, Math.min(SIGNATURE_LENGTH, length));
+        if (startsWith(header, 0, JPEG_SIGNATURE)) {
+            return JPEG;
+        }
+        if (startsWith(header, 0, PNG_SIGNATURE)) {
+            return PNG;
+        }
+        if (startsWith(header, 0, GIF87_SIGNATURE) || startsWith(header, 0, GIF89_SIGNATURE)) {
+            return GIF;
+        }
+        // RIFF, the size of the chunk and WEBP
+        if (startsWith(header, 0, RIFF_SIGNATURE) && startsWith(header, 8, WEBP_SIGNATURE)) {
+            return WEBP;
+        }
+        throw new InvalidImageException("The file is not a JPEG, PNG, GIF or WebP image");
+    }
+
+    /**
+     * @param hash hex SHA-256 of the image
+     * @return path of the image relative to the image directory, images are spread over subdirectories
+     * by the first bytes of the hash, e.g. {@code 3f/a1/3fa1...c2.jpg}
+     */
+    String relativePath(String hash) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + extension;
+    }
+
+    private static boolean startsWith(byte[] header, int offset, byte[] signature) {
+        return header.length >= offset + signature.length
+                && Arrays.equals(header, offset, offset + signature.length, signature, 0, signature.length);
+    }
+}
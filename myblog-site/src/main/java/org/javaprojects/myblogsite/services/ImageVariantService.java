@@ -0,0 +1,279 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.ImageVariantProperties;
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.ImageVariant;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import static org.javaprojects.myblogsite.configuration.ApplicationConfiguration.IMAGE_PROCESSING_EXECUTOR;
+
+/**
+ * ImageVariantService creates resized copies of uploaded images in the background and offers them to feed pages.
+ * <p>
+ * Variants are created for every configured width that is narrower than the image, as JPEG, or PNG for images
+ * with transparency, and additionally as WebP when an ImageIO plugin that writes WebP is on the classpath.
+ * A variant is stored next to its image and named after it, e.g. {@code /upload/3f/a1/3fa1...c2-320w.jpg},
+ * so variants of content-addressed images are content-addressed too. Until the variants of an image are created,
+ * or when the queue of the executor is full, pages show the original image.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class ImageVariantService {
+    private static final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+    private static final String JPEG = "image/jpeg";
+    private static final String PNG = "image/png";
+    private static final String WEBP = "image/webp";
+
+    private final PostRepository postRepository;
+    private final StorageService storageService;
+    private final ImageVariantProperties properties;
+    private final Executor imageProcessingExecutor;
+    private final boolean webpSupported;
+
+    public ImageVariantService(PostRepository postRepository,
+                               StorageService storageService,
+                               ImageVariantProperties properties,
+                               @Qualifier(IMAGE_PROCESSING_EXECUTOR) Executor imageProcessingExecutor) {
+        this.postRepository = postRepository;
+        this.storageService = storageService;
+        this.properties = properties;
+        this.imageProcessingExecutor = imageProcessingExecutor;
+        this.webpSupported = ImageIO.getImageWritersByMIMEType(WEBP).hasNext();
+        log.info("Image variants: widths {}, WebP {}", properties.widths(),
+                webpSupported ? "enabled" : "disabled, no ImageIO writer");
+    }
+
+    /**
+     * Queues creation of the variants of an uploaded image and returns immediately.
+     *
+     * @param imageUrl url of the image returned by {@link StorageService#handleFileUpload}
+     */
+    public void imageUploaded(String imageUrl) {
+        if (!isStored(imageUrl)) {
+            return;
+        }
+        try {
+            imageProcessingExecutor.execute(() -> createVariants(imageUrl));
+        } catch (RejectedExecutionException e) {
+            log.warn("Image processing queue is full, image {} is shown without variants", imageUrl);
+        }
+    }
+
+    /**
+     * Deletes the variants of an image that has been deleted. The variants are forgotten only when all of
+     * their files are deleted, they are the only reference to the files.
+     *
+     * @param imageUrl url of the image
+     * @return whether all variants have been deleted, the release is retried otherwise
+     */
+    public boolean imageReleased(String imageUrl) {
+        List<ImageVariant> variants = postRepository.findImageVariants(List.of(imageUrl))
+                .getOrDefault(imageUrl, List.of());
+        boolean released = true;
+        for (ImageVariant variant : variants) {
+            released &= storageService.releaseFile(variant.url());
+        }
+        if (released) {
+            postRepository.deleteImageVariants(imageUrl);
+        }
+        return released;
+    }
+
+    /**
+     * Sets {@code srcset} of the images of the posts, one query for all posts.
+     *
+     * @param posts posts of a feed page
+     */
+    public void setImageVariants(List<FeedPostDto> posts) {
+        List<String> imageUrls = posts.stream()
+                .map(FeedPostDto::getImageUrl)
+                .filter(this::isStored)
+                .distinct()
+                .toList();
+        if (imageUrls.isEmpty()) {
+            return;
+        }
+        Map<String, List<ImageVariant>> variants = postRepository.findImageVariants(imageUrls);
+        for (FeedPostDto post : posts) {
+            List<ImageVariant> imageVariants = variants.get(post.getImageUrl());
+            if (imageVariants != null) {
+                post.setImageSrcset(srcset(imageVariants, false));
+                post.setImageWebpSrcset(srcset(imageVariants, true));
+            }
+        }
+    }
+
+    /**
+     * Creates and stores the variants of the image unless they exist already, e.g. the same image has been
+     * uploaded before.
+     *
+     * @param imageUrl url of the image
+     */
+    void createVariants(String imageUrl) {
+        if (postRepository.findImageVariants(List.of(imageUrl)).containsKey(imageUrl)) {
+            return;
+        }
+        long started = System.nanoTime();
+        BufferedImage image;
+        try (InputStream inputStream = storageService.readFile(imageUrl);
+             ImageInputStream input = ImageIO.createImageInputStream(inputStream)) {
+            image = decode(imageUrl, input);
+        } catch (IOException | StorageException e) {
+            log.warn("Could not read image {}", imageUrl, e);
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+        boolean transparent = image.getColorModel().hasAlpha();
+        List<ImageVariant> variants = new ArrayList<>();
+        try {
+            for (int width : properties.widths().stream().distinct().sorted().toList()) {
+                if (width >= image.getWidth()) {
+                    break;
+                }
+                BufferedImage resized = resize(image, width, transparent);
+                variants.add(store(imageUrl, resized, width, transparent ? PNG : JPEG));
+                if (webpSupported) {
+                    variants.add(store(imageUrl, resized, width, WEBP));
+                }
+            }
+        } catch (IOException | StorageException e) {
+            // variants stored so far are overwritten when the image is uploaded again
+            log.warn("Could not create variants of image {}", imageUrl, e);
+            return;
+        }
+        postRepository.saveImageVariants(imageUrl, variants);
+        log.info("Created {} variants of image {} in {} ms", variants.size(), imageUrl,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // the size is read from the header before the raster is decoded, a small file may declare an image
+    // whose raster does not fit in the heap
+    private BufferedImage decode(String imageUrl, ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+        if (readers == null || !readers.hasNext()) {
+            log.info("File {} is not an image that can be resized", imageUrl);
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if ((long) width * height > properties.maxPixels()) {
+                log.warn("Image {} of {}x{} pixels is too large to be resized, it is shown without variants",
+                        imageUrl, width, height);
+                return null;
+            }
+            return reader.read(0);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private ImageVariant store(String imageUrl, BufferedImage image, int width, String contentType)
+            throws IOException {
+        String url = variantUrl(imageUrl, width, contentType);
+        storageService.storeFile(url, encode(image, contentType));
+        return new ImageVariant(width, contentType, url);
+    }
+
+    private byte[] encode(BufferedImage image, String contentType) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(contentType);
+        if (!writers.hasNext()) {
+            throw new IOException("No ImageIO writer of " + contentType);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (JPEG.equals(contentType)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(properties.jpegQuality());
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    // halves the image with bilinear interpolation until it is at most twice as wide as the target,
+    // one bilinear step to a much smaller size skips most of the pixels and looks jagged
+    static BufferedImage resize(BufferedImage image, int width, boolean transparent) {
+        int type = transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int height = Math.max(1, Math.round((float) image.getHeight() * width / image.getWidth()));
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    static String variantUrl(String imageUrl, int width, String contentType) {
+        int slash = imageUrl.lastIndexOf('/');
+        int dot = imageUrl.lastIndexOf('.');
+        String base = dot > slash ? imageUrl.substring(0, dot) : imageUrl;
+        String extension = switch (contentType) {
+            case PNG -> ".png";
+            case WEBP -> ".webp";
+            default -> ".jpg";
+        };
+        return base + "-" + width + "w" + extension;
+    }
+
+    private static String srcset(List<ImageVariant> variants, boolean webp) {
+        String srcset = variants.stream()
+                .filter(variant -> WEBP.equals(variant.contentType()) == webp)
+                .map(variant -> variant.url() + " " + variant.width() + "w")
+                .collect(Collectors.joining(", "));
+        return srcset.isEmpty() ? null : srcset;
+    }
+
+    private boolean isStored(String imageUrl) {
+        return imageUrl != null && imageUrl.startsWith(storageService.getImageDirectory() + "/");
+    }
+}
@@ -0,0 +1,12 @@
+package org.javaprojects.myblogsite.services;
+
+/**
+ * Thrown when an uploaded file is not an image that is accepted, e.g. it is too large or its content is not
+ * a JPEG, PNG, GIF or WebP image.
+ */
+public class InvalidImageException extends StorageException {
+
+    public InvalidImageException(String message) {
+        super(message);
+    }
+}
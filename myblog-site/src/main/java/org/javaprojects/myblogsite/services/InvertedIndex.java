@@ -0,0 +1,514 @@
+package org.javaprojects.myblogsite.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * In-memory inverted index of posts ranked by BM25.
+ * <p>
+ * Every indexed post gets a dense document number, postings of a term are primitive arrays of document numbers
+ * and term frequencies in ascending order of documents. A changed post is removed and added again with a new
+ * number, removed documents are only marked and skipped until the index is compacted.
+ * </p>
+ * <p>
+ * The index may be layered over an immutable {@link SearchSegment} loaded from disk. Posts of the segment are
+ * removed by marks as well, changed and new posts go to the memory layer. Queries score both layers as one
+ * document space, segment documents go first. {@link #writeTo(SearchSegment.Writer)} merges both layers into
+ * a new segment.
+ * </p>
+ * <p>
+ * The index is not thread-safe, {@link SearchIndexService} guards it.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+final class InvertedIndex {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int TITLE_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 2;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 40;
+    private static final Set<String> STOP_WORDS = Set.of("an", "and", "are", "as", "at", "be", "by", "for", "in",
+            "is", "it", "of", "on", "or", "that", "the", "this", "to", "was", "with");
+
+    private final Map<String, Postings> postingsByTerm = new HashMap<>();
+    private final Map<Long, Integer> documentsByPostId = new HashMap<>();
+    private final BitSet removed = new BitSet();
+    private final SearchSegment segment;
+    private final BitSet segmentRemoved = new BitSet();
+    private final int segmentDocuments;
+    private int segmentLiveDocuments;
+    private long[] postIds = new long[1024];
+    private int[] lengths = new int[1024];
+    private int documents;
+    private int liveDocuments;
+    private long totalLength;
+
+    InvertedIndex() {
+        this(null);
+    }
+
+    /**
+     * @param segment posts indexed on disk, {@code null} for an index that lives only in memory
+     */
+    InvertedIndex(SearchSegment segment) {
+        this.segment = segment;
+        this.segmentDocuments = segment != null ? segment.documents() : 0;
+        this.segmentLiveDocuments = segmentDocuments;
+        this.totalLength = segment != null ? segment.totalLength() : 0;
+    }
+
+    /**
+     * Indexes the post, the previous version of the post is replaced.
+     *
+     * @param postId      id of the post
+     * @param title       title of the post, its terms weigh more than terms of other fields
+     * @param description short description of the post
+     * @param content     text of the post
+     */
+    void put(long postId, String title, String description, String content) {
+        remove(postId);
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = addTerms(frequencies, title, TITLE_WEIGHT)
+                + addTerms(frequencies, description, DESCRIPTION_WEIGHT)
+                + addTerms(frequencies, content, 1);
+        int document = documents++;
+        if (document == postIds.length) {
+            postIds = Arrays.copyOf(postIds, document * 2);
+            lengths = Arrays.copyOf(lengths, document * 2);
+        }
+        postIds[document] = postId;
+        lengths[document] = length;
+        documentsByPostId.put(postId, document);
+        liveDocuments++;
+        totalLength += length;
+        frequencies.forEach((term, frequency) ->
+                postingsByTerm.computeIfAbsent(term, t -> new Postings()).add(document, frequency));
+    }
+
+    /**
+     * @param postId id of the post
+     * @return whether the post was indexed
+     */
+    boolean remove(long postId) {
+        Integer document = documentsByPostId.remove(postId);
+        if (document == null) {
+            return removeFromSegment(postId);
+        }
+        removed.set(document);
+        liveDocuments--;
+        totalLength -= lengths[document];
+        // removed documents still take space in postings, they are dropped once they are a quarter of the index
+        if (removed.cardinality() > Math.max(1024, liveDocuments / 4)) {
+            compact();
+        }
+        return true;
+    }
+
+    int size() {
+        return liveDocuments + segmentLiveDocuments;
+    }
+
+    /**
+     * @return whether the index differs from its segment
+     */
+    boolean hasChanges() {
+        return documents > 0 || !segmentRemoved.isEmpty();
+    }
+
+    /**
+     * @param consumer receiver of the ids of all indexed posts
+     */
+    void forEachPostId(LongConsumer consumer) {
+        for (int document = 0; document < segmentDocuments; document++) {
+            if (!segmentRemoved.get(document)) {
+                consumer.accept(segment.postId(document));
+            }
+        }
+        documentsByPostId.keySet().forEach(consumer::accept);
+    }
+
+    /**
+     * Removes the posts that don't match the predicate.
+     *
+     * @param predicate test of the post id
+     * @return number of removed posts
+     */
+    int retainAll(LongPredicate predicate) {
+        List<Long> stale = new ArrayList<>();
+        forEachPostId(postId -> {
+            if (!predicate.test(postId)) {
+                stale.add(postId);
+            }
+        });
+        stale.forEach(this::remove);
+        return stale.size();
+    }
+
+    /**
+     * Finds posts that contain any term of the query, posts that contain more and rarer terms rank higher.
+     *
+     * @param query  text of the query
+     * @param offset number of best posts to skip
+     * @param limit  maximum number of posts to return
+     * @return ids of the found posts from the best one and the number of all found posts
+     */
+    SearchIndexService.SearchHits search(String query, long offset, int limit) {
+        Set<String> terms = new HashSet<>();
+        forEachTerm(query, terms::add);
+        int live = size();
+        if (terms.isEmpty() || live == 0) {
+            return SearchIndexService.SearchHits.empty(0);
+        }
+        // segment documents are numbered first, memory documents follow them
+        Scores scores = new Scores();
+        float averageLength = (float) totalLength / live;
+        int matched = 0;
+        for (String term : terms) {
+            int segmentTerm = segment != null ? segment.findTerm(term) : -1;
+            Postings postings = postingsByTerm.get(term);
+            int frequency = (segmentTerm >= 0 ? segmentLiveCount(segmentTerm) : 0)
+                    + (postings != null ? postings.liveCount(removed) : 0);
+            if (frequency == 0) {
+                continue;
+            }
+            float idf = (float) Math.log(1 + (live - frequency + 0.5) / (frequency + 0.5));
+            if (segmentTerm >= 0) {
+                long posting = segment.posting(segmentTerm, 0);
+                for (int i = segment.postingsSize(segmentTerm); i > 0; i--, posting = segment.nextPosting(posting)) {
+                    int document = segment.postingDocument(posting);
+                    if (!segmentRemoved.get(document) && score(scores, document, idf,
+                            segment.postingFrequency(posting), segment.length(document), averageLength)) {
+                        matched++;
+                    }
+                }
+            }
+            if (postings != null) {
+                for (int i = 0; i < postings.size; i++) {
+                    int document = postings.documents[i];
+                    if (!removed.get(document) && score(scores, segmentDocuments + document, idf,
+                            postings.frequencies[i], lengths[document], averageLength)) {
+                        matched++;
+                    }
+                }
+            }
+        }
+        if (matched == 0 || offset >= matched) {
+            return SearchIndexService.SearchHits.empty(matched);
+        }
+        int top = (int) Math.min(offset + limit, matched);
+        // slots of the worst of the best documents are on the top of the heap, newer documents win ties
+        PriorityQueue<Integer> best = new PriorityQueue<>(top + 1, (a, b) -> scores.values[a] != scores.values[b]
+                ? Float.compare(scores.values[a], scores.values[b])
+                : Integer.compare(scores.documents[a], scores.documents[b]));
+        for (int slot = 0; slot < scores.documents.length; slot++) {
+            if (scores.documents[slot] != Scores.EMPTY) {
+                best.add(slot);
+                if (best.size() > top) {
+                    best.poll();
+                }
+            }
+        }
+        List<Long> ids = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int document = scores.documents[best.poll()];
+            ids.add(document < segmentDocuments ? segment.postId(document) : postIds[document - segmentDocuments]);
+        }
+        Collections.reverse(ids);
+        return new SearchIndexService.SearchHits(List.copyOf(ids.subList((int) offset, ids.size())), matched);
+    }
+
+    /**
+     * Writes live posts of both layers to a new segment, documents are renumbered in ascending order of post ids.
+     *
+     * @param writer writer of the new segment, the caller commits it
+     * @throws IOException if the segment can't be written
+     */
+    void writeTo(SearchSegment.Writer writer) throws IOException {
+        int live = size();
+        long[] memoryPostIds = new long[liveDocuments];
+        int next = 0;
+        for (long postId : documentsByPostId.keySet()) {
+            memoryPostIds[next++] = postId;
+        }
+        Arrays.sort(memoryPostIds);
+        long[] mergedPostIds = new long[live];
+        int[] mergedLengths = new int[live];
+        int[] segmentRenumbered = new int[segmentDocuments];
+        int[] memoryRenumbered = new int[documents];
+        int segmentDocument = segmentRemoved.nextClearBit(0);
+        int memoryIndex = 0;
+        // both sides are sorted by post id and never share a post, a changed post is removed from the segment
+        for (int document = 0; document < live; document++) {
+            if (memoryIndex == memoryPostIds.length || segmentDocument < segmentDocuments
+                    && segment.postId(segmentDocument) < memoryPostIds[memoryIndex]) {
+                mergedPostIds[document] = segment.postId(segmentDocument);
+                mergedLengths[document] = segment.length(segmentDocument);
+                segmentRenumbered[segmentDocument] = document;
+                segmentDocument = segmentRemoved.nextClearBit(segmentDocument + 1);
+            } else {
+                int memoryDocument = documentsByPostId.get(memoryPostIds[memoryIndex]);
+                mergedPostIds[document] = memoryPostIds[memoryIndex++];
+                mergedLengths[document] = lengths[memoryDocument];
+                memoryRenumbered[memoryDocument] = document;
+            }
+        }
+        writer.documents(mergedPostIds, mergedLengths, live);
+
+        List<Map.Entry<byte[], Postings>> memoryTerms = new ArrayList<>(postingsByTerm.size());
+        postingsByTerm.forEach((term, postings) ->
+                memoryTerms.add(Map.entry(term.getBytes(StandardCharsets.UTF_8), postings)));
+        memoryTerms.sort((a, b) -> Arrays.compareUnsigned(a.getKey(), b.getKey()));
+        int segmentTerms = segment != null ? segment.terms() : 0;
+        int segmentTerm = 0;
+        int memoryTerm = 0;
+        byte[] segmentTermBytes = segmentTerms > 0 ? segment.termBytes(0) : null;
+        long[] merged = new long[64];
+        int[] mergedDocuments = new int[64];
+        int[] mergedFrequencies = new int[64];
+        while (segmentTerm < segmentTerms || memoryTerm < memoryTerms.size()) {
+            int comparison = segmentTerm == segmentTerms ? 1
+                    : memoryTerm == memoryTerms.size() ? -1
+                    : Arrays.compareUnsigned(segmentTermBytes, memoryTerms.get(memoryTerm).getKey());
+            int capacity = (comparison <= 0 ? segment.postingsSize(segmentTerm) : 0)
+                    + (comparison >= 0 ? memoryTerms.get(memoryTerm).getValue().size : 0);
+            if (capacity > merged.length) {
+                merged = new long[capacity];
+                mergedDocuments = new int[capacity];
+                mergedFrequencies = new int[capacity];
+            }
+            // postings are packed as (document, frequency) into longs and sorted by document
+            int count = 0;
+            byte[] term;
+            if (comparison <= 0) {
+                term = segmentTermBytes;
+                long posting = segment.posting(segmentTerm, 0);
+                for (int i = segment.postingsSize(segmentTerm); i > 0; i--, posting = segment.nextPosting(posting)) {
+                    int document = segment.postingDocument(posting);
+                    if (!segmentRemoved.get(document)) {
+                        merged[count++] = (long) segmentRenumbered[document] << 32 | segment.postingFrequency(posting);
+                    }
+                }
+                segmentTerm++;
+                segmentTermBytes = segmentTerm < segmentTerms ? segment.termBytes(segmentTerm) : null;
+            } else {
+                term = memoryTerms.get(memoryTerm).getKey();
+            }
+            if (comparison >= 0) {
+                Postings postings = memoryTerms.get(memoryTerm++).getValue();
+                for (int i = 0; i < postings.size; i++) {
+                    if (!removed.get(postings.documents[i])) {
+                        merged[count++] = (long) memoryRenumbered[postings.documents[i]] << 32 | postings.frequencies[i];
+                    }
+                }
+            }
+            Arrays.sort(merged, 0, count);
+            for (int i = 0; i < count; i++) {
+                mergedDocuments[i] = (int) (merged[i] >>> 32);
+                mergedFrequencies[i] = (int) merged[i];
+            }
+            writer.term(term, mergedDocuments, mergedFrequencies, count);
+        }
+    }
+
+    /**
+     * Splits the text into lower case terms of letters and digits, short terms and stop words are skipped.
+     *
+     * @param text     text to split, may be {@code null}
+     * @param consumer receiver of the terms
+     */
+    static void forEachTerm(String text, Consumer<String> consumer) {
+        if (text == null) {
+            return;
+        }
+        StringBuilder term = new StringBuilder(MAX_TOKEN_LENGTH);
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(Character.toLowerCase(c));
+            } else if (!term.isEmpty()) {
+                if (term.length() >= MIN_TOKEN_LENGTH && term.length() <= MAX_TOKEN_LENGTH) {
+                    String token = term.toString();
+                    if (!STOP_WORDS.contains(token)) {
+                        consumer.accept(token);
+                    }
+                }
+                term.setLength(0);
+            }
+        }
+    }
+
+    private static int addTerms(Map<String, Integer> frequencies, String text, int weight) {
+        int[] length = {0};
+        forEachTerm(text, term -> {
+            frequencies.merge(term, weight, Integer::sum);
+            length[0]++;
+        });
+        return length[0];
+    }
+
+    private static boolean score(Scores scores, int document, float idf, float tf, int length, float averageLength) {
+        float norm = K1 * (1 - B + B * length / averageLength);
+        return scores.add(document, idf * tf * (K1 + 1) / (tf + norm));
+    }
+
+    private boolean removeFromSegment(long postId) {
+        int document = segment != null ? segment.findDocument(postId) : -1;
+        if (document < 0 || segmentRemoved.get(document)) {
+            return false;
+        }
+        segmentRemoved.set(document);
+        segmentLiveDocuments--;
+        totalLength -= segment.length(document);
+        return true;
+    }
+
+    private int segmentLiveCount(int term) {
+        int size = segment.postingsSize(term);
+        if (segmentRemoved.isEmpty()) {
+            return size;
+        }
+        int count = 0;
+        long posting = segment.posting(term, 0);
+        for (int i = size; i > 0; i--, posting = segment.nextPosting(posting)) {
+            if (!segmentRemoved.get(segment.postingDocument(posting))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // renumbers live documents and drops removed ones from all postings
+    private void compact() {
+        int[] renumbered = new int[documents];
+        int live = 0;
+        for (int document = 0; document < documents; document++) {
+            if (removed.get(document)) {
+                renumbered[document] = -1;
+            } else {
+                renumbered[document] = live;
+                postIds[live] = postIds[document];
+                lengths[live] = lengths[document];
+                live++;
+            }
+        }
+        postingsByTerm.values().removeIf(postings -> postings.renumber(renumbered) == 0);
+        documentsByPostId.replaceAll((postId, document) -> renumbered[document]);
+        documents = live;
+        removed.clear();
+    }
+
+    // scores of the matched documents only, a query costs as much as its postings and not the size of the index
+    private static final class Scores {
+        static final int EMPTY = -1;
+
+        int[] documents = new int[16];
+        float[] values = new float[16];
+        int size;
+
+        Scores() {
+            Arrays.fill(documents, EMPTY);
+        }
+
+        /**
+         * @return whether the document is scored for the first time
+         */
+        boolean add(int document, float score) {
+            int slot = slot(documents, document);
+            if (documents[slot] == document) {
+                values[slot] += score;
+                return false;
+            }
+            documents[slot] = document;
+            values[slot] = score;
+            // the table is kept at most half full, so probes stay short
+            if (++size * 2 > documents.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            int[] oldDocuments = documents;
+            float[] oldValues = values;
+            documents = new int[oldDocuments.length * 2];
+            values = new float[oldDocuments.length * 2];
+            Arrays.fill(documents, EMPTY);
+            for (int i = 0; i < oldDocuments.length; i++) {
+                if (oldDocuments[i] != EMPTY) {
+                    int slot = slot(documents, oldDocuments[i]);
+                    documents[slot] = oldDocuments[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        // linear probing from a multiplicative hash, documents are dense numbers
+        private static int slot(int[] documents, int document) {
+            int mask = documents.length - 1;
+            int hash = document * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (documents[slot] != EMPTY && documents[slot] != document) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    private static final class Postings {
+        int[] documents = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int document, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        int liveCount(BitSet removed) {
+            if (removed.isEmpty()) {
+                return size;
+            }
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(documents[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int renumber(int[] renumbered) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int document = renumbered[documents[i]];
+                if (document >= 0) {
+                    documents[kept] = document;
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            return kept;
+        }
+    }
+}
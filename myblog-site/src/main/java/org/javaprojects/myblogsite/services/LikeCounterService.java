@@ -0,0 +1,190 @@
+package org.javaprojects.myblogsite.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LikeCounterService is a write-behind counter of likes.
+ * <p>
+ * A click only increments an in-memory {@link LongAdder} of the post, so concurrent likes of a popular post
+ * don't fight for the same row lock of {@code likes} table and the live count is returned without any query.
+ * Accumulated deltas are written to the database in one batch by {@link #flush()} that runs every
+ * {@code application.likes.flush-interval} and once more on shutdown. A counter is dropped by the first flush
+ * that finds no new likes of its post, so only recently liked posts are kept in memory.
+ * </p>
+ * <p>
+ * The service exposes {@code blog.likes.pending} (likes that are not written yet) and {@code blog.likes.flush.lag}
+ * (seconds since the last successful flush) metrics.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class LikeCounterService implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(LikeCounterService.class);
+    private final PostRepository postRepository;
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+    private volatile long lastFlushMillis = System.currentTimeMillis();
+
+    public LikeCounterService(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    /**
+     * Adds one like to the post.
+     *
+     * @param postId id of the post
+     * @return live number of likes of the post including likes that are not written yet
+     */
+    public long addLike(long postId) {
+        while (true) {
+            Counter counter = counters.get(postId);
+            if (counter == null) {
+                // the count is read outside of the map, so the query doesn't block other updates of the map
+                Counter loaded = new Counter(postRepository.getLikesNumberByPostId(postId));
+                Counter present = counters.putIfAbsent(postId, loaded);
+                counter = present != null ? present : loaded;
+            }
+            counter.pending.increment();
+            if (!counter.evicted) {
+                return counter.count();
+            }
+            // the counter has been dropped by flush meanwhile, the like goes to a new one
+            counter.pending.decrement();
+        }
+    }
+
+    /**
+     * @param postId id of the post
+     * @return live number of likes of the post including likes that are not written yet
+     */
+    public long getLikes(long postId) {
+        Counter counter = counters.get(postId);
+        return counter != null ? counter.count() : postRepository.getLikesNumberByPostId(postId);
+    }
+
+    /**
+     * @param postId         id of the post
+     * @param persistedLikes number of likes of the post that has been read from the database
+     * @return live number of likes of the post including likes that are not written yet
+     */
+    public long getLikes(long postId, long persistedLikes) {
+        Counter counter = counters.get(postId);
+        return counter != null ? counter.count() : persistedLikes;
+    }
+
+    /**
+     * Drops the counter of the removed post, its pending likes have nowhere to go.
+     *
+     * @param postId id of the removed post
+     */
+    public void forget(long postId) {
+        counters.remove(postId);
+    }
+
+    /**
+     * Writes accumulated likes to the database in one batch. Deltas are moved to the persisted part of
+     * the counters before the write, so the live count doesn't change, and moved back if the write fails.
+     * Counters without new likes since the previous flush are dropped.
+     */
+    @Scheduled(fixedDelayString = "${application.likes.flush-interval:PT5S}")
+    public synchronized void flush() {
+        Map<Long, Long> deltas = new HashMap<>();
+        counters.forEach((postId, counter) -> {
+            long delta = counter.pending.sum();
+            if (delta != 0) {
+                counter.persisted.addAndGet(delta);
+                counter.pending.add(-delta);
+                deltas.put(postId, delta);
+            } else {
+                evictIdle(postId);
+            }
+        });
+        if (deltas.isEmpty()) {
+            lastFlushMillis = System.currentTimeMillis();
+            return;
+        }
+        try {
+            postRepository.addLikes(deltas);
+            lastFlushMillis = System.currentTimeMillis();
+            log.debug("Flushed likes of {} posts", deltas.size());
+        } catch (RuntimeException e) {
+            deltas.forEach((postId, delta) -> {
+                Counter counter = counters.get(postId);
+                if (counter != null) {
+                    counter.pending.add(delta);
+                    counter.persisted.addAndGet(-delta);
+                }
+            });
+            log.error("Failed to flush likes of {} posts, they will be retried", deltas.size(), e);
+        }
+    }
+
+    // the counter is marked before its pending likes are checked, and addLike checks the mark after it has
+    // incremented them, so a like either stops the eviction or is moved to a new counter by addLike
+    private void evictIdle(long postId) {
+        counters.computeIfPresent(postId, (id, counter) -> {
+            counter.evicted = true;
+            if (counter.pending.sum() == 0) {
+                return null;
+            }
+            counter.evicted = false;
+            return counter;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public long getPendingLikes() {
+        long pending = 0;
+        for (Counter counter : counters.values()) {
+            pending += counter.pending.sum();
+        }
+        return pending;
+    }
+
+    public double getFlushLagSeconds() {
+        return (System.currentTimeMillis() - lastFlushMillis) / 1000.0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("blog.likes.pending", this, LikeCounterService::getPendingLikes)
+                .description("Likes accumulated in memory and not written to the database yet")
+                .register(registry);
+        Gauge.builder("blog.likes.flush.lag", this, LikeCounterService::getFlushLagSeconds)
+                .description("Time since the last successful flush of likes")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private static final class Counter {
+        private final AtomicLong persisted;
+        private final LongAdder pending = new LongAdder();
+        private volatile boolean evicted;
+
+        private Counter(long persisted) {
+            this.persisted = new AtomicLong(persisted);
+        }
+
+        private long count() {
+            return persisted.get() + pending.sum();
+        }
+    }
+}
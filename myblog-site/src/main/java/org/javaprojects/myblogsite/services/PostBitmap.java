@@ -0,0 +1,539 @@
+package org.javaprojects.myblogsite.services;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints in the manner of Roaring bitmaps.
+ * <p>
+ * Values are split by their upper 16 bits into chunks. A chunk with up to {@value #MAX_ARRAY_SIZE} values is a
+ * sorted array of the lower 16 bits, a denser chunk is a bitmap of 65536 bits. Sparse sets take two bytes per
+ * value, dense sets one bit per value, and intersections and unions work chunk by chunk with word operations.
+ * </p>
+ * <p>
+ * The set is not thread-safe. {@link #and(PostBitmap)} and {@link #or(PostBitmap)} don't change their operands.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+final class PostBitmap {
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int CHUNK_BITS = 16;
+    private static final int LOW_MASK = 0xFFFF;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+    private long cardinality;
+
+    PostBitmap() {
+        this(4);
+    }
+
+    private PostBitmap(int capacity) {
+        keys = new char[capacity];
+        containers = new Container[capacity];
+    }
+
+    /**
+     * @param value non-negative value
+     * @return whether the value was not in the set
+     */
+    boolean add(int value) {
+        char key = (char) (value >>> CHUNK_BITS);
+        int index = indexOf(key);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add((char) (value & LOW_MASK));
+        if (containers[index].cardinality() == before) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * @param value non-negative value
+     * @return whether the value was in the set
+     */
+    boolean remove(int value) {
+        int index = indexOf((char) (value >>> CHUNK_BITS));
+        if (index < 0) {
+            return false;
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        Container changed = container.remove((char) (value & LOW_MASK));
+        if (changed.cardinality() == before) {
+            return false;
+        }
+        cardinality--;
+        if (changed.cardinality() == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            containers[--size] = null;
+        } else {
+            containers[index] = changed;
+        }
+        return true;
+    }
+
+    boolean contains(int value) {
+        int index = indexOf((char) (value >>> CHUNK_BITS));
+        return index >= 0 && containers[index].contains((char) (value & LOW_MASK));
+    }
+
+    long cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * @param other set to intersect with
+     * @return new set of values that are in both sets
+     */
+    PostBitmap and(PostBitmap other) {
+        PostBitmap result = new PostBitmap(Math.max(1, Math.min(size, other.size)));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param other set to unite with
+     * @return new set of values that are in any of the sets
+     */
+    PostBitmap or(PostBitmap other) {
+        PostBitmap result = new PostBitmap(Math.max(1, size + other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param from value to start from, may be negative
+     * @return the greatest value of the set that is not greater than {@code from}, {@code -1} if there is none
+     */
+    int previousValue(int from) {
+        if (from < 0) {
+            return -1;
+        }
+        char key = (char) (from >>> CHUNK_BITS);
+        int index = indexOf(key);
+        if (index >= 0) {
+            int low = containers[index].previous(from & LOW_MASK);
+            if (low >= 0) {
+                return key << CHUNK_BITS | low;
+            }
+            index--;
+        } else {
+            index = -index - 2;
+        }
+        return index >= 0 ? keys[index] << CHUNK_BITS | containers[index].previous(LOW_MASK) : -1;
+    }
+
+    /**
+     * @param from value to start from
+     * @return the least value of the set that is not less than {@code from}, {@code -1} if there is none
+     */
+    int nextValue(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        char key = (char) (from >>> CHUNK_BITS);
+        int index = indexOf(key);
+        if (index >= 0) {
+            int low = containers[index].next(from & LOW_MASK);
+            if (low >= 0) {
+                return key << CHUNK_BITS | low;
+            }
+            index++;
+        } else {
+            index = -index - 1;
+        }
+        return index < size ? keys[index] << CHUNK_BITS | containers[index].next(0) : -1;
+    }
+
+    /**
+     * @param consumer receiver of all values in ascending order
+     */
+    void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << CHUNK_BITS, consumer);
+        }
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void append(char key, Container container) {
+        insert(size, key, container);
+        cardinality += container.cardinality();
+    }
+
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        /**
+         * @return this container or the container it was converted to
+         */
+        abstract Container add(char low);
+
+        /**
+         * @return this container or the container it was converted to
+         */
+        abstract Container remove(char low);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        // the greatest value not greater than low or -1
+        abstract int previous(int low);
+
+        // the least value not less than low or -1
+        abstract int next(int low);
+
+        abstract void forEach(int base, IntConsumer consumer);
+
+        abstract Container copy();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        Container add(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == MAX_ARRAY_SIZE) {
+                return toBitmap().add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof ArrayContainer array)) {
+                return other.or(this);
+            }
+            if (cardinality + array.cardinality > MAX_ARRAY_SIZE) {
+                return toBitmap().or(array);
+            }
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || i < cardinality && values[i] < array.values[j]) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        int previous(int low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            if (index >= 0) {
+                return low;
+            }
+            index = -index - 2;
+            return index >= 0 ? values[index] : -1;
+        }
+
+        @Override
+        int next(int low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            if (index >= 0) {
+                return low;
+            }
+            index = -index - 1;
+            return index < cardinality ? values[index] : -1;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(base | values[i]);
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private static final int WORDS = 1 << CHUNK_BITS - 6;
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        Container add(char low) {
+            long word = words[low >>> 6];
+            long changed = word | 1L << low;
+            if (changed != word) {
+                words[low >>> 6] = changed;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            long word = words[low >>> 6];
+            long changed = word & ~(1L << low);
+            if (changed == word) {
+                return this;
+            }
+            words[low >>> 6] = changed;
+            cardinality--;
+            return cardinality <= MAX_ARRAY_SIZE ? toArray() : this;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[WORDS];
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer bitmap = new BitmapContainer(result, count);
+            return count <= MAX_ARRAY_SIZE ? bitmap.toArray() : bitmap;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = new BitmapContainer(words.clone(), cardinality);
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result.add(array.values[i]);
+                }
+                return result;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                result.words[i] |= otherWords[i];
+                count += Long.bitCount(result.words[i]);
+            }
+            result.cardinality = count;
+            return result;
+        }
+
+        @Override
+        int previous(int low) {
+            int index = low >>> 6;
+            long word = words[index] & -1L >>> 63 - (low & 63);
+            while (true) {
+                if (word != 0) {
+                    return index << 6 | 63 - Long.numberOfLeadingZeros(word);
+                }
+                if (--index < 0) {
+                    return -1;
+                }
+                word = words[index];
+            }
+        }
+
+        @Override
+        int next(int low) {
+            int index = low >>> 6;
+            long word = words[index] & -1L << low;
+            while (true) {
+                if (word != 0) {
+                    return index << 6 | Long.numberOfTrailingZeros(word);
+                }
+                if (++index == WORDS) {
+                    return -1;
+                }
+                word = words[index];
+            }
+        }
+
+        @Override
+        void forEach(int base, IntConsumer consumer) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(base | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PostCountsService keeps the total number of posts and the number of posts of every tag in memory,
+ * so the feed doesn't run {@code count(*)} queries on every view.
+ * <p>
+ * Per-tag counts live in {@link TagIndexService}, this service adds the total and keeps both in line on
+ * creation and removal of posts and on changes of their tags. Changes made in a transaction are applied after
+ * its commit. The counts are compared with the database every {@code application.post-counts.reconcile-interval}
+ * to repair any drift.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class PostCountsService implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(PostCountsService.class);
+    private final PostRepository postRepository;
+    private final TagIndexService tagIndexService;
+    private final AtomicLong totalPosts = new AtomicLong();
+    // incremented on every change under the lock of the service, a reconciliation that overlaps a change is discarded
+    private final AtomicLong changes = new AtomicLong();
+    // transactions between their commit and the change of the counts, the database is already ahead of the memory
+    private final AtomicLong committing = new AtomicLong();
+    private volatile boolean loaded;
+
+    public PostCountsService(PostRepository postRepository, TagIndexService tagIndexService) {
+        this.postRepository = postRepository;
+        this.tagIndexService = tagIndexService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        ensureLoaded();
+    }
+
+    /**
+     * Replaces the total and per-tag counts with the numbers from the database, unless posts or their tags
+     * were changed while they were counted or a committed change is not applied yet. The queries run without
+     * the lock, so changes are not blocked by them.
+     */
+    @Scheduled(fixedDelayString = "${application.post-counts.reconcile-interval:PT10M}",
+            initialDelayString = "${application.post-counts.reconcile-interval:PT10M}")
+    public void reconcile() {
+        long changesBefore = changes.get();
+        long count = postRepository.getTotalPostsCount();
+        Map<String, Long> tagCounts = postRepository.getTagPostCounts();
+        synchronized (this) {
+            if (changes.get() != changesBefore || committing.get() > 0) {
+                log.debug("Posts were changed during reconciliation of counts, it is postponed");
+                return;
+            }
+            long previous = totalPosts.getAndSet(count);
+            if (loaded && previous != count) {
+                log.warn("Total posts count has drifted: {} in memory, {} in the database", previous, count);
+            }
+            loaded = true;
+            tagIndexService.replace(tagCounts);
+        }
+    }
+
+    /**
+     * @return number of all posts
+     */
+    public long getTotalPosts() {
+        ensureLoaded();
+        return totalPosts.get();
+    }
+
+    /**
+     * Registers a new post.
+     *
+     * @param tags tags of the post
+     */
+    public void postCreated(Collection<String> tags) {
+        onCommit(() -> {
+            totalPosts.incrementAndGet();
+            tagIndexService.tagsAdded(tags);
+        });
+    }
+
+    /**
+     * Registers a removed post.
+     *
+     * @param tags tags the post had
+     */
+    public void postDeleted(Collection<String> tags) {
+        onCommit(() -> {
+            totalPosts.decrementAndGet();
+            tagIndexService.tagsRemoved(tags);
+        });
+    }
+
+    /**
+     * Registers changed tags of a post.
+     *
+     * @param oldTags tags the post had before the change
+     * @param newTags tags the post has now
+     */
+    public void tagsChanged(Collection<String> oldTags, Collection<String> newTags) {
+        onCommit(() -> {
+            tagIndexService.tagsRemoved(oldTags);
+            tagIndexService.tagsAdded(newTags);
+        });
+    }
+
+    // the change is announced before the commit, so a reconciliation whose queries may see the committed rows
+    // is discarded until the change is applied after the commit
+    private void onCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean announced;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                committing.incrementAndGet();
+                announced = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                apply(change);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (announced) {
+                    committing.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private synchronized void apply(Runnable change) {
+        if (!loaded) {
+            // the counts are read from the database, the committed change is already in them
+            ensureLoaded();
+            return;
+        }
+        changes.incrementAndGet();
+        change.run();
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    totalPosts.set(postRepository.getTotalPostsCount());
+                    tagIndexService.reload();
+                    loaded = true;
+                }
+            }
+        }
+    }
+}
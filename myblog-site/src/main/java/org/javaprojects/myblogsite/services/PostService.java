@@ -1,8 +1,14 @@
 package org.javaprojects.myblogsite.services;
 
 import org.javaprojects.myblogsite.dto.CommentDto;
+import org.javaprojects.myblogsite.dto.CommentPage;
+import org.javaprojects.myblogsite.dto.FeedPage;
 import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.PageCursor;
 import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.dto.SearchPage;
+import org.javaprojects.myblogsite.dto.TagFilter;
+import org.springframework.data.domain.Sort;
 
 import java.util.List;
 import java.util.Set;
@@ -12,6 +18,8 @@ public interface PostService {
 
     List<FeedPostDto> findPostsByTagName(String tagName, int from, int number);
 
+    FeedPage findPostsPage(TagFilter filter, PageCursor cursor, int limit);
+
     PostDto findPostById(long id);
 
     void deletePost(Long postId);
@@ -27,7 +35,9 @@ public interface PostService {
 
     List<CommentDto> findCommentsByPost(long postId);
 
-    void addLike(long postId);
+    CommentPage findCommentsPage(long postId, PageCursor cursor, Sort.Direction order, int limit);
+
+    long addLike(long postId);
 
     long getLikes(long postId);
 
@@ -37,5 +47,9 @@ public interface PostService {
 
     long getTotalPostsCount();
 
-    void deleteComment(Long commentId);
+    long getPostsCount(TagFilter filter);
+
+    SearchPage searchPosts(String query, long offset, int limit);
+
+    void deleteComment(Long postId, Long commentId);
 }
@@ -0,0 +1,44 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PostStatsRebuildJob recomputes the {@code post_stats} read model from the base tables.
+ * <p>
+ * The statistics are maintained by the repository on every write, so the job is only a repair tool:
+ * it runs once at startup (posts inserted by initialization scripts have no statistics yet) and then
+ * by the cron expression from {@code application.post-stats.repair-cron} property if it is specified.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class PostStatsRebuildJob implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(PostStatsRebuildJob.class);
+    private final PostRepository postRepository;
+
+    public PostStatsRebuildJob(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    @Scheduled(cron = "${application.post-stats.repair-cron:-}")
+    public void rebuild() {
+        long start = System.nanoTime();
+        int rows = postRepository.rebuildPostStats();
+        log.info("Post statistics have been rebuilt for {} posts in {} ms",
+                rows, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
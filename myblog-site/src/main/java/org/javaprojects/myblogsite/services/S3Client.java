@@ -0,0 +1,376 @@
+package org.javaprojects.myblogsite.services;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Client of the few operations of the S3 REST API that {@link S3StorageService} needs, on one bucket.
+ * <p>
+ * Requests are signed by AWS Signature Version 4 with an unsigned payload, so bodies are not hashed twice,
+ * and work with Amazon S3 as well as with S3-compatible stores like MinIO. The bucket is addressed
+ * in the path, {@code http://host/bucket/key}, or in the host name, {@code http://bucket.host/key}.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+final class S3Client {
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(1);
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>([^<]+)</UploadId>");
+    private static final Pattern ERROR_CODE = Pattern.compile("<Code>([^<]+)</Code>");
+
+    private final HttpClient httpClient;
+    private final String scheme;
+    private final String host;
+    private final String basePath;
+    private final String bucket;
+    private final String region;
+    private final String accessKey;
+    private final byte[] secretKey;
+    private final Clock clock;
+
+    /**
+     * @param httpClient client the requests are sent by
+     * @param endpoint   url of the object store
+     * @param region     region the requests are signed for
+     * @param bucket     name of the bucket
+     * @param accessKey  access key
+     * @param secretKey  secret key
+     * @param pathStyle  whether the bucket is addressed in the path instead of the host name
+     * @param clock      clock of the signatures
+     */
+    S3Client(HttpClient httpClient, URI endpoint, String region, String bucket, String accessKey, String secretKey,
+             boolean pathStyle, Clock clock) {
+        this.httpClient = httpClient;
+        this.scheme = endpoint.getScheme();
+        // the Host header that HttpClient sends, the port is left out when it is the default one
+        boolean defaultPort = endpoint.getPort() == -1
+                || endpoint.getPort() == ("https".equals(scheme) ? 443 : 80);
+        String authority = endpoint.getHost() + (defaultPort ? "" : ":" + endpoint.getPort());
+        String path = endpoint.getRawPath() == null ? "" : endpoint.getRawPath().replaceAll("/+$", "");
+        this.host = pathStyle ? authority : bucket + "." + authority;
+        this.basePath = pathStyle ? path + "/" + encode(bucket, false) : path;
+        this.bucket = bucket;
+        this.region = region;
+        this.accessKey = accessKey;
+        this.secretKey = ("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8);
+        this.clock = clock;
+    }
+
+    /**
+     * @return url of the bucket
+     */
+    URI bucketUri() {
+        return URI.create(scheme + "://" + host + basePath + "/");
+    }
+
+    /**
+     * @param key key of the object
+     * @return content of the object, the caller closes it
+     * @throws StorageFileNotFoundException if there is no such object
+     */
+    InputStream get(String key) {
+        HttpResponse<InputStream> response = send(request("GET", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() / 100 == 2) {
+            return response.body();
+        }
+        String body;
+        try (InputStream error = response.body()) {
+            body = new String(error.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            body = "";
+        }
+        if (response.statusCode() == 404) {
+            throw new StorageFileNotFoundException("No such object: " + key);
+        }
+        throw failure("GET", key, response.statusCode(), body);
+    }
+
+    /**
+     * @param key key of the object
+     * @return when the object was stored, empty if there is no such object
+     */
+    Optional<Instant> lastModified(String key) {
+        HttpResponse<String> response = send(request("HEAD", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        check("HEAD", key, response);
+        return response.headers().firstValue("Last-Modified")
+                .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+    }
+
+    /**
+     * Stores an object in one request.
+     *
+     * @param key     key of the object
+     * @param content content of the object
+     * @param headers headers of the object, e.g. {@code Content-Type}
+     */
+    void put(String key, byte[] content, Map<String, String> headers) {
+        check("PUT", key, send(request("PUT", key, Map.of(), headers,
+                HttpRequest.BodyPublishers.ofByteArray(content)), HttpResponse.BodyHandlers.ofString()));
+    }
+
+    /**
+     * Copies an object in the store, the bytes don't pass through the application. An object copied to itself
+     * gets a new modification time.
+     *
+     * @param sourceKey key of the copied object
+     * @param key       key of the copy
+     * @param headers   headers of the copy, they replace the headers of the source
+     * @return false if there is no source object
+     */
+    boolean copy(String sourceKey, String key, Map<String, String> headers) {
+        Map<String, String> copyHeaders = new TreeMap<>(headers);
+        copyHeaders.put("x-amz-copy-source", "/" + encode(bucket, false) + "/" + encode(sourceKey, true));
+        copyHeaders.put("x-amz-metadata-directive", "REPLACE");
+        HttpResponse<String> response = send(request("PUT", key, Map.of(), copyHeaders,
+                HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) {
+            return false;
+        }
+        check("COPY", key, response);
+        return true;
+    }
+
+    /**
+     * @param key key of the object, deleting a missing object is not an error
+     */
+    void delete(String key) {
+        check("DELETE", key, send(request("DELETE", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.ofString()));
+    }
+
+    /**
+     * @param key     key of the object
+     * @param headers headers of the object
+     * @return id of the upload
+     */
+    String createMultipartUpload(String key, Map<String, String> headers) {
+        HttpResponse<String> response = send(request("POST", key, Map.of("uploads", ""), headers,
+                HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.ofString());
+        check("CREATE UPLOAD", key, response);
+        Matcher uploadId = UPLOAD_ID.matcher(response.body());
+        if (!uploadId.find()) {
+            throw new StorageException("No upload id in the response to the upload of " + key);
+        }
+        return uploadId.group(1);
+    }
+
+    /**
+     * Uploads a part of an object without waiting for the response.
+     *
+     * @param key        key of the object
+     * @param uploadId   id of the upload
+     * @param partNumber number of the part starting from 1
+     * @param content    content of the part
+     * @return ETag of the part, or a {@link StorageException} if it failed
+     */
+    CompletableFuture<String> uploadPart(String key, String uploadId, int partNumber, byte[] content) {
+        HttpRequest request = request("PUT", key,
+                Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId), Map.of(),
+                HttpRequest.BodyPublishers.ofByteArray(content));
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, e) -> {
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        throw new StorageException("Failed to upload part " + partNumber + " of " + key, cause);
+                    }
+                    check("UPLOAD PART", key, response);
+                    return response.headers().firstValue("ETag").orElseThrow(
+                            () -> new StorageException("No ETag of part " + partNumber + " of " + key));
+                });
+    }
+
+    /**
+     * @param key      key of the object
+     * @param uploadId id of the upload
+     * @param etags    ETags of the parts in the order of their numbers
+     */
+    void completeMultipartUpload(String key, String uploadId, List<String> etags) {
+        String body = IntStream.range(0, etags.size())
+                .mapToObj(i -> "<Part><PartNumber>" + (i + 1) + "</PartNumber><ETag>"
+                        + etags.get(i).replace("&", "&amp;").replace("\"", "&quot;") + "</ETag></Part>")
+                .collect(Collectors.joining("", "<CompleteMultipartUpload>", "</CompleteMultipartUpload>"));
+        check("COMPLETE UPLOAD", key, send(request("POST", key, Map.of("uploadId", uploadId),
+                        Map.of("Content-Type", "application/xml"), HttpRequest.BodyPublishers.ofString(body)),
+                HttpResponse.BodyHandlers.ofString()));
+    }
+
+    /**
+     * Deletes the parts uploaded so far.
+     *
+     * @param key      key of the object
+     * @param uploadId id of the upload
+     */
+    void abortMultipartUpload(String key, String uploadId) {
+        check("ABORT UPLOAD", key, send(request("DELETE", key, Map.of("uploadId", uploadId), Map.of(),
+                HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.ofString()));
+    }
+
+    /**
+     * Creates a url that lets anyone who has it read the object until it expires, without credentials.
+     *
+     * @param key      key of the object
+     * @param signedAt time of the signature, urls signed at the same time are the same
+     * @param expiry   how long the url is valid after {@code signedAt}
+     * @return the presigned url
+     */
+    URI presignGet(String key, Instant signedAt, Duration expiry) {
+        String amzDate = AMZ_DATE.format(signedAt);
+        String scope = amzDate.substring(0, 8) + "/" + region + "/s3/aws4_request";
+        Map<String, String> query = new TreeMap<>();
+        query.put("X-Amz-Algorithm", ALGORITHM);
+        query.put("X-Amz-Credential", accessKey + "/" + scope);
+        query.put("X-Amz-Date", amzDate);
+        query.put("X-Amz-Expires", String.valueOf(expiry.toSeconds()));
+        query.put("X-Amz-SignedHeaders", "host");
+        String path = path(key);
+        String canonicalQuery = canonicalQuery(query);
+        String canonicalRequest = "GET\n" + path + "\n" + canonicalQuery + "\nhost:" + host + "\n\nhost\n"
+                + UNSIGNED_PAYLOAD;
+        return URI.create(scheme + "://" + host + path + "?" + canonicalQuery
+                + "&X-Amz-Signature=" + signature(amzDate, scope, canonicalRequest));
+    }
+
+    private HttpRequest request(String method, String key, Map<String, String> query, Map<String, String> headers,
+                                HttpRequest.BodyPublisher body) {
+        String amzDate = AMZ_DATE.format(clock.instant());
+        String scope = amzDate.substring(0, 8) + "/" + region + "/s3/aws4_request";
+        String path = path(key);
+        String canonicalQuery = canonicalQuery(query);
+        Map<String, String> signedHeaders = new TreeMap<>();
+        signedHeaders.put("host", host);
+        signedHeaders.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        signedHeaders.put("x-amz-date", amzDate);
+        headers.forEach((name, value) -> {
+            String lowerCaseName = name.toLowerCase(Locale.ROOT);
+            if (lowerCaseName.startsWith("x-amz-")) {
+                signedHeaders.put(lowerCaseName, value.trim());
+            }
+        });
+        String signedHeaderNames = String.join(";", signedHeaders.keySet());
+        String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery + "\n"
+                + signedHeaders.entrySet().stream()
+                .map(header -> header.getKey() + ":" + header.getValue() + "\n")
+                .collect(Collectors.joining())
+                + "\n" + signedHeaderNames + "\n" + UNSIGNED_PAYLOAD;
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(scheme + "://" + host + path
+                        + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery)))
+                .method(method, body)
+                .timeout(REQUEST_TIMEOUT)
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", ALGORITHM + " Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + signedHeaderNames
+                        + ", Signature=" + signature(amzDate, scope, canonicalRequest));
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+    private String signature(String amzDate, String scope, String canonicalRequest) {
+        try {
+            String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                    + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+            byte[] key = secretKey;
+            for (String part : scope.split("/")) {
+                key = hmac(key, part);
+            }
+            return HexFormat.of().formatHex(hmac(key, stringToSign));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        try {
+            return httpClient.send(request, handler);
+        } catch (IOException e) {
+            throw new StorageException("Failed to " + request.method() + " " + request.uri().getRawPath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted " + request.method() + " " + request.uri().getRawPath(), e);
+        }
+    }
+
+    // S3 answers some failed copies and completions with 200 and an error document
+    private static void check(String operation, String key, HttpResponse<String> response) {
+        String body = response.body() == null ? "" : response.body();
+        if (response.statusCode() / 100 != 2 || body.contains("<Error>")) {
+            throw failure(operation, key, response.statusCode(), body);
+        }
+    }
+
+    private static StorageException failure(String operation, String key, int status, String body) {
+        Matcher code = ERROR_CODE.matcher(body);
+        return new StorageException(operation + " " + key + " failed with " + status
+                + (code.find() ? " " + code.group(1) : ""));
+    }
+
+    private String path(String key) {
+        return basePath + "/" + encode(key, true);
+    }
+
+    private static String canonicalQuery(Map<String, String> query) {
+        Map<String, String> encoded = new TreeMap<>();
+        query.forEach((name, value) -> encoded.put(encode(name, false), encode(value, false)));
+        return encoded.entrySet().stream()
+                .map(parameter -> parameter.getKey() + "=" + parameter.getValue())
+                .collect(Collectors.joining("&"));
+    }
+
+    // percent-encodes everything except the unreserved characters of RFC 3986, and slashes of paths
+    static String encode(String value, boolean path) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (path && c == '/')) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(HexFormat.of().withUpperCase().toHexDigits(b));
+            }
+        }
+        return encoded.toString();
+    }
+}
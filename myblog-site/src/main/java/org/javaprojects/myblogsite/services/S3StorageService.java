@@ -0,0 +1,330 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.ImageProperties;
+import org.javaprojects.myblogsite.configuration.StorageProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * S3StorageService stores uploaded images in a bucket of an S3-compatible object store, e.g. Amazon S3 or MinIO,
+ * so all nodes of the application share them. It is used when {@code application.storage.type} is {@code s3}.
+ * <p>
+ * Images are stored under the same content-addressed paths as by {@link FileSystemStorageService}, the key of
+ * an image is its path without the leading slash, e.g. {@code upload/3f/a1/3fa1...c2.jpg}. An image that fits
+ * into one part is stored by one request. A larger one is uploaded in parts while it is being read, up to
+ * {@code uploadConcurrency} parts at the same time, to a temporary object that is copied to its key inside
+ * the store once the hash of the whole image is known. Browsers are redirected to the images, to presigned urls
+ * or to {@code publicUrl}, so their bytes don't pass through the application.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+@ConditionalOnProperty(prefix = "application.storage", name = "type", havingValue = "s3")
+public class S3StorageService implements StorageService {
+    private static final Logger log = LoggerFactory.getLogger(S3StorageService.class);
+    // the objects are content-addressed, they never change under their keys
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable()
+            .getHeaderValue();
+
+    private final S3Client client;
+    private final Clock clock;
+    private final String imageDirectory;
+    private final String defaultFilePath;
+    private final long maxFileSize;
+    private final int partSize;
+    private final int uploadConcurrency;
+    private final Duration presignedUrlExpiry;
+    private final String publicUrl;
+
+    @Autowired
+    public S3StorageService(StorageProperties storageProperties, ImageProperties imageProperties) {
+        this(storageProperties.s3(), imageProperties,
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(), Clock.systemUTC());
+    }
+
+    S3StorageService(StorageProperties.S3 properties, ImageProperties imageProperties, HttpClient httpClient,
+                     Clock clock) {
+        if (!StringUtils.hasText(properties.accessKey()) || !StringUtils.hasText(properties.secretKey())) {
+            throw new IllegalStateException("application.storage.s3.access-key and secret-key must be set");
+        }
+        this.client = new S3Client(httpClient, properties.endpoint(), properties.region(), properties.bucket(),
+                properties.accessKey(), properties.secretKey(), properties.pathStyle(), clock);
+        this.clock = clock;
+        this.imageDirectory = Path.of(imageProperties.uploadDirectoryHandlerPath()).toString();
+        this.defaultFilePath = imageProperties.defaultImagePath();
+        this.maxFileSize = imageProperties.maxFileSize().toBytes();
+        this.partSize = Math.toIntExact(properties.partSize().toBytes());
+        this.uploadConcurrency = properties.uploadConcurrency();
+        this.presignedUrlExpiry = properties.presignedUrlExpiry();
+        this.publicUrl = StringUtils.hasText(properties.publicUrl())
+                ? properties.publicUrl().replaceAll("/+$", "") : null;
+        log.info("Images are stored in {}", client.bucketUri());
+    }
+
+    @Override
+    public String handleFileUpload(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            log.warn("Failed to store empty file or it was not uploaded.");
+            return defaultFilePath;
+        }
+        log.info("Storing file: Original name: {}, name: {}, contentType: {}", file.getOriginalFilename(), file.getName(), file.getContentType());
+        try {
+            return handleStreamUpload(file.getInputStream());
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        }
+    }
+
+    /**
+     * Stores an image by its content. The image is hashed, and its size and signature are checked like by
+     * {@link FileSystemStorageService#handleStreamUpload(InputStream)}, while it is being read.
+     *
+     * @param content content of the image, it is closed
+     * @return the path of the stored image
+     * @throws InvalidImageException if the content is not an image or is too large
+     * @throws StorageException if the image can't be stored
+     */
+    @Override
+    public String handleStreamUpload(InputStream content) {
+        try (content) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] part = content.readNBytes(partSize);
+            ImageType type = ImageType.of(part, part.length);
+            checkSize(part.length);
+            if (part.length < partSize) {
+                digest.update(part);
+                String path = path(digest, type);
+                String key = key(path);
+                if (touch(key)) {
+                    log.info("File {} is stored already", path);
+                } else {
+                    log.info("Storing file: {}", path);
+                    client.put(key, part, headers(key));
+                }
+                return path;
+            }
+            return uploadInParts(content, part, type, digest);
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the key depends on the hash of the whole image, so the parts are uploaded to a temporary object
+    private String uploadInParts(InputStream content, byte[] firstPart, ImageType type, MessageDigest digest)
+            throws IOException {
+        String temporaryKey = imageDirectory.substring(1) + "/.upload-" + UUID.randomUUID();
+        String uploadId = client.createMultipartUpload(temporaryKey, Map.of());
+        List<CompletableFuture<String>> parts = new ArrayList<>();
+        Semaphore permits = new Semaphore(uploadConcurrency);
+        boolean uploaded = false;
+        try {
+            long size = 0;
+            for (byte[] part = firstPart; part.length > 0; part = content.readNBytes(partSize)) {
+                size += part.length;
+                checkSize(size);
+                digest.update(part);
+                permits.acquire();
+                parts.add(client.uploadPart(temporaryKey, uploadId, parts.size() + 1, part)
+                        .whenComplete((etag, e) -> permits.release()));
+                if (parts.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    etags(parts);
+                }
+            }
+            client.completeMultipartUpload(temporaryKey, uploadId, etags(parts));
+            uploaded = true;
+            String path = path(digest, type);
+            String key = key(path);
+            if (touch(key)) {
+                log.info("File {} is stored already", path);
+            } else {
+                log.info("Storing file: {} of {} parts", path, parts.size());
+                client.copy(temporaryKey, key, headers(key));
+            }
+            return path;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while storing file.", e);
+        } finally {
+            removeTemporaryObject(temporaryKey, uploadId, uploaded);
+        }
+    }
+
+    private void removeTemporaryObject(String temporaryKey, String uploadId, boolean uploaded) {
+        try {
+            if (uploaded) {
+                client.delete(temporaryKey);
+            } else {
+                client.abortMultipartUpload(temporaryKey, uploadId);
+            }
+        } catch (StorageException e) {
+            log.warn("Failed to remove temporary object {}, a lifecycle rule of the bucket may remove it", temporaryKey, e);
+        }
+    }
+
+    private static List<String> etags(List<CompletableFuture<String>> parts) {
+        try {
+            return parts.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StorageException storageException) {
+                throw storageException;
+            }
+            throw new StorageException("Failed to upload file.", e.getCause());
+        }
+    }
+
+    @Override
+    public boolean isStoredFile(String path) {
+        try {
+            return client.lastModified(key(path)).isPresent();
+        } catch (StorageException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public InputStream readFile(String path) {
+        return client.get(key(path));
+    }
+
+    @Override
+    public void storeFile(String path, byte[] content) {
+        String key = key(path);
+        client.put(key, content, headers(key));
+    }
+
+    /**
+     * Deletes a stored image that no post refers to anymore, unless it was stored again within
+     * {@link #RELEASE_GRACE_PERIOD}. Paths outside the image directory, e.g. the default image, are ignored.
+     *
+     * @param path the path returned by {@link #handleStreamUpload(InputStream)}
+     * @return whether the image has been deleted
+     */
+    @Override
+    public boolean releaseFile(String path) {
+        if (path == null || !path.startsWith(imageDirectory + "/")) {
+            return false;
+        }
+        try {
+            String key = key(path);
+            Optional<Instant> modified = client.lastModified(key);
+            if (modified.isEmpty()) {
+                log.debug("File {} has been released already", path);
+                return true;
+            }
+            if (modified.get().isAfter(clock.instant().minus(RELEASE_GRACE_PERIOD))) {
+                log.info("File {} has been stored recently and is kept", path);
+                return false;
+            }
+            client.delete(key);
+            log.info("Released file {}", path);
+            return true;
+        } catch (StorageException e) {
+            log.warn("Failed to release file {}", path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Presigned urls are signed at the start of windows of half of their expiry, so an image has the same url
+     * within a window and browsers reuse their cached copy, and a url is valid at least half of the expiry
+     * after it was given out.
+     *
+     * @param path path of a stored image
+     * @return {@code publicUrl} of the image, or a presigned url that is valid for the rest of the window
+     */
+    @Override
+    public Optional<ReadUrl> getReadUrl(String path) {
+        String key = key(path);
+        if (publicUrl != null) {
+            return Optional.of(new ReadUrl(URI.create(publicUrl + "/" + S3Client.encode(key, true)),
+                    Duration.ofDays(365)));
+        }
+        long window = Math.max(1, presignedUrlExpiry.toSeconds() / 2);
+        Instant now = clock.instant();
+        Instant signedAt = Instant.ofEpochSecond(now.getEpochSecond() - now.getEpochSecond() % window);
+        return Optional.of(new ReadUrl(client.presignGet(key, signedAt, presignedUrlExpiry),
+                Duration.between(now, signedAt.plusSeconds(window))));
+    }
+
+    // marks the stored object as used again, returns false if there is no such object
+    private boolean touch(String key) {
+        return client.copy(key, key, headers(key));
+    }
+
+    private void checkSize(long size) {
+        if (size > maxFileSize) {
+            throw new InvalidImageException("The image is larger than " + maxFileSize + " bytes");
+        }
+    }
+
+    private String path(MessageDigest digest, ImageType type) {
+        return imageDirectory + "/" + type.relativePath(HexFormat.of().formatHex(digest.digest()));
+    }
+
+    // the key of a path in the image directory, temporary objects and paths out of the directory are rejected
+    private String key(String path) {
+        if (path == null || !path.startsWith(imageDirectory + "/")) {
+            throw new StorageFileNotFoundException("Not a stored file: " + path);
+        }
+        String key = path.substring(1);
+        for (String segment : key.split("/", -1)) {
+            if (segment.isEmpty() || segment.startsWith(".")) {
+                throw new StorageFileNotFoundException("Not a stored file: " + path);
+            }
+        }
+        return key;
+    }
+
+    private static Map<String, String> headers(String key) {
+        return Map.of(HttpHeaders.CONTENT_TYPE,
+                MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM).toString(),
+                HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+    }
+
+    @Override
+    public URI getRootLocation() {
+        return client.bucketUri();
+    }
+
+    @Override
+    public String getImageDirectory() {
+        return imageDirectory;
+    }
+
+    @Override
+    public String getDefaultFilePath() {
+        return defaultFilePath;
+    }
+}
@@ -0,0 +1,270 @@
+package org.javaprojects.myblogsite.services;
+
+import jakarta.annotation.PreDestroy;
+import org.javaprojects.myblogsite.configuration.SearchProperties;
+import org.javaprojects.myblogsite.models.Post;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * SearchIndexService answers full-text queries over titles, descriptions and contents of posts from memory.
+ * <p>
+ * The inverted index is built from the database at startup and then maintained by {@link PostService} on every
+ * creation, change and removal of a post, so queries never touch the database. Changes made while the index is
+ * rebuilt are replayed on the new index before it replaces the old one.
+ * </p>
+ * <p>
+ * When {@code application.search.index-directory} is set, the index is also kept on disk as a
+ * {@link SearchSegment}. It is written every {@code application.search.checkpoint-interval} if posts were
+ * changed and on shutdown. At startup the segment is memory-mapped instead of rebuilding the index, then posts
+ * changed since the checkpoint are read by {@code updated_at} and removed posts are dropped, so startup doesn't
+ * read the contents of all posts.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class SearchIndexService implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexService.class);
+    private static final String SEGMENT_FILE_NAME = "posts.segment";
+    // posts are stamped by the transaction before they reach the index, the margin covers long transactions
+    private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(1);
+    private final PostRepository postRepository;
+    private final Path segmentFile;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private InvertedIndex index = new InvertedIndex();
+    // not null while the index is rebuilt, opened or written to disk
+    private List<Consumer<InvertedIndex>> pendingChanges;
+    // changes are only queued while the index is written to disk
+    private boolean frozen;
+
+    public SearchIndexService(PostRepository postRepository, SearchProperties searchProperties) {
+        this.postRepository = postRepository;
+        String indexDirectory = searchProperties.indexDirectory();
+        this.segmentFile = indexDirectory == null || indexDirectory.isBlank()
+                ? null
+                : Path.of(indexDirectory).resolve(SEGMENT_FILE_NAME);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (segmentFile == null || !open()) {
+            rebuild();
+            checkpoint();
+        }
+    }
+
+    /**
+     * Maps the segment written by the last checkpoint and brings it up to date with the database.
+     *
+     * @return whether the segment was opened, {@code false} if there is no valid segment
+     */
+    synchronized boolean open() {
+        if (segmentFile == null || !Files.exists(segmentFile)) {
+            return false;
+        }
+        long started = System.nanoTime();
+        SearchSegment segment;
+        try {
+            segment = SearchSegment.open(segmentFile);
+        } catch (IOException e) {
+            log.warn("Search index segment {} can't be opened, the index is rebuilt", segmentFile, e);
+            return false;
+        }
+        withWriteLock(() -> pendingChanges = new ArrayList<>());
+        InvertedIndex opened = new InvertedIndex(segment);
+        int[] changed = {0};
+        int removed;
+        try {
+            postRepository.forEachPost(segment.checkpoint().minus(CATCH_UP_MARGIN), post -> {
+                opened.put(post.id(), post.title(), post.description(), post.content());
+                changed[0]++;
+            });
+            // removals leave no rows behind, so the indexed ids are always compared with the ids of the database;
+            // equal numbers of posts don't prove it, removed posts may be replaced by as many new ones
+            removed = removeDeletedPosts(opened);
+        } catch (RuntimeException e) {
+            withWriteLock(() -> pendingChanges = null);
+            throw e;
+        }
+        install(opened);
+        log.info("Search index has been opened: {} posts, {} changed and {} removed since {} in {} ms",
+                opened.size(), changed[0], removed, segment.checkpoint(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return true;
+    }
+
+    /**
+     * Replaces the index with a new one built from all posts of the database.
+     */
+    public synchronized void rebuild() {
+        long started = System.nanoTime();
+        withWriteLock(() -> pendingChanges = new ArrayList<>());
+        InvertedIndex rebuilt = new InvertedIndex();
+        try {
+            postRepository.forEachPost(post -> rebuilt.put(post.id(), post.title(), post.description(), post.content()));
+        } catch (RuntimeException e) {
+            withWriteLock(() -> pendingChanges = null);
+            throw e;
+        }
+        install(rebuilt);
+        log.info("Search index has been built: {} posts in {} ms", rebuilt.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Writes the index to disk if it was changed since the previous checkpoint. Changes made while the index is
+     * written are queued, they become visible to queries when the new segment replaces the index.
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${application.search.checkpoint-interval:PT10M}",
+            initialDelayString = "${application.search.checkpoint-interval:PT10M}")
+    public synchronized void checkpoint() {
+        if (segmentFile == null) {
+            return;
+        }
+        LocalDateTime checkpoint = LocalDateTime.now();
+        InvertedIndex current;
+        lock.writeLock().lock();
+        try {
+            if (!index.hasChanges()) {
+                return;
+            }
+            current = index;
+            pendingChanges = new ArrayList<>();
+            frozen = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long started = System.nanoTime();
+        InvertedIndex next = current;
+        try {
+            Files.createDirectories(segmentFile.getParent());
+            try (SearchSegment.Writer writer = new SearchSegment.Writer(segmentFile)) {
+                current.writeTo(writer);
+                writer.commit(checkpoint);
+            }
+            next = new InvertedIndex(SearchSegment.open(segmentFile));
+            log.info("Search index has been written to {}: {} posts in {} ms", segmentFile, next.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            log.warn("Search index can't be written to {}, changes stay in memory", segmentFile, e);
+        } finally {
+            install(next);
+        }
+    }
+
+    /**
+     * Adds a new post to the index or replaces the indexed version of a changed post.
+     *
+     * @param post post with its id
+     */
+    public void postIndexed(Post post) {
+        apply(target -> target.put(post.id(), post.title(), post.description(), post.content()));
+    }
+
+    /**
+     * @param postId id of the removed post
+     */
+    public void postRemoved(long postId) {
+        apply(target -> target.remove(postId));
+    }
+
+    /**
+     * @param query  words to look for
+     * @param offset number of best posts to skip
+     * @param limit  maximum number of posts to return
+     * @return ids of the found posts from the most relevant one and the number of all found posts
+     */
+    public SearchHits search(String query, long offset, int limit) {
+        lock.readLock().lock();
+        try {
+            return index.search(query, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param postIds ids of the found posts on the requested page, from the most relevant one
+     * @param total   number of all found posts
+     */
+    public record SearchHits(List<Long> postIds, long total) {
+
+        public static SearchHits empty(long total) {
+            return new SearchHits(List.of(), total);
+        }
+    }
+
+    private void install(InvertedIndex target) {
+        withWriteLock(() -> {
+            pendingChanges.forEach(change -> change.accept(target));
+            pendingChanges = null;
+            frozen = false;
+            index = target;
+        });
+    }
+
+    private int removeDeletedPosts(InvertedIndex target) {
+        PostIds postIds = new PostIds();
+        postRepository.forEachPostId(postIds);
+        return target.retainAll(postIds::contains);
+    }
+
+    private void apply(Consumer<InvertedIndex> change) {
+        withWriteLock(() -> {
+            if (!frozen) {
+                change.accept(index);
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        });
+    }
+
+    private void withWriteLock(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ids of all posts of the database in ascending order
+    private static final class PostIds implements LongConsumer {
+        private long[] ids = new long[1024];
+        private int size;
+
+        @Override
+        public void accept(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package org.javaprojects.myblogsite.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Immutable search index segment stored in one file and read through memory mapping.
+ * <p>
+ * Opening a segment reads only its header, documents and postings are paged in by the operating system when
+ * queries touch them, so opening costs the same for any number of posts. Layout of the file:
+ * </p>
+ * <pre>
+ * header     magic, version, checkpoint, number of documents, total length, number of terms, section offsets
+ * post ids   long per document, documents are numbered in ascending order of post ids
+ * lengths    int per document, number of terms in the document
+ * postings   (int document, int frequency) pairs, grouped by term, ascending documents within a term
+ * term table (int bytes offset, int bytes length, long postings offset, int postings size, padding) per term,
+ *            terms in ascending order of their UTF-8 bytes
+ * term bytes UTF-8 bytes of all terms
+ * </pre>
+ *
+ * @author Oleh Svyrysov
+ */
+final class SearchSegment {
+    private static final int MAGIC = 0x4D425358;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int TERM_ENTRY_SIZE = 24;
+    private static final int POSTING_SIZE = 8;
+    // files over 2 GB are mapped by several windows, values never cross a window because sections are 8-aligned
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+    private final MappedByteBuffer[] windows;
+    private final LocalDateTime checkpoint;
+    private final int documents;
+    private final long totalLength;
+    private final int terms;
+    private final long lengthsOffset;
+    private final long termTableOffset;
+    private final long termBytesOffset;
+
+    private SearchSegment(MappedByteBuffer[] windows) throws IOException {
+        this.windows = windows;
+        if (windows.length == 0 || getInt(0) != MAGIC || getInt(4) != VERSION) {
+            throw new IOException("Not a search segment or unsupported version");
+        }
+        this.checkpoint = LocalDateTime.ofEpochSecond(getLong(8), getInt(16), ZoneOffset.UTC);
+        this.documents = getInt(20);
+        this.totalLength = getLong(24);
+        this.terms = getInt(32);
+        this.termTableOffset = getLong(40);
+        this.termBytesOffset = getLong(48);
+        this.lengthsOffset = HEADER_SIZE + (long) documents * Long.BYTES;
+    }
+
+    /**
+     * @param file segment file
+     * @return mapped segment
+     * @throws IOException if the file can't be read or is not a segment
+     */
+    static SearchSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = i * WINDOW_SIZE;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            }
+            return new SearchSegment(windows);
+        }
+    }
+
+    /**
+     * @return time up to which changes of posts are contained in the segment
+     */
+    LocalDateTime checkpoint() {
+        return checkpoint;
+    }
+
+    int documents() {
+        return documents;
+    }
+
+    long totalLength() {
+        return totalLength;
+    }
+
+    int terms() {
+        return terms;
+    }
+
+    long postId(int document) {
+        return getLong(HEADER_SIZE + (long) document * Long.BYTES);
+    }
+
+    int length(int document) {
+        return getInt(lengthsOffset + (long) document * Integer.BYTES);
+    }
+
+    /**
+     * @param postId id of the post
+     * @return document of the post or {@code -1} if the post is not in the segment
+     */
+    int findDocument(long postId) {
+        int low = 0;
+        int high = documents - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = postId(middle);
+            if (middleId < postId) {
+                low = middle + 1;
+            } else if (middleId > postId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param term term to look for
+     * @return index of the term in the term table or {@code -1} if no document has the term
+     */
+    int findTerm(String term) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = terms - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareTerm(middle, bytes);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    byte[] termBytes(int term) {
+        long entry = termTableOffset + (long) term * TERM_ENTRY_SIZE;
+        byte[] bytes = new byte[getInt(entry + 4)];
+        long offset = termBytesOffset + getInt(entry);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = getByte(offset + i);
+        }
+        return bytes;
+    }
+
+    int postingsSize(int term) {
+        return getInt(termTableOffset + (long) term * TERM_ENTRY_SIZE + 16);
+    }
+
+    /**
+     * @param term    index of the term
+     * @param posting index of the posting within the term
+     * @return position of the posting in the file for {@link #postingDocument(long)} and {@link #postingFrequency(long)}
+     */
+    long posting(int term, int posting) {
+        return getLong(termTableOffset + (long) term * TERM_ENTRY_SIZE + 8) + (long) posting * POSTING_SIZE;
+    }
+
+    long nextPosting(long posting) {
+        return posting + POSTING_SIZE;
+    }
+
+    int postingDocument(long posting) {
+        return getInt(posting);
+    }
+
+    int postingFrequency(long posting) {
+        return getInt(posting + Integer.BYTES);
+    }
+
+    private int compareTerm(int term, byte[] bytes) {
+        long entry = termTableOffset + (long) term * TERM_ENTRY_SIZE;
+        long offset = termBytesOffset + getInt(entry);
+        int length = getInt(entry + 4);
+        int common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            int difference = Byte.toUnsignedInt(getByte(offset + i)) - Byte.toUnsignedInt(bytes[i]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - bytes.length;
+    }
+
+    private byte getByte(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)].get((int) (position & (WINDOW_SIZE - 1)));
+    }
+
+    private int getInt(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)].getInt((int) (position & (WINDOW_SIZE - 1)));
+    }
+
+    private long getLong(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)].getLong((int) (position & (WINDOW_SIZE - 1)));
+    }
+
+    /**
+     * Writes a segment to a temporary file and moves it to its place when it is complete, so a crash never
+     * leaves a half-written segment. Documents are given first, then terms in ascending order of their bytes.
+     */
+    static final class Writer implements AutoCloseable {
+        private static final int BUFFER_SIZE = 1 << 16;
+        private final Path file;
+        private final Path temporaryFile;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private ByteBuffer termTable = ByteBuffer.allocate(TERM_ENTRY_SIZE * 1024);
+        private ByteBuffer termBytes = ByteBuffer.allocate(16 * 1024);
+        private byte[] previousTerm;
+        private int documents = -1;
+        private long totalLength;
+        private int terms;
+        private long position;
+        private boolean committed;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.position = HEADER_SIZE;
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * @param postIds ids of the posts in ascending order, the index in the array is the document
+         * @param lengths number of terms of every document
+         * @param count   number of documents
+         */
+        void documents(long[] postIds, int[] lengths, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                if (i > 0 && postIds[i] <= postIds[i - 1]) {
+                    throw new IllegalArgumentException("Post ids must be unique and ascending");
+                }
+                putLong(postIds[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                putInt(lengths[i]);
+                totalLength += lengths[i];
+            }
+            if (count % 2 != 0) {
+                putInt(0);
+            }
+            documents = count;
+        }
+
+        /**
+         * @param term        term bytes, greater than the bytes of the previous term
+         * @param documents   documents that contain the term in ascending order
+         * @param frequencies frequencies of the term in the documents
+         * @param count       number of documents
+         */
+        void term(byte[] term, int[] documents, int[] frequencies, int count) throws IOException {
+            if (this.documents < 0) {
+                throw new IllegalStateException("Documents must be written before terms");
+            }
+            if (previousTerm != null && Arrays.compareUnsigned(previousTerm, term) >= 0) {
+                throw new IllegalArgumentException("Terms must be unique and ascending");
+            }
+            if (count == 0) {
+                return;
+            }
+            termTable = ensureCapacity(termTable, TERM_ENTRY_SIZE);
+            termTable.putInt(termBytes.position()).putInt(term.length).putLong(position).putInt(count).putInt(0);
+            termBytes = ensureCapacity(termBytes, term.length);
+            termBytes.put(term);
+            for (int i = 0; i < count; i++) {
+                putInt(documents[i]);
+                putInt(frequencies[i]);
+            }
+            previousTerm = term;
+            terms++;
+        }
+
+        /**
+         * Completes the segment and replaces the previous file.
+         *
+         * @param checkpoint time up to which changes of posts are contained in the segment
+         */
+        void commit(LocalDateTime checkpoint) throws IOException {
+            long termTableOffset = position;
+            termTable.flip();
+            putBytes(termTable);
+            long termBytesOffset = position;
+            termBytes.flip();
+            putBytes(termBytes);
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(checkpoint.toEpochSecond(ZoneOffset.UTC))
+                    .putInt(checkpoint.getNano())
+                    .putInt(documents)
+                    .putLong(totalLength)
+                    .putInt(terms)
+                    .putInt(0)
+                    .putLong(termTableOffset)
+                    .putLong(termBytesOffset);
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+            channel.close();
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+
+        private static ByteBuffer ensureCapacity(ByteBuffer target, int bytes) {
+            if (target.remaining() >= bytes) {
+                return target;
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(target.capacity() * 2, target.position() + bytes));
+            target.flip();
+            return grown.put(target);
+        }
+
+        private void putInt(int value) throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush();
+            }
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        private void putLong(long value) throws IOException {
+            if (buffer.remaining() < Long.BYTES) {
+                flush();
+            }
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        private void putBytes(ByteBuffer bytes) throws IOException {
+            flush();
+            position += bytes.remaining();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
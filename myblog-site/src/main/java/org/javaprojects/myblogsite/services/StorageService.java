@@ -2,16 +2,85 @@ package org.javaprojects.myblogsite.services;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
 
-
+/**
+ * Storage of uploaded images. The images are stored on the disk of the node by {@link FileSystemStorageService}
+ * or in an S3-compatible object store by {@link S3StorageService}, {@code application.storage.type} selects one.
+ * Stored images are addressed by paths in the image directory, e.g. {@code /upload/3f/a1/3fa1...c2.jpg},
+ * whatever the backend is.
+ *
+ * @author Oleh Svyrysov
+ */
 public interface StorageService {
+    /**
+     * A file that was stored again within this period is not released, a post that is being created may refer to it.
+     */
+    Duration RELEASE_GRACE_PERIOD = Duration.ofMinutes(10);
 
     String handleFileUpload(MultipartFile file);
 
+    /**
+     * Stores an image streamed by the client, e.g. the body of an upload request, without copying it
+     * to a temporary location first. The content is checked while it is copied.
+     *
+     * @param content content of the image, it is closed
+     * @return path of the stored image
+     * @throws InvalidImageException if the content is not an image or is too large
+     */
+    String handleStreamUpload(InputStream content);
+
+    /**
+     * @param path a path sent by a client
+     * @return whether the path refers to an image stored by {@link #handleStreamUpload(InputStream)}
+     * or {@link #handleFileUpload(MultipartFile)}
+     */
+    boolean isStoredFile(String path);
+
+    /**
+     * @param path path of a stored file
+     * @return content of the file, the caller closes it
+     * @throws StorageFileNotFoundException if there is no such file
+     */
+    InputStream readFile(String path);
+
+    /**
+     * Stores a file derived from a stored file, e.g. a resized image, under the given path. The file appears
+     * complete or not at all.
+     *
+     * @param path    path of the file in the image directory
+     * @param content content of the file
+     */
+    void storeFile(String path, byte[] content);
+
+    /**
+     * Deletes a stored file that no post refers to anymore. Files that were stored again recently are kept,
+     * because a post that is being created may refer to them.
+     *
+     * @param path path returned by {@link #handleFileUpload(MultipartFile)}
+     * @return whether the file has been deleted
+     */
+    boolean releaseFile(String path);
+
+    /**
+     * @param path path of a stored file
+     * @return where browsers read the file from instead of the application, empty if the application sends it
+     */
+    Optional<ReadUrl> getReadUrl(String path);
+
     URI getRootLocation();
 
     String getImageDirectory();
 
     String getDefaultFilePath();
+
+    /**
+     * @param url    url of the file in the storage
+     * @param maxAge how long a browser may use the url
+     */
+    record ReadUrl(URI url, Duration maxAge) {
+    }
 }
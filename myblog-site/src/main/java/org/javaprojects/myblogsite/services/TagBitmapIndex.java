@@ -0,0 +1,293 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.dto.PageCursor;
+import org.javaprojects.myblogsite.dto.TagFilter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of posts by tag for filtering the feed by several tags.
+ * <p>
+ * Every post gets a rank, its position in the feed order by {@code created_at} and {@code id} from the oldest
+ * post. Every tag maps to a {@link PostBitmap} of the ranks of its posts, so a filter intersects or unites
+ * bitmaps and the page is read from the result in the order of ranks, without sorting. New posts are the newest
+ * ones and get the next rank. Posts created out of order, e.g. imported ones, wait until the next query
+ * renumbers the index.
+ * </p>
+ * <p>
+ * The index is not thread-safe, {@link TagFilterService} guards it.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+final class TagBitmapIndex {
+    private static final PostBitmap EMPTY = new PostBitmap();
+
+    private final Map<String, PostBitmap> postsByTag = new HashMap<>();
+    private final Map<Long, Integer> ranksByPostId = new HashMap<>();
+    private final Map<Long, UnorderedPost> unorderedPosts = new HashMap<>();
+    // ranks of removed posts keep their values until the index is renumbered, so the arrays stay sorted
+    private long[] postIds = new long[1024];
+    private long[] times = new long[1024];
+    private int ranks;
+
+    /**
+     * Adds the post, the previous version of the post is replaced.
+     *
+     * @param postId    id of the post
+     * @param createdAt creation time of the post
+     * @param tags      tags of the post
+     */
+    void put(long postId, LocalDateTime createdAt, Collection<String> tags) {
+        remove(postId);
+        long time = time(createdAt);
+        if (ranks > 0 && compare(time, postId, times[ranks - 1], postIds[ranks - 1]) < 0) {
+            unorderedPosts.put(postId, new UnorderedPost(time, new HashSet<>(tags)));
+            return;
+        }
+        if (ranks == postIds.length) {
+            postIds = Arrays.copyOf(postIds, ranks * 2);
+            times = Arrays.copyOf(times, ranks * 2);
+        }
+        int rank = ranks++;
+        postIds[rank] = postId;
+        times[rank] = time;
+        ranksByPostId.put(postId, rank);
+        for (String tag : tags) {
+            postsByTag.computeIfAbsent(tag, t -> new PostBitmap()).add(rank);
+        }
+    }
+
+    /**
+     * @param postId  id of the post
+     * @param removed tags removed from the post
+     * @param added   tags added to the post
+     */
+    void changeTags(long postId, Collection<String> removed, Collection<String> added) {
+        UnorderedPost unordered = unorderedPosts.get(postId);
+        if (unordered != null) {
+            unordered.tags().removeAll(removed);
+            unordered.tags().addAll(added);
+            return;
+        }
+        Integer rank = ranksByPostId.get(postId);
+        if (rank == null) {
+            return;
+        }
+        for (String tag : removed) {
+            PostBitmap posts = postsByTag.get(tag);
+            if (posts != null && posts.remove(rank) && posts.isEmpty()) {
+                postsByTag.remove(tag);
+            }
+        }
+        for (String tag : added) {
+            postsByTag.computeIfAbsent(tag, t -> new PostBitmap()).add(rank);
+        }
+    }
+
+    /**
+     * @param postId id of the post
+     * @return whether the post was indexed
+     */
+    boolean remove(long postId) {
+        if (unorderedPosts.remove(postId) != null) {
+            return true;
+        }
+        Integer rank = ranksByPostId.remove(postId);
+        if (rank == null) {
+            return false;
+        }
+        // posts are removed rarely, so the tags of the post are not kept and every tag is checked
+        postsByTag.values().removeIf(posts -> posts.remove(rank) && posts.isEmpty());
+        if (ranks - ranksByPostId.size() > Math.max(1024, ranksByPostId.size() / 4)) {
+            renumber();
+        }
+        return true;
+    }
+
+    int size() {
+        return ranksByPostId.size() + unorderedPosts.size();
+    }
+
+    /**
+     * @return whether every post has its rank and the index can be queried
+     */
+    boolean isOrdered() {
+        return unorderedPosts.isEmpty();
+    }
+
+    /**
+     * Gives ranks to the posts that were created out of order.
+     */
+    void order() {
+        if (!unorderedPosts.isEmpty()) {
+            renumber();
+        }
+    }
+
+    /**
+     * @param filter tags to look for
+     * @return number of posts that match the filter
+     */
+    long count(TagFilter filter) {
+        return matches(filter).cardinality();
+    }
+
+    /**
+     * @param filter tags to look for
+     * @param cursor position of the page or {@code null} for the first page
+     * @param limit  maximum number of posts to return
+     * @return ids of the posts next to the cursor in the direction of the cursor, the newest first
+     */
+    List<Long> findPostIds(TagFilter filter, PageCursor cursor, int limit) {
+        if (!isOrdered()) {
+            throw new IllegalStateException("Index has posts without ranks");
+        }
+        PostBitmap posts = matches(filter);
+        List<Long> ids = new ArrayList<>(Math.min(limit, 64));
+        if (cursor != null && cursor.isBackward()) {
+            for (int rank = posts.nextValue(rankAfter(cursor)); rank >= 0 && ids.size() < limit;
+                 rank = posts.nextValue(rank + 1)) {
+                ids.add(postIds[rank]);
+            }
+            Collections.reverse(ids);
+        } else {
+            int from = cursor == null ? ranks - 1 : rankBefore(cursor);
+            for (int rank = posts.previousValue(from); rank >= 0 && ids.size() < limit;
+                 rank = posts.previousValue(rank - 1)) {
+                ids.add(postIds[rank]);
+            }
+        }
+        return ids;
+    }
+
+    private PostBitmap matches(TagFilter filter) {
+        List<PostBitmap> bitmaps = new ArrayList<>(filter.tags().size());
+        for (String tag : filter.tags()) {
+            PostBitmap posts = postsByTag.get(tag);
+            if (posts != null) {
+                bitmaps.add(posts);
+            } else if (filter.mode() == TagFilter.Mode.ALL) {
+                return EMPTY;
+            }
+        }
+        if (bitmaps.isEmpty()) {
+            return EMPTY;
+        }
+        PostBitmap result = bitmaps.get(0);
+        if (filter.mode() == TagFilter.Mode.ALL) {
+            // the smallest sets first, so intermediate results are small from the start
+            bitmaps.sort(Comparator.comparingLong(PostBitmap::cardinality));
+            result = bitmaps.get(0);
+            for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+                result = result.and(bitmaps.get(i));
+            }
+        } else {
+            for (int i = 1; i < bitmaps.size(); i++) {
+                result = result.or(bitmaps.get(i));
+            }
+        }
+        return result;
+    }
+
+    // the rank of the newest post that is older than the cursor
+    private int rankBefore(PageCursor cursor) {
+        Integer rank = ranksByPostId.get(cursor.id());
+        return rank != null ? rank - 1 : lowerBound(time(cursor.createdAt()), cursor.id()) - 1;
+    }
+
+    // the rank of the oldest post that is newer than the cursor
+    private int rankAfter(PageCursor cursor) {
+        Integer rank = ranksByPostId.get(cursor.id());
+        return rank != null ? rank + 1 : lowerBound(time(cursor.createdAt()), cursor.id());
+    }
+
+    // number of ranks that are older than the position, the post of the cursor may be gone
+    private int lowerBound(long time, long postId) {
+        int low = 0;
+        int high = ranks;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(times[middle], postIds[middle], time, postId) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // merges unordered posts into the ranks and drops ranks of removed posts
+    private void renumber() {
+        List<Map.Entry<Long, UnorderedPost>> unordered = new ArrayList<>(unorderedPosts.entrySet());
+        unordered.sort((a, b) -> compare(a.getValue().time(), a.getKey(), b.getValue().time(), b.getKey()));
+        int live = ranksByPostId.size() + unordered.size();
+        long[] newPostIds = new long[Math.max(1024, live + live / 4)];
+        long[] newTimes = new long[newPostIds.length];
+        int[] renumbered = new int[ranks];
+        int[] unorderedRanks = new int[unordered.size()];
+        int next = 0;
+        int u = 0;
+        for (int rank = 0; rank <= ranks; rank++) {
+            while (u < unordered.size() && (rank == ranks
+                    || compare(unordered.get(u).getValue().time(), unordered.get(u).getKey(),
+                    times[rank], postIds[rank]) < 0)) {
+                newPostIds[next] = unordered.get(u).getKey();
+                newTimes[next] = unordered.get(u).getValue().time();
+                unorderedRanks[u++] = next++;
+            }
+            if (rank < ranks) {
+                Integer current = ranksByPostId.get(postIds[rank]);
+                if (current != null && current == rank) {
+                    newPostIds[next] = postIds[rank];
+                    newTimes[next] = times[rank];
+                    renumbered[rank] = next++;
+                } else {
+                    renumbered[rank] = -1;
+                }
+            }
+        }
+        postsByTag.replaceAll((tag, posts) -> {
+            PostBitmap renumberedPosts = new PostBitmap();
+            posts.forEach(rank -> renumberedPosts.add(renumbered[rank]));
+            return renumberedPosts;
+        });
+        for (int i = 0; i < unordered.size(); i++) {
+            int rank = unorderedRanks[i];
+            for (String tag : unordered.get(i).getValue().tags()) {
+                postsByTag.computeIfAbsent(tag, t -> new PostBitmap()).add(rank);
+            }
+        }
+        postIds = newPostIds;
+        times = newTimes;
+        ranks = next;
+        ranksByPostId.clear();
+        for (int rank = 0; rank < ranks; rank++) {
+            ranksByPostId.put(postIds[rank], rank);
+        }
+        unorderedPosts.clear();
+    }
+
+    // microseconds since the epoch, the precision of timestamps in the database
+    private static long time(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    private static int compare(long time, long postId, long otherTime, long otherPostId) {
+        return time != otherTime ? Long.compare(time, otherTime) : Long.compare(postId, otherPostId);
+    }
+
+    private record UnorderedPost(long time, Set<String> tags) {
+    }
+}
@@ -0,0 +1,157 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.dto.PageCursor;
+import org.javaprojects.myblogsite.dto.TagFilter;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * TagFilterService filters the feed by several tags in memory.
+ * <p>
+ * Posts of every tag are kept as a compressed bitmap of their positions in the feed, a filter intersects
+ * ({@link TagFilter.Mode#ALL}) or unites ({@link TagFilter.Mode#ANY}) the bitmaps of its tags and reads the page
+ * from the result, only the posts of the page are read from the database. The index is built from the database
+ * at startup and then maintained by {@link PostService}, changes made while it is rebuilt are replayed on the
+ * new index.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class TagFilterService implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(TagFilterService.class);
+    private final PostRepository postRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TagBitmapIndex index = new TagBitmapIndex();
+    // not null while the index is rebuilt
+    private List<Consumer<TagBitmapIndex>> pendingChanges;
+
+    public TagFilterService(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    /**
+     * Replaces the index with a new one built from the tags of all posts of the database.
+     */
+    public synchronized void rebuild() {
+        long started = System.nanoTime();
+        withWriteLock(() -> pendingChanges = new ArrayList<>());
+        TagBitmapIndex rebuilt = new TagBitmapIndex();
+        try {
+            postRepository.forEachPostTags(post -> rebuilt.put(post.postId(), post.createdAt(), post.tags()));
+        } catch (RuntimeException e) {
+            withWriteLock(() -> pendingChanges = null);
+            throw e;
+        }
+        withWriteLock(() -> {
+            pendingChanges.forEach(change -> change.accept(rebuilt));
+            pendingChanges = null;
+            rebuilt.order();
+            index = rebuilt;
+        });
+        log.info("Tag filter index has been built: {} posts in {} ms", rebuilt.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * @param postId    id of the new post
+     * @param createdAt creation time of the post
+     * @param tags      tags of the post
+     */
+    public void postCreated(long postId, LocalDateTime createdAt, Set<String> tags) {
+        Set<String> postTags = Set.copyOf(tags);
+        apply(target -> target.put(postId, createdAt, postTags));
+    }
+
+    /**
+     * @param postId  id of the changed post
+     * @param removed tags removed from the post
+     * @param added   tags added to the post
+     */
+    public void tagsChanged(long postId, Set<String> removed, Set<String> added) {
+        Set<String> removedTags = Set.copyOf(removed);
+        Set<String> addedTags = Set.copyOf(added);
+        apply(target -> target.changeTags(postId, removedTags, addedTags));
+    }
+
+    /**
+     * @param postId id of the removed post
+     */
+    public void postRemoved(long postId) {
+        apply(target -> target.remove(postId));
+    }
+
+    /**
+     * @param filter tags to look for, it must not be empty
+     * @param cursor position of the page or {@code null} for the first page
+     * @param limit  maximum number of posts to return
+     * @return ids of the matching posts next to the cursor, the newest first
+     */
+    public List<Long> findPostIds(TagFilter filter, PageCursor cursor, int limit) {
+        return query(target -> target.findPostIds(filter, cursor, limit));
+    }
+
+    /**
+     * @param filter tags to look for, it must not be empty
+     * @return number of posts that match the filter
+     */
+    public long countPosts(TagFilter filter) {
+        return query(target -> target.count(filter));
+    }
+
+    // posts created out of the feed order get their ranks before the first query that needs them
+    private <T> T query(Function<TagBitmapIndex, T> query) {
+        lock.readLock().lock();
+        try {
+            if (index.isOrdered()) {
+                return query.apply(index);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            index.order();
+            return query.apply(index);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Consumer<TagBitmapIndex> change) {
+        withWriteLock(() -> {
+            change.accept(index);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        });
+    }
+
+    private void withWriteLock(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TagIndexService keeps distinct tag names with the number of posts for every tag in memory.
+ * <p>
+ * The index is loaded once at startup by {@link PostCountsService} and then maintained by it on every change
+ * of tags, so the feed page gets the list of tags without touching the database. The number of posts tells
+ * when the last post of a tag is gone and the tag leaves the list.
+ * </p>
+ *
+ * @author Oleh Svyrysov
+ */
+@Service
+public class TagIndexService {
+    private static final Logger log = LoggerFactory.getLogger(TagIndexService.class);
+    private final PostRepository postRepository;
+    private final Map<String, Long> postCounts = new ConcurrentHashMap<>();
+    // incremented after every change, a snapshot of tags is valid only for the version it was built for
+    private final AtomicLong version = new AtomicLong();
+    private volatile TagsSnapshot tagsSnapshot;
+    private volatile boolean loaded;
+
+    public TagIndexService(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    /**
+     * Replaces the content of the index with the tags from the database.
+     */
+    public synchronized void reload() {
+        replace(postRepository.getTagPostCounts());
+    }
+
+    /**
+     * Replaces the content of the index with the tags read from the database by the caller.
+     *
+     * @param counts number of posts of every tag
+     */
+    public synchronized void replace(Map<String, Long> counts) {
+        postCounts.keySet().retainAll(counts.keySet());
+        postCounts.putAll(counts);
+        version.incrementAndGet();
+        loaded = true;
+        log.info("Tag index has been loaded: {} tags", counts.size());
+    }
+
+    /**
+     * @return sorted unmodifiable set of all tags
+     */
+    public SortedSet<String> getAllTags() {
+        ensureLoaded();
+        long currentVersion = version.get();
+        TagsSnapshot snapshot = tagsSnapshot;
+        if (snapshot == null || snapshot.version() != currentVersion) {
+            snapshot = new TagsSnapshot(currentVersion,
+                    Collections.unmodifiableSortedSet(new TreeSet<>(postCounts.keySet())));
+            tagsSnapshot = snapshot;
+        }
+        return snapshot.tags();
+    }
+
+    /**
+     * @param tagName name of the tag
+     * @return number of posts that have the tag
+     */
+    public long getPostCount(String tagName) {
+        ensureLoaded();
+        return postCounts.getOrDefault(tagName, 0L);
+    }
+
+    /**
+     * Registers tags that were added to one post.
+     *
+     * @param tags tags of the post
+     */
+    public void tagsAdded(Collection<String> tags) {
+        ensureLoaded();
+        for (String tag : tags) {
+            postCounts.merge(tag, 1L, Long::sum);
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Registers tags that were removed from one post. The tag disappears when no posts have it anymore.
+     *
+     * @param tags removed tags of the post
+     */
+    public void tagsRemoved(Collection<String> tags) {
+        ensureLoaded();
+        for (String tag : tags) {
+            postCounts.computeIfPresent(tag, (name, count) -> count > 1 ? count - 1 : null);
+        }
+        version.incrementAndGet();
+    }
+
+    private record TagsSnapshot(long version, SortedSet<String> tags) {
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+    }
+}
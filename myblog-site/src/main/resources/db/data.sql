@@ -49,14 +49,18 @@ INSERT INTO comments (content, post_id, created_at)VALUES ('Good job!', 1, '2025
 INSERT INTO comments (content, post_id, created_at)VALUES ('Great image!', 2, '2025-01-14T14:35:35');
 INSERT INTO comments (content, post_id, created_at)VALUES ('I want the same', 3, '2025-01-14T15:35:35');
 INSERT INTO comments (content, post_id, created_at)VALUES ( 'You are the best!', 3, '2025-01-14T16:35:35');
+// tags
+INSERT INTO tag (name) VALUES ( '#cats' );
+INSERT INTO tag (name) VALUES ( '#fluffies' );
+INSERT INTO tag (name) VALUES ( '#groups' );
 // tags_posts
-INSERT INTO tags (tag_name, post_id) VALUES ( '#cats', 1 );
-INSERT INTO tags (tag_name, post_id) VALUES ( '#fluffies', 1 );
-INSERT INTO tags (tag_name, post_id) VALUES ( '#cats', 2 );
-INSERT INTO tags (tag_name, post_id) VALUES ( '#groups', 2 );
-INSERT INTO tags (tag_name, post_id) VALUES ( '#cats', 3 );
-INSERT INTO tags (tag_name, post_id) VALUES ( '#cats', 4 );
-INSERT INTO tags (tag_name, post_id) VALUES ( '#groups', 4 );
+INSERT INTO post_tag (post_id, tag_id) SELECT 1, id FROM tag WHERE name = '#cats';
+INSERT INTO post_tag (post_id, tag_id) SELECT 1, id FROM tag WHERE name = '#fluffies';
+INSERT INTO post_tag (post_id, tag_id) SELECT 2, id FROM tag WHERE name = '#cats';
+INSERT INTO post_tag (post_id, tag_id) SELECT 2, id FROM tag WHERE name = '#groups';
+INSERT INTO post_tag (post_id, tag_id) SELECT 3, id FROM tag WHERE name = '#cats';
+INSERT INTO post_tag (post_id, tag_id) SELECT 4, id FROM tag WHERE name = '#cats';
+INSERT INTO post_tag (post_id, tag_id) SELECT 4, id FROM tag WHERE name = '#groups';
 // likes
 INSERT INTO likes (post_id, likes_count) VALUES ( 1, 10 );
 INSERT INTO likes (post_id, likes_count) VALUES ( 2, 15 );
@@ -0,0 +1,11 @@
+-- One-off migration of an existing database from the denormalized tags(tag_name, post_id) table
+-- to the tag dictionary and post_tag link table. Run it after schema.sql has created the new tables.
+INSERT INTO tag (name)
+SELECT DISTINCT tag_name FROM tags;
+
+INSERT INTO post_tag (post_id, tag_id)
+SELECT DISTINCT t.post_id, d.id
+FROM tags AS t
+JOIN tag AS d ON d.name = t.tag_name;
+
+DROP TABLE tags;
@@ -4,9 +4,22 @@ CREATE TABLE IF NOT EXISTS posts(
     description VARCHAR(256) NOT NULL,
     content text NOT NULL,
     image_url VARCHAR(256) NOT NULL,
-    created_at TIMESTAMP NOT NULL
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
 );
 
+-- databases created before the column was introduced
+ALTER TABLE posts ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL;
+
+-- keyset pagination of the feed walks this index from the cursor position (newest posts first)
+CREATE INDEX IF NOT EXISTS idx_posts_created_at_id ON posts(created_at DESC, id DESC);
+
+-- the search index reads posts changed since its last checkpoint from this index
+CREATE INDEX IF NOT EXISTS idx_posts_updated_at ON posts(updated_at);
+
+-- stored images are shared by posts, an image is released when no post refers to it anymore
+CREATE INDEX IF NOT EXISTS idx_posts_image_url ON posts(image_url);
+
 CREATE TABLE IF NOT EXISTS comments(
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     content text NOT NULL,
@@ -15,17 +28,55 @@ CREATE TABLE IF NOT EXISTS comments(
     FOREIGN KEY (post_id) REFERENCES posts(id) ON DELETE CASCADE
 );
 
-CREATE TABLE IF NOT EXISTS tags(
-    tag_name VARCHAR(256) NOT NULL,
-    post_id LONG NOT NULL,
-    FOREIGN KEY (post_id) REFERENCES posts (id) ON DELETE CASCADE
+-- comments of a post are read page by page in order of creation from this index
+CREATE INDEX IF NOT EXISTS idx_comments_post_id_created_at_id ON comments(post_id, created_at, id);
+
+-- dictionary of tags, every tag name is stored once
+CREATE TABLE IF NOT EXISTS tag(
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(256) NOT NULL UNIQUE
 );
 
+-- the primary key serves lookups of tags by post, the index serves lookups of posts by tag
+CREATE TABLE IF NOT EXISTS post_tag(
+    post_id BIGINT NOT NULL,
+    tag_id BIGINT NOT NULL,
+    PRIMARY KEY (post_id, tag_id),
+    FOREIGN KEY (post_id) REFERENCES posts (id) ON DELETE CASCADE,
+    FOREIGN KEY (tag_id) REFERENCES tag (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_post_tag_tag_id_post_id ON post_tag(tag_id, post_id);
+
 CREATE TABLE IF NOT EXISTS likes(
     post_id BIGINT PRIMARY KEY,
     likes_count LONG DEFAULT 0,
     FOREIGN KEY (post_id) REFERENCES posts (id) ON DELETE CASCADE
 );
 
+-- read model of the feed: statistics of every post maintained on write,
+-- it can be recomputed from comments, likes and tags at any moment
+CREATE TABLE IF NOT EXISTS post_stats(
+    post_id BIGINT PRIMARY KEY,
+    comment_count BIGINT DEFAULT 0 NOT NULL,
+    like_count BIGINT DEFAULT 0 NOT NULL,
+    -- joined names of the tags, a post may have any number of tags of up to 256 characters
+    tags VARCHAR DEFAULT '' NOT NULL,
+    FOREIGN KEY (post_id) REFERENCES posts (id) ON DELETE CASCADE
+);
 
+-- resized copies of uploaded images, feed pages offer them to browsers by srcset
+CREATE TABLE IF NOT EXISTS image_variants(
+    image_url VARCHAR(256) NOT NULL,
+    width INT NOT NULL,
+    content_type VARCHAR(64) NOT NULL,
+    url VARCHAR(256) NOT NULL,
+    PRIMARY KEY (image_url, width, content_type)
+);
 
+-- images that no post shows anymore but the storage has kept, e.g. they were stored again recently,
+-- their releases are retried after the grace period
+CREATE TABLE IF NOT EXISTS deferred_image_releases(
+    image_url VARCHAR(256) PRIMARY KEY,
+    released_at TIMESTAMP NOT NULL
+);
@@ -36,6 +36,50 @@ function removeComment(commentId) {
         .catch(error => console.error("Error removing comment:", error));
 }
 
+function renderComment(comment) {
+    const text = document.createElement("div");
+    text.className = "comment-text";
+    text.textContent = comment.content;
+    const removeButton = document.createElement("button");
+    removeButton.className = "remove-comment-btn";
+    removeButton.innerText = "X";
+    const container = document.createElement("div");
+    container.id = `comment-${comment.id}`;
+    container.append(text, removeButton);
+    const liElement = document.createElement("li");
+    liElement.append(container);
+    return liElement;
+}
+
+function loadMoreComments(observer, sentinel) {
+    const comments = document.getElementById("comment-list");
+    const cursor = comments.dataset.nextCursor;
+    if (!cursor || comments.dataset.loading === "true") {
+        return;
+    }
+    comments.dataset.loading = "true";
+    const postId = getPostId();
+    const root = getRoot();
+    fetch(`${root}posts/${postId}/comments?cursor=${encodeURIComponent(cursor)}&order=asc&limit=20`, {
+        headers: {"Accept": "application/json"}
+    })
+        .then(response => response.json())
+        .then(page => {
+            page.comments.forEach(comment => comments.append(renderComment(comment)));
+            if (page.nextCursor) {
+                comments.dataset.nextCursor = page.nextCursor;
+                // observe again, the sentinel may still be visible when the page was short
+                observer.unobserve(sentinel);
+                observer.observe(sentinel);
+            } else {
+                delete comments.dataset.nextCursor;
+                observer.disconnect();
+            }
+        })
+        .catch(error => console.error("Error loading comments:", error))
+        .finally(() => comments.dataset.loading = "false");
+}
+
 function previewImage(event) {
     const file = event.target.files[0];
     if (file) {
@@ -47,6 +91,33 @@ function previewImage(event) {
     }
 }
 
+// sends the chosen image to the storage as soon as it is chosen, the form then refers to the stored image
+// instead of sending it as a multipart part; if the upload fails, the form sends the image itself
+function uploadImage(event) {
+    const input = event.target;
+    const uploadedImageUrl = input.form.querySelector("input[name='uploadedImageUrl']");
+    const file = input.files[0];
+    input.name = "image";
+    uploadedImageUrl.value = "";
+    if (!file) {
+        return;
+    }
+    fetch(input.dataset.uploadUrl, {
+        method: "POST",
+        headers: {"Content-Type": file.type || "application/octet-stream"},
+        body: file
+    })
+        .then(response => response.ok ? response.json() : Promise.reject(new Error(`status ${response.status}`)))
+        .then(image => {
+            // another image may have been chosen meanwhile
+            if (input.files[0] === file) {
+                uploadedImageUrl.value = image.url;
+                input.removeAttribute("name");
+            }
+        })
+        .catch(error => console.error("Error uploading image:", error));
+}
+
 function addCommentPopup() {
     document.getElementById("comment-popup").style.display = "block";
 }
@@ -160,6 +231,16 @@ document.addEventListener("DOMContentLoaded", () => {
                     }
                 });
             }
+            // Load the next page of comments when the end of the list becomes visible
+            const sentinel = document.getElementById("comments-sentinel");
+            if (comments != null && sentinel != null && comments.dataset.nextCursor) {
+                const observer = new IntersectionObserver((entries) => {
+                    if (entries.some(entry => entry.isIntersecting)) {
+                        loadMoreComments(observer, sentinel);
+                    }
+                }, {rootMargin: "200px"});
+                observer.observe(sentinel);
+            }
 
             break;
     }
@@ -0,0 +1,158 @@
+package org.javaprojects.myblogsite.controllers;
+
+import org.javaprojects.myblogsite.services.StorageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+class ImageControllerTest {
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    TestRestTemplate restTemplate;
+    @Autowired
+    StorageService storageService;
+    private Path image;
+    private String etag;
+
+    @BeforeEach
+    void setUp() throws IOException, NoSuchAlgorithmException {
+        image = Path.of(storageService.getRootLocation()).resolve("image-controller-test.png");
+        Files.write(image, CONTENT);
+        etag = "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(CONTENT)) + "\"";
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(image);
+    }
+
+    @Test
+    void getImage_shouldSendImageWithStrongEtag() throws Exception {
+        mockMvc.perform(get("/upload/image-controller-test.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/png"))
+                .andExpect(content().bytes(CONTENT))
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("no-cache")))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"));
+    }
+
+    @Test
+    void getImage_withMatchingEtag_shouldReturnNotModified() throws Exception {
+        mockMvc.perform(get("/upload/image-controller-test.png").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(get("/upload/image-controller-test.png").header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getImage_withRange_shouldReturnPartOfImage() throws Exception {
+        mockMvc.perform(get("/upload/image-controller-test.png").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/20"))
+                .andExpect(content().bytes("2345".getBytes(StandardCharsets.US_ASCII)));
+        mockMvc.perform(get("/upload/image-controller-test.png").header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes("hij".getBytes(StandardCharsets.US_ASCII)));
+        mockMvc.perform(get("/upload/image-controller-test.png").header(HttpHeaders.RANGE, "bytes=20-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+        // the client has another version of the image, so it gets the whole current one
+        mockMvc.perform(get("/upload/image-controller-test.png")
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void getImage_contentAddressed_shouldBeImmutable() throws Exception {
+        String hash = etag.substring(1, etag.length() - 1);
+        Path contentAddressed = image.resolveSibling(hash + ".png");
+        Files.write(contentAddressed, CONTENT);
+        try {
+            mockMvc.perform(get("/upload/" + hash + ".png"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.ETAG, etag))
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")));
+        } finally {
+            Files.deleteIfExists(contentAddressed);
+        }
+    }
+
+    @Test
+    void getImage_unknownImage_shouldReturnNotFound() throws Exception {
+        mockMvc.perform(get("/upload/missing.png"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/upload/%2e%2e/%2e%2e/application.yml"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getImage_fromServer_shouldSendFileRange() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=10-");
+        ResponseEntity<byte[]> response = restTemplate.exchange("/upload/image-controller-test.png", HttpMethod.GET,
+                new HttpEntity<>(headers), byte[].class);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertArrayEquals("abcdefghij".getBytes(StandardCharsets.US_ASCII), response.getBody());
+    }
+
+    @Test
+    void uploadImage_shouldStoreBodyAndReturnItsPath() throws Exception {
+        byte[] gif = "GIF89a uploaded by the form".getBytes(StandardCharsets.US_ASCII);
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(gif));
+        String url = "/upload/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".gif";
+        try {
+            mockMvc.perform(post("/upload").contentType("image/gif").content(gif))
+                    .andExpect(status().isCreated())
+                    .andExpect(header().string(HttpHeaders.LOCATION, containsString(url)))
+                    .andExpect(jsonPath("$.url").value(url));
+            mockMvc.perform(get(url))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType("image/gif"))
+                    .andExpect(content().bytes(gif));
+        } finally {
+            Files.deleteIfExists(Path.of(storageService.getRootLocation()).resolve(url.substring("/upload/".length())));
+        }
+    }
+
+    @Test
+    void uploadImage_notAnImage_shouldBeRejected() throws Exception {
+        mockMvc.perform(post("/upload").contentType("image/png").content("<svg onload=alert(1)/>"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").isNotEmpty());
+    }
+}
@@ -1,50 +1,62 @@
 package org.javaprojects.myblogsite.controllers;
 
+import org.javaprojects.myblogsite.dto.CommentDto;
 import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.PageCursor;
 import org.javaprojects.myblogsite.models.Post;
 import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.javaprojects.myblogsite.services.SearchIndexService;
+import org.javaprojects.myblogsite.services.TagFilterService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.LongStream;
 
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureMockMvc
 class PostControllerTest {
-    public static final MockMultipartFile IMAGE_FILE = new MockMultipartFile("image", "test.jpg", MediaType.IMAGE_JPEG_VALUE, "bla-bla".getBytes());
+    public static final MockMultipartFile IMAGE_FILE = new MockMultipartFile("image", "test.jpg", MediaType.IMAGE_JPEG_VALUE,
+            new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 'b', 'l', 'a'});
     @Autowired
     MockMvc mockMvc;
     @MockitoBean
     PostRepository postRepository;
+    @Autowired
+    SearchIndexService searchIndexService;
+    @Autowired
+    TagFilterService tagFilterService;
 
     @Test
     void getAllPosts_goingToBasePath_shouldReturnAllPosts() throws Exception {
         addPostRecord(0, 10);
 
         mockMvc.perform(get("/")
-                        .param("offset", String.valueOf(0))
                         .param("limit", String.valueOf(10))
                         .param("tagFilter", "all"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("text/html;charset=UTF-8"))
                 .andExpect(view().name("feed"))
                 .andExpect(model().attributeExists("posts"))
-                .andExpect(model().attributeExists("offset"))
+                .andExpect(model().attribute("nextCursor", nullValue()))
+                .andExpect(model().attribute("previousCursor", nullValue()))
                 .andExpect(model().attributeExists("limit"))
                 .andExpect(model().attributeExists("allTags"))
                 .andExpect(model().attributeExists("totalPosts"))
@@ -53,21 +65,84 @@ class PostControllerTest {
 
     @Test
     void getAllPosts_shouldReturnAllPosts() throws Exception {
-        addPostRecord(10, 50);
+        // one more post than the limit means that there is a next page
+        addPostRecord(10, 61);
+        String cursor = PageCursor.next(LocalDateTime.now(), 10).encode();
 
         mockMvc.perform(get("/posts")
-                        .param("offset", String.valueOf(10))
+                        .param("cursor", cursor)
                         .param("limit", String.valueOf(50))
                         .param("tagFilter", "all"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("text/html;charset=UTF-8"))
                 .andExpect(view().name("feed"))
                 .andExpect(model().attributeExists("posts"))
-                .andExpect(model().attributeExists("offset"))
+                .andExpect(model().attributeExists("nextCursor"))
+                .andExpect(model().attributeExists("previousCursor"))
                 .andExpect(model().attributeExists("limit"))
                 .andExpect(model().attributeExists("allTags"))
                 .andExpect(model().attributeExists("totalPosts"))
-                .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(40));
+                .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(50));
+    }
+
+    @Test
+    void getAllPosts_withLimitOutOfRange_shouldClampPageSize() throws Exception {
+        addPostRecord(0, 61);
+
+        mockMvc.perform(get("/posts")
+                        .param("limit", "0"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("limit", 1))
+                .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(1));
+        mockMvc.perform(get("/posts")
+                        .param("limit", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("limit", 50))
+                .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(50));
+        verify(postRepository).findPostsPage(null, 2);
+        verify(postRepository).findPostsPage(null, 51);
+    }
+
+    @Test
+    void getAllPosts_withSeveralTags_shouldFilterPostsByTagIndex() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        tagFilterService.postCreated(601L, now.minusMinutes(3), Set.of("cats", "dogs"));
+        tagFilterService.postCreated(602L, now.minusMinutes(2), Set.of("cats"));
+        tagFilterService.postCreated(603L, now.minusMinutes(1), Set.of("dogs"));
+        when(postRepository.findPostsByIds(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> {
+                FeedPostDto post = new FeedPostDto();
+                post.setId(id);
+                post.setTitle("post " + id);
+                post.setDescription("description");
+                post.setImageUrl("/img.jpg");
+                post.setTags("");
+                post.setCreatedAt(now.minusMinutes(604 - id));
+                return post;
+            }).toList();
+        });
+        try {
+            mockMvc.perform(get("/posts")
+                            .param("tags", "cats,dogs")
+                            .param("mode", "all"))
+                    .andExpect(status().isOk())
+                    .andExpect(model().attribute("totalPosts", 1L))
+                    .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(1));
+            mockMvc.perform(get("/posts")
+                            .param("tags", "cats,dogs")
+                            .param("mode", "any"))
+                    .andExpect(status().isOk())
+                    .andExpect(model().attribute("totalPosts", 3L))
+                    .andExpect(model().attribute("mode", "any"))
+                    .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(3))
+                    .andExpect(xpath("(//section[@class='posts-list']//h2/a)[1]").string("post 603"));
+            verify(postRepository, never()).findPostsPageByTag(any(), any(), anyInt());
+        } finally {
+            tagFilterService.postRemoved(601L);
+            tagFilterService.postRemoved(602L);
+            tagFilterService.postRemoved(603L);
+        }
     }
 
     @Test
@@ -93,6 +168,81 @@ class PostControllerTest {
                 .andExpect(xpath("//p[@id='post-tags']/em").string("tag1, tag2"));
     }
 
+    @Test
+    void getPostById_shouldLoadLikesTogetherWithPost() throws Exception {
+        when(postRepository.findPostById(77L)).thenReturn(Optional.of(new Post(77L,
+                "title",
+                "desc",
+                "content",
+                "image",
+                LocalDateTime.now())));
+        when(postRepository.getLikesNumberByPostId(77L)).thenReturn(12L);
+
+        mockMvc.perform(get("/posts/77"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("likesCount", 12L))
+                .andExpect(xpath("//span[@class='like-count']/em").string("12"));
+    }
+
+    @Test
+    void getPostById_secondView_shouldBeServedFromCacheUntilCommentIsAdded() throws Exception {
+        when(postRepository.findPostById(42L)).thenReturn(Optional.of(new Post(42L,
+                "title",
+                "desc",
+                "content",
+                "image",
+                LocalDateTime.now())));
+
+        mockMvc.perform(get("/posts/42")).andExpect(status().isOk());
+        mockMvc.perform(get("/posts/42")).andExpect(status().isOk());
+        verify(postRepository, times(1)).findPostById(42L);
+
+        mockMvc.perform(post("/posts/42/comments").param("content", "new comment"))
+                .andExpect(status().is3xxRedirection());
+        mockMvc.perform(get("/posts/42")).andExpect(status().isOk());
+        verify(postRepository, times(2)).findPostById(42L);
+    }
+
+    @Test
+    void getPostById_afterLike_shouldServeCachedPageWithLiveLikes() throws Exception {
+        when(postRepository.findPostById(43L)).thenReturn(Optional.of(new Post(43L,
+                "title",
+                "desc",
+                "content",
+                "image",
+                LocalDateTime.now())));
+        when(postRepository.getLikesNumberByPostId(43L)).thenReturn(5L);
+
+        mockMvc.perform(get("/posts/43")).andExpect(status().isOk());
+        mockMvc.perform(get("/posts/43/like")).andExpect(content().string("6"));
+        mockMvc.perform(get("/posts/43"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("likesCount", 6L));
+        verify(postRepository, times(1)).findPostById(43L);
+    }
+
+    @Test
+    void getComments_shouldReturnPageWithCursorAsJson() throws Exception {
+        List<CommentDto> comments = LongStream.range(1, 4).mapToObj(i -> {
+            CommentDto comment = new CommentDto();
+            comment.setId(i);
+            comment.setPostId(5L);
+            comment.setContent("comment " + i);
+            comment.setCreatedAt(LocalDateTime.now().minusMinutes(i));
+            return comment;
+        }).toList();
+        when(postRepository.findCommentsPage(eq(5L), any(), eq(Sort.Direction.DESC), eq(3))).thenReturn(comments);
+
+        mockMvc.perform(get("/posts/5/comments")
+                        .param("order", "desc")
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.comments.length()").value(2))
+                .andExpect(jsonPath("$.comments[0].content").value("comment 1"))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+    }
+
     @Test
     void createPost_postShouldBeCreated() throws Exception {
         mockMvc.perform(multipart("/posts")
@@ -105,6 +255,60 @@ class PostControllerTest {
                 .andExpect(view().name("redirect:/posts"));
     }
 
+    @Test
+    void createPost_withTextInsteadOfImage_shouldBeRejected() throws Exception {
+        mockMvc.perform(multipart("/posts")
+                        .file(new MockMultipartFile("image", "test.jpg", MediaType.IMAGE_JPEG_VALUE, "bla-bla".getBytes()))
+                        .param("title", "title")
+                        .param("description", "description")
+                        .param("content", "some content"))
+                .andExpect(status().isBadRequest());
+        verify(postRepository, never()).save(any());
+    }
+
+    @Test
+    void search_shouldRenderPostsFoundByIndex() throws Exception {
+        searchIndexService.postIndexed(new Post(501L, "Caching in Spring", "description", "content", "/img.jpg",
+                LocalDateTime.now()));
+        searchIndexService.postIndexed(new Post(502L, "Gardening", "description", "content", "/img.jpg",
+                LocalDateTime.now()));
+        FeedPostDto found = new FeedPostDto();
+        found.setId(501L);
+        found.setTitle("Caching in Spring");
+        found.setDescription("description");
+        found.setImageUrl("/img.jpg");
+        found.setTags("");
+        when(postRepository.findPostsByIds(List.of(501L))).thenReturn(List.of(found));
+        try {
+            mockMvc.perform(get("/search").param("q", "caching"))
+                    .andExpect(status().isOk())
+                    .andExpect(view().name("search"))
+                    .andExpect(model().attribute("totalPosts", 1L))
+                    .andExpect(model().attribute("hasNext", false))
+                    .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(1));
+        } finally {
+            searchIndexService.postRemoved(501L);
+            searchIndexService.postRemoved(502L);
+        }
+    }
+
+    @Test
+    void search_withHugePage_shouldRenderEmptyPage() throws Exception {
+        searchIndexService.postIndexed(new Post(501L, "Caching in Spring", "description", "content", "/img.jpg",
+                LocalDateTime.now()));
+        try {
+            mockMvc.perform(get("/search").param("q", "caching")
+                            .param("page", "214748365")
+                            .param("limit", "10"))
+                    .andExpect(status().isOk())
+                    .andExpect(model().attribute("totalPosts", 1L))
+                    .andExpect(model().attribute("hasNext", false))
+                    .andExpect(xpath("//section[@class='posts-list']//tr/td").nodeCount(0));
+        } finally {
+            searchIndexService.postRemoved(501L);
+        }
+    }
+
     @Test
     void updatePost() throws Exception {
         mockMvc.perform(multipart("/posts")
@@ -138,9 +342,10 @@ class PostControllerTest {
                     post.setCommentsCount(10L);
                     post.setLikesCount(20L);
                     post.setImageUrl(String.format("/upload/image_%s.jpg", i));
+                    post.setCreatedAt(LocalDateTime.now().minusMinutes(i));
                     return post;
                 }).toList();
-        when(postRepository.findAllPosts(eq(from), anyInt())).thenReturn(posts);
+        when(postRepository.findPostsPage(any(), anyInt())).thenReturn(posts);
         return posts;
     }
 }
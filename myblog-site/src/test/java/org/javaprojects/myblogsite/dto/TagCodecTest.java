@@ -0,0 +1,42 @@
+package org.javaprojects.myblogsite.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TagCodecTest {
+
+    @Test
+    void parse_shouldSplitOnAllSeparatorsAndDropEmptyAndRepeatedTags() {
+        assertEquals(List.of("cats", "dogs", "birds"),
+                List.copyOf(TagCodec.parse(" cats,dogs | birds,, cats\tdogs ")));
+        assertEquals(Set.of(), TagCodec.parse(" , | "));
+        assertEquals(Set.of(), TagCodec.parse(null));
+    }
+
+    @Test
+    void normalize_shouldProduceCanonicalForm() {
+        assertEquals("cats, dogs, birds", TagCodec.normalize("cats|dogs  birds,cats"));
+        assertEquals("cat, cats", TagCodec.normalize("cat,cats,cat"));
+        assertEquals("", TagCodec.normalize(" ,"));
+        assertEquals("", TagCodec.normalize(null));
+    }
+
+    @Test
+    void normalize_shouldReturnCanonicalTextAsIs() {
+        String tags = "cats, dogs";
+        assertSame(tags, TagCodec.normalize(tags));
+    }
+
+    @Test
+    void join_shouldBeInverseOfParse() {
+        String tags = TagCodec.join(List.of("cats", "dogs", "birds"));
+        assertEquals("cats, dogs, birds", tags);
+        assertEquals(List.of("cats", "dogs", "birds"), List.copyOf(TagCodec.parse(tags)));
+        assertEquals("", TagCodec.join(List.of()));
+    }
+}
@@ -2,6 +2,10 @@ package org.javaprojects.myblogsite.repositories;
 
 import org.javaprojects.myblogsite.dto.CommentDto;
 import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.ImageVariant;
+import org.javaprojects.myblogsite.dto.PageCursor;
+import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.dto.PostTags;
 import org.javaprojects.myblogsite.models.Post;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -10,6 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Sort;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,9 +22,12 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -36,6 +44,15 @@ class PostRepositoryTest {
     public static final String TEST_DESCRIPTION = "Short description ";
     public static final String TEST_IMAGE = "/images/default_image.jpg";
     public static final String TEST_CONTENT = "This is content for ";
+    // the feed query with per-row correlated subqueries that was used before statistics were loaded by page ids
+    private static final String LEGACY_FEED_SQL = """
+            SELECT p.id, p.title, p.description, p.image_url, p.created_at, \
+              (SELECT count(*) FROM comments WHERE post_id = p.id) AS commentsCount, \
+              (SELECT likes_count FROM likes WHERE post_id = p.id) AS likesCount, \
+              (SELECT GROUP_CONCAT(t.name SEPARATOR ',') FROM post_tag AS pt JOIN tag AS t ON t.id = pt.tag_id \
+               WHERE pt.post_id = p.id) AS tags \
+            FROM posts AS p \
+            ORDER BY created_at DESC""";
     @Autowired
     private PostRepository postRepository;
 
@@ -49,7 +66,8 @@ class PostRepositoryTest {
     void setUp() {
         deleteFromTables(jdbcTemplate, "posts");
         deleteFromTables(jdbcTemplate, "comments");
-        deleteFromTables(jdbcTemplate, "tags");
+        deleteFromTables(jdbcTemplate, "post_tag");
+        deleteFromTables(jdbcTemplate, "tag");
         deleteFromTables(jdbcTemplate, "likes");
     }
 
@@ -74,6 +92,90 @@ class PostRepositoryTest {
         );
     }
 
+    @Test
+    void findPostDetailsById_shouldMatchSeparateQueries() {
+        // Given
+        long postId = postRepository.save(getExpectedPost(1L));
+        postRepository.insertTags(Set.of("tag2", "tag1", "tag3"), postId);
+        IntStream.range(0, 3).forEach(i -> postRepository.addLike(postId));
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 3; i++) {
+            CommentDto comment = new CommentDto();
+            comment.setPostId(postId);
+            comment.setContent("Comment " + i);
+            comment.setCreatedAt(now.minusMinutes(i));
+            postRepository.addComment(comment);
+        }
+        // When
+        PostDto details = postRepository.findPostDetailsById(postId, 10).orElseThrow();
+        // Then
+        Post post = postRepository.findPostById(postId).orElseThrow();
+        List<CommentDto> comments = postRepository.findCommentsByPostId(postId);
+        assertAll(
+                () -> assertEquals(post.id(), details.getId()),
+                () -> assertEquals(post.title(), details.getTitle()),
+                () -> assertEquals(post.description(), details.getDescription()),
+                () -> assertEquals(post.content(), details.getContent()),
+                () -> assertEquals(post.imageUrl(), details.getImageUrl()),
+                () -> assertEquals(postRepository.findTagsByPostId(postId), Set.of(details.getTags().split(", "))),
+                () -> assertEquals("tag1, tag2, tag3", details.getTags()),
+                () -> assertEquals(postRepository.getLikesNumberByPostId(postId), details.getLikesCount()),
+                () -> assertEquals(3, details.getCommentsCount()),
+                () -> assertEquals(comments.stream().map(CommentDto::getId).toList(),
+                        details.getComments().stream().map(CommentDto::getId).toList()),
+                () -> assertEquals(comments.stream().map(CommentDto::getContent).toList(),
+                        details.getComments().stream().map(CommentDto::getContent).toList())
+        );
+    }
+
+    @Test
+    void findPostDetailsById_unknownPost_shouldReturnEmpty() {
+        assertTrue(postRepository.findPostDetailsById(-1L, 10).isEmpty());
+    }
+
+    @Test
+    void findPostDetailsById_shouldLoadOnlyTheOldestComments() {
+        // Given
+        long postId = postRepository.save(getExpectedPost(1L));
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 5; i++) {
+            CommentDto comment = new CommentDto();
+            comment.setPostId(postId);
+            comment.setContent("Comment " + i);
+            comment.setCreatedAt(now.plusMinutes(i));
+            postRepository.addComment(comment);
+        }
+        // When
+        PostDto details = postRepository.findPostDetailsById(postId, 2).orElseThrow();
+        // Then
+        assertEquals(List.of("Comment 0", "Comment 1"),
+                details.getComments().stream().map(CommentDto::getContent).toList());
+        assertEquals(5, details.getCommentsCount());
+    }
+
+    @Test
+    void findCommentsPage_shouldWalkAllCommentsInBothOrders() {
+        // Given
+        long postId = postRepository.save(getExpectedPost(1L));
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        for (int i = 0; i < 7; i++) {
+            CommentDto comment = new CommentDto();
+            comment.setPostId(postId);
+            comment.setContent("Comment " + i);
+            // pairs of comments have the same creation time, the id breaks the ties
+            comment.setCreatedAt(now.plusMinutes(i / 2));
+            postRepository.addComment(comment);
+        }
+        List<Long> ascending = jdbcTemplate.queryForList(
+                "SELECT id FROM comments WHERE post_id = ? ORDER BY created_at, id", Long.class, postId);
+        // When
+        List<Long> oldestFirst = walkComments(postId, Sort.Direction.ASC, 3);
+        List<Long> newestFirst = walkComments(postId, Sort.Direction.DESC, 3);
+        // Then
+        assertEquals(ascending, oldestFirst);
+        assertEquals(ascending.reversed(), newestFirst);
+    }
+
     @Test
     void findAllPosts() throws InterruptedException {
         // Given
@@ -113,6 +215,80 @@ class PostRepositoryTest {
         }
     }
 
+    @Test
+    void findAllPosts_shouldMatchLegacyCorrelatedSubqueryFeed() {
+        // Given
+        for (int i = 1; i <= 12; i++) {
+            long postId = postRepository.save(getExpectedPost(i));
+            for (int k = 0; k < i % 4; k++) {
+                postRepository.addComment(getComment(postId));
+            }
+            for (int k = 0; k < i % 3; k++) {
+                postRepository.addLike(postId);
+            }
+            if (i % 5 != 0) {
+                postRepository.insertTags(Set.of("even" + i % 2, "third" + i % 3), postId);
+            }
+        }
+        List<String> expected = jdbcTemplate.query(LEGACY_FEED_SQL, (rs, rowNum) -> feedRowKey(
+                rs.getLong("id"),
+                rs.getString("title"),
+                rs.getLong("commentsCount"),
+                rs.getLong("likesCount"),
+                rs.getString("tags") == null ? Set.of() : Set.of(rs.getString("tags").split(","))));
+        // When
+        List<String> actual = postRepository.findAllPosts(0, 100).stream()
+                .map(post -> feedRowKey(
+                        post.getId(),
+                        post.getTitle(),
+                        post.getCommentsCount(),
+                        post.getLikesCount(),
+                        post.getTags().isEmpty() ? Set.of() : Set.of(post.getTags().split(", "))))
+                .toList();
+        // Then
+        // posts with the same creation time may come in any order, so compare them as sets
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+    }
+
+    @Test
+    void findPostsPage_walkingForwardAndBackward_shouldReturnPostsInFeedOrder() {
+        // Given
+        IntStream.rangeClosed(1, 25).forEach(i -> postRepository.save(getExpectedPost(i)));
+        List<Long> expectedIds = jdbcTemplate.queryForList(
+                "SELECT id FROM posts ORDER BY created_at DESC, id DESC", Long.class);
+        // When
+        List<FeedPostDto> page1 = postRepository.findPostsPage(null, 10);
+        List<FeedPostDto> page2 = postRepository.findPostsPage(nextCursor(page1), 10);
+        List<FeedPostDto> page3 = postRepository.findPostsPage(nextCursor(page2), 10);
+        List<FeedPostDto> backToPage2 = postRepository.findPostsPage(previousCursor(page3), 10);
+        // Then
+        assertEquals(expectedIds.subList(0, 10), page1.stream().map(FeedPostDto::getId).toList());
+        assertEquals(expectedIds.subList(10, 20), page2.stream().map(FeedPostDto::getId).toList());
+        assertEquals(expectedIds.subList(20, 25), page3.stream().map(FeedPostDto::getId).toList());
+        assertEquals(expectedIds.subList(10, 20), backToPage2.stream().map(FeedPostDto::getId).toList());
+    }
+
+    @Test
+    void findPostsPageByTag() {
+        // Given
+        List<Long> taggedIds = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            long postId = postRepository.save(getExpectedPost(i));
+            postRepository.insertTags(Set.of(i % 2 == 0 ? "even" : "odd"), postId);
+            if (i % 2 == 0) {
+                taggedIds.add(postId);
+            }
+        }
+        // When
+        List<FeedPostDto> page1 = postRepository.findPostsPageByTag("even", null, 2);
+        List<FeedPostDto> page2 = postRepository.findPostsPageByTag("even", nextCursor(page1), 2);
+        // Then
+        assertEquals(List.of(taggedIds.get(2), taggedIds.get(1)), page1.stream().map(FeedPostDto::getId).toList());
+        assertEquals(List.of(taggedIds.get(0)), page2.stream().map(FeedPostDto::getId).toList());
+        assertTrue(page2.stream().allMatch(post -> "even".equals(post.getTags())));
+    }
+
     @Test
     void update() {
         // Given
@@ -135,6 +311,73 @@ class PostRepositoryTest {
         );
     }
 
+    @Test
+    void forEachPost_shouldStreamOnlyPostsChangedAfterTime() {
+        // Given
+        long firstId = postRepository.save(getExpectedPost(1L));
+        long secondId = postRepository.save(getExpectedPost(2L));
+        LocalDateTime checkpoint = LocalDateTime.of(2025, 6, 1, 0, 0);
+        jdbcTemplate.update("UPDATE posts SET updated_at = ?", checkpoint.minusDays(1));
+        // When
+        postRepository.update(new Post(secondId, TEST_TITLE + 3, null, null, null, null));
+        // Then
+        List<Post> changed = new ArrayList<>();
+        postRepository.forEachPost(checkpoint, changed::add);
+        assertEquals(List.of(secondId), changed.stream().map(Post::id).toList());
+        assertEquals(TEST_TITLE + 3, changed.get(0).title());
+        List<Long> ids = new ArrayList<>();
+        postRepository.forEachPostId(ids::add);
+        assertEquals(List.of(firstId, secondId), ids);
+    }
+
+    @Test
+    void forEachPostTags_shouldStreamTagsOfPostsInFeedOrder() {
+        // Given
+        LocalDateTime createdAt = LocalDateTime.of(2025, 6, 1, 0, 0);
+        long newerId = postRepository.save(getExpectedPost(0L, 1, createdAt.plusMinutes(1)));
+        long olderId = postRepository.save(getExpectedPost(0L, 2, createdAt));
+        postRepository.insertTags(Set.of("tag1", "tag2"), newerId);
+        // When
+        List<PostTags> posts = new ArrayList<>();
+        postRepository.forEachPostTags(posts::add);
+        // Then
+        assertEquals(List.of(
+                new PostTags(olderId, createdAt, Set.of()),
+                new PostTags(newerId, createdAt.plusMinutes(1), Set.of("tag1", "tag2"))), posts);
+    }
+
+    @Test
+    void imageVariants_shouldBeFoundByImageUrlInOrderOfWidth() {
+        // Given
+        ImageVariant small = new ImageVariant(160, "image/jpeg", "/upload/a-160w.jpg");
+        ImageVariant large = new ImageVariant(640, "image/jpeg", "/upload/a-640w.jpg");
+        postRepository.saveImageVariants("/upload/a.jpg", List.of(large, small));
+        postRepository.saveImageVariants("/upload/b.jpg", List.of(new ImageVariant(160, "image/png", "/upload/b-160w.png")));
+        // When
+        Map<String, List<ImageVariant>> variants = postRepository.findImageVariants(List.of("/upload/a.jpg", "/upload/c.jpg"));
+        postRepository.deleteImageVariants("/upload/b.jpg");
+        // Then
+        assertEquals(Map.of("/upload/a.jpg", List.of(small, large)), variants);
+        assertEquals(Map.of(), postRepository.findImageVariants(List.of("/upload/b.jpg")));
+        deleteFromTables(jdbcTemplate, "image_variants");
+    }
+
+    @Test
+    void deferredImageReleases_shouldBeFoundWhenOlderThanTime() {
+        // Given
+        LocalDateTime releasedAt = LocalDateTime.of(2025, 6, 1, 0, 0);
+        postRepository.deferImageRelease("/upload/a.jpg", releasedAt);
+        postRepository.deferImageRelease("/upload/b.jpg", releasedAt.plusMinutes(1));
+        postRepository.deferImageRelease("/upload/a.jpg", releasedAt.plusMinutes(5));
+        // When
+        List<String> deferred = postRepository.findDeferredImageReleases(releasedAt.plusMinutes(5));
+        postRepository.deleteDeferredImageRelease("/upload/b.jpg");
+        // Then
+        assertEquals(List.of("/upload/b.jpg"), deferred);
+        assertEquals(List.of("/upload/a.jpg"), postRepository.findDeferredImageReleases(releasedAt.plusMinutes(10)));
+        deleteFromTables(jdbcTemplate, "deferred_image_releases");
+    }
+
     @Test
     void delete() {
         deleteFromTables(jdbcTemplate, "posts");
@@ -153,15 +396,15 @@ class PostRepositoryTest {
     @Test
     void addComment() {
         // Given
-        postRepository.save(getExpectedPost(1L));
-        CommentDto comment = getComment(1);
+        long postId = postRepository.save(getExpectedPost(1L));
+        CommentDto comment = getComment(postId);
         // When
         postRepository.addComment(comment);
         // Then
-        List<CommentDto> comments = postRepository.findCommentsByPostId(1L);
+        List<CommentDto> comments = postRepository.findCommentsByPostId(postId);
         assertEquals(1, comments.size());
-        assertEquals(1L, comments.getFirst().getPostId());
-        assertEquals("This is comment content for post id = " + 1, comments.getFirst().getContent());
+        assertEquals(postId, comments.getFirst().getPostId());
+        assertEquals("This is comment content for post id = " + postId, comments.getFirst().getContent());
     }
 
     @Test
@@ -197,6 +440,84 @@ class PostRepositoryTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    void insertTags_withManyLongTags_shouldKeepAllTagsInFeed() {
+        // Given
+        long postId = postRepository.save(getExpectedPost(1L));
+        Set<String> tags = IntStream.range(0, 30)
+                .mapToObj(i -> String.format("%03d", i) + "x".repeat(253))
+                .collect(Collectors.toCollection(TreeSet::new));
+        // When
+        postRepository.insertTags(tags, postId);
+        postRepository.updateTags(postId, Set.of("y".repeat(256)), Set.of());
+        // Then
+        String feedTags = postRepository.findPostsByIds(List.of(postId)).getFirst().getTags();
+        assertEquals(31, feedTags.split(", ").length);
+    }
+
+    @Test
+    void insertTags_shouldStoreEveryTagNameOnce() {
+        // Given
+        long postId1 = postRepository.save(getExpectedPost(1L));
+        long postId2 = postRepository.save(getExpectedPost(2L));
+        // When
+        postRepository.insertTags(Set.of("tag1", "tag2"), postId1);
+        postRepository.insertTags(Set.of("tag2", "tag3"), postId2);
+        postRepository.insertTags(Set.of("tag2"), postId2);
+        // Then
+        assertAll(
+                () -> assertEquals(3, countRowsInTable(jdbcTemplate, "tag")),
+                () -> assertEquals(4, countRowsInTable(jdbcTemplate, "post_tag")),
+                () -> assertEquals(Set.of("tag2", "tag3"), postRepository.findTagsByPostId(postId2)),
+                () -> assertEquals(2, postRepository.findTagIdsByPostId(postId1).size()),
+                () -> assertTrue(postRepository.findPostsByTag("unknown", 0, 10).isEmpty()),
+                () -> assertTrue(postRepository.findPostsPageByTag("unknown", null, 10).isEmpty())
+        );
+    }
+
+    @Test
+    void saveAll_shouldReturnIdsInOrderAndLinkTagsOfAllPosts() {
+        // Given
+        long existingId = postRepository.save(getExpectedPost(1L));
+        postRepository.insertTags(Set.of("tag1"), existingId);
+        List<Post> posts = IntStream.rangeClosed(2, 4).mapToObj(i -> getExpectedPost(i)).toList();
+        // When
+        List<Long> ids = postRepository.saveAll(posts);
+        postRepository.insertTags(Map.of(
+                ids.get(0), Set.of("tag1", "tag2"),
+                ids.get(2), Set.of("tag3")));
+        // Then
+        assertAll(
+                () -> assertEquals(3, ids.size()),
+                () -> assertEquals(TEST_TITLE + 2, postRepository.findPostById(ids.get(0)).orElseThrow().title()),
+                () -> assertEquals(TEST_TITLE + 4, postRepository.findPostById(ids.get(2)).orElseThrow().title()),
+                () -> assertEquals(3, countRowsInTable(jdbcTemplate, "tag")),
+                () -> assertEquals(Set.of("tag1", "tag2"), postRepository.findTagsByPostId(ids.get(0))),
+                () -> assertEquals(Set.of(), postRepository.findTagsByPostId(ids.get(1))),
+                () -> assertEquals(4, countRowsInTable(jdbcTemplate, "post_stats")),
+                () -> assertEquals("tag1, tag2", jdbcTemplate.queryForObject(
+                        "SELECT tags FROM post_stats WHERE post_id = ?", String.class, ids.get(0))),
+                () -> assertEquals(2, postRepository.findPostsByTag("tag1", 0, 10).size())
+        );
+    }
+
+    @Test
+    void updateTags_shouldTouchOnlyChangedTags() {
+        // Given
+        long postId = postRepository.save(getExpectedPost(1L));
+        postRepository.insertTags(Set.of("tag1", "tag2"), postId);
+        // When
+        postRepository.updateTags(postId, Set.of("tag3"), Set.of("tag1", "unknown"));
+        // Then
+        assertAll(
+                () -> assertEquals(Set.of("tag2", "tag3"), postRepository.findTagsByPostId(postId)),
+                () -> assertEquals(2, countRowsInTable(jdbcTemplate, "post_tag")),
+                () -> assertEquals(3, countRowsInTable(jdbcTemplate, "tag")),
+                () -> assertEquals("tag2, tag3", jdbcTemplate.queryForObject(
+                        "SELECT tags FROM post_stats WHERE post_id = ?", String.class, postId))
+        );
+    }
+
     @Test
     void deleteTagsForPostId() {
         // Given
@@ -229,6 +550,19 @@ class PostRepositoryTest {
     }
 
 
+    @Test
+    void getTagPostCounts() {
+        // Given
+        long postId1 = postRepository.save(getExpectedPost(1L));
+        long postId2 = postRepository.save(getExpectedPost(2L));
+        postRepository.insertTags(Set.of("tag1", "tag2"), postId1);
+        postRepository.insertTags(Set.of("tag1"), postId2);
+        // When
+        Map<String, Long> result = postRepository.getTagPostCounts();
+        // Then
+        assertEquals(Map.of("tag1", 2L, "tag2", 1L), result);
+    }
+
     @Test
     void findPostsByTag() {
         // Given
@@ -256,6 +590,68 @@ class PostRepositoryTest {
 
     }
 
+    @Test
+    void postStats_shouldBeMaintainedOnWrite() {
+        // Given
+        long postId = postRepository.save(getExpectedPost(1L));
+        long commentId = postRepository.addComment(getComment(postId));
+        postRepository.addComment(getComment(postId));
+        postRepository.addLike(postId);
+        postRepository.insertTags(Set.of("tag2", "tag1"), postId);
+        // When
+        postRepository.deleteComment(commentId);
+        // Then
+        FeedPostDto post = postRepository.findAllPosts(0, 10).getFirst();
+        assertAll(
+                () -> assertEquals(1, postRepository.getCommentsNumberByPost(postId)),
+                () -> assertEquals(1, postRepository.getLikesNumberByPostId(postId)),
+                () -> assertEquals(1, post.getCommentsCount()),
+                () -> assertEquals(1, post.getLikesCount()),
+                () -> assertEquals("tag1, tag2", post.getTags())
+        );
+        // When
+        postRepository.deleteTagsForPostId(postId);
+        // Then
+        assertEquals("", postRepository.findAllPosts(0, 10).getFirst().getTags());
+    }
+
+    @Test
+    void addLikes_shouldAddAccumulatedLikesOfSeveralPosts() {
+        // Given
+        long postId1 = postRepository.save(getExpectedPost(1L));
+        long postId2 = postRepository.save(getExpectedPost(2L));
+        postRepository.addLike(postId1);
+        // When
+        postRepository.addLikes(Map.of(postId1, 5L, postId2, 3L, -1L, 2L));
+        // Then
+        assertEquals(6, postRepository.getLikesNumberByPostId(postId1));
+        assertEquals(3, postRepository.getLikesNumberByPostId(postId2));
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "SELECT likes_count FROM likes WHERE post_id = ?", Long.class, postId2));
+        assertEquals(2, countRowsInTable(jdbcTemplate, "likes"));
+    }
+
+    @Test
+    void rebuildPostStats_shouldRecomputeStatisticsFromBaseTables() {
+        // Given
+        long postId = postRepository.save(getExpectedPost(1L));
+        jdbcTemplate.update("INSERT INTO comments (content, post_id, created_at) VALUES ('c', ?, ?)",
+                postId, LocalDateTime.now());
+        jdbcTemplate.update("INSERT INTO likes (post_id, likes_count) VALUES (?, 7)", postId);
+        jdbcTemplate.update("INSERT INTO tag (name) VALUES ('tag1')");
+        jdbcTemplate.update("INSERT INTO post_tag (post_id, tag_id) SELECT ?, id FROM tag WHERE name = 'tag1'", postId);
+        // When
+        int rows = postRepository.rebuildPostStats();
+        // Then
+        FeedPostDto post = postRepository.findAllPosts(0, 10).getFirst();
+        assertAll(
+                () -> assertEquals(1, rows),
+                () -> assertEquals(1, post.getCommentsCount()),
+                () -> assertEquals(7, post.getLikesCount()),
+                () -> assertEquals("tag1", post.getTags())
+        );
+    }
+
     @Test
     void getTotalPostsCount() {
         // Given
@@ -288,6 +684,35 @@ class PostRepositoryTest {
         return comment;
     }
 
+    private List<Long> walkComments(long postId, Sort.Direction order, int pageSize) {
+        List<Long> ids = new ArrayList<>();
+        PageCursor cursor = null;
+        List<CommentDto> page;
+        do {
+            page = postRepository.findCommentsPage(postId, cursor, order, pageSize);
+            page.forEach(comment -> ids.add(comment.getId()));
+            if (!page.isEmpty()) {
+                CommentDto last = page.getLast();
+                cursor = PageCursor.next(last.getCreatedAt(), last.getId());
+            }
+        } while (page.size() == pageSize);
+        return ids;
+    }
+
+    private static String feedRowKey(long id, String title, long commentsCount, long likesCount, Set<String> tags) {
+        return id + "|" + title + "|" + commentsCount + "|" + likesCount + "|" + new TreeSet<>(tags);
+    }
+
+    private static PageCursor nextCursor(List<FeedPostDto> page) {
+        FeedPostDto last = page.get(page.size() - 1);
+        return PageCursor.next(last.getCreatedAt(), last.getId());
+    }
+
+    private static PageCursor previousCursor(List<FeedPostDto> page) {
+        FeedPostDto first = page.get(0);
+        return PageCursor.previous(first.getCreatedAt(), first.getId());
+    }
+
     private static CommentDto getComment(long postId) {
         return getComment(-1, postId, "This is comment content for post id = " + postId);
     }
@@ -0,0 +1,138 @@
+package org.javaprojects.myblogsite.services;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.javaprojects.myblogsite.configuration.ImportProperties;
+import org.javaprojects.myblogsite.dto.ImportResult;
+import org.javaprojects.myblogsite.models.Post;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class BulkImportServiceTest {
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final PostCountsService postCountsService = mock(PostCountsService.class);
+    private final StorageService storageService = mock(StorageService.class);
+    private final BulkImportService bulkImportService = new BulkImportService(postRepository,
+            postCountsService,
+            mock(SearchIndexService.class),
+            mock(TagFilterService.class),
+            storageService,
+            mock(PlatformTransactionManager.class),
+            JsonMapper.builder().findAndAddModules().build(),
+            new ImportProperties(true, 2));
+
+    @Test
+    void importPosts_shouldWriteRecordsInChunks() {
+        AtomicLong ids = new AtomicLong();
+        when(postRepository.saveAll(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0))
+                .stream().map(post -> ids.incrementAndGet()).toList());
+        when(storageService.getDefaultFilePath()).thenReturn("/images/default_image.jpg");
+
+        ImportResult result = bulkImportService.importPosts(archive("""
+                {"title":"T1","description":"D1","content":"C1","tags":"cats, dogs","createdAt":"2025-01-01T10:00:00"}
+                {"title":"T2","description":"D2","content":"C2","imageUrl":"/upload/2.jpg"}
+                {"title":"T3","description":"D3","content":"C3","tags":"cats"}
+                """));
+
+        assertEquals(3, result.imported());
+        assertEquals(2, result.chunks());
+        ArgumentCaptor<List<Post>> chunks = ArgumentCaptor.captor();
+        verify(postRepository, times(2)).saveAll(chunks.capture());
+        List<Post> firstChunk = chunks.getAllValues().getFirst();
+        assertEquals(new Post(null, "T1", "D1", "C1", "/images/default_image.jpg", LocalDateTime.of(2025, 1, 1, 10, 0)),
+                firstChunk.get(0));
+        // a post without the creation time is stamped before it is saved
+        Post stamped = firstChunk.get(1);
+        assertNotNull(stamped.createdAt());
+        assertEquals(new Post(null, "T2", "D2", "C2", "/upload/2.jpg", stamped.createdAt()), stamped);
+        verify(postRepository).insertTags(Map.of(1L, Set.of("cats", "dogs")));
+        verify(postRepository).insertTags(Map.of(3L, Set.of("cats")));
+        verify(postCountsService).postCreated(Set.of("cats", "dogs"));
+        verify(postCountsService).postCreated(Set.of());
+        verify(postCountsService).postCreated(Set.of("cats"));
+    }
+
+    @Test
+    void importPosts_shouldStopOnInvalidRecordAndKeepCommittedChunks() {
+        when(postRepository.saveAll(anyList())).thenReturn(List.of(1L, 2L));
+
+        BulkImportException exception = assertThrows(BulkImportException.class,
+                () -> bulkImportService.importPosts(archive("""
+                        {"title":"T1","description":"D1","content":"C1"}
+                        {"title":"T2","description":"D2","content":"C2"}
+                        {"title":"T3","description":"D3"}
+                        {"title":"T4","description":"D4","content":"C4"}
+                        """)));
+
+        assertEquals(2, exception.getImported());
+        verify(postRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void importPosts_shouldRejectValuesLongerThanColumns() {
+        when(postRepository.saveAll(anyList())).thenReturn(List.of(1L, 2L));
+        String longImageUrl = "{\"title\":\"T3\",\"description\":\"D3\",\"content\":\"C3\",\"imageUrl\":\"/upload/"
+                + "x".repeat(256) + ".jpg\"}";
+        String longTag = "{\"title\":\"T3\",\"description\":\"D3\",\"content\":\"C3\",\"tags\":\"cats, "
+                + "x".repeat(257) + "\"}";
+        String committedChunk = """
+                {"title":"T1","description":"D1","content":"C1"}
+                {"title":"T2","description":"D2","content":"C2"}
+                """;
+
+        for (String invalid : List.of(longImageUrl, longTag)) {
+            BulkImportException exception = assertThrows(BulkImportException.class,
+                    () -> bulkImportService.importPosts(archive(committedChunk + invalid)));
+
+            assertEquals(2, exception.getImported());
+            assertTrue(exception.getMessage().startsWith("Record 3:"), exception.getMessage());
+        }
+        verify(postRepository, times(2)).saveAll(anyList());
+    }
+
+    @Test
+    void importPosts_whenChunkCanNotBeWritten_shouldReportImportedPosts() {
+        when(postRepository.saveAll(anyList())).thenReturn(List.of(1L, 2L))
+                .thenThrow(new DataIntegrityViolationException("value too long"));
+
+        BulkImportException exception = assertThrows(BulkImportException.class,
+                () -> bulkImportService.importPosts(archive("""
+                        {"title":"T1","description":"D1","content":"C1"}
+                        {"title":"T2","description":"D2","content":"C2"}
+                        {"title":"T3","description":"D3","content":"C3"}
+                        """)));
+
+        assertEquals(2, exception.getImported());
+    }
+
+    @Test
+    void importPosts_shouldReportMalformedRecord() {
+        BulkImportException exception = assertThrows(BulkImportException.class,
+                () -> bulkImportService.importPosts(archive("{\"title\":\"T1\",")));
+
+        assertEquals(0, exception.getImported());
+        verifyNoInteractions(postRepository);
+    }
+
+    private static InputStream archive(String lines) {
+        return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+    }
+}
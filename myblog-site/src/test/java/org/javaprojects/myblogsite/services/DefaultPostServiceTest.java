@@ -0,0 +1,181 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.PostProperties;
+import org.javaprojects.myblogsite.dto.PostDto;
+import org.javaprojects.myblogsite.models.Post;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DefaultPostServiceTest {
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final PostCountsService postCountsService = mock(PostCountsService.class);
+    private final StorageService storageService = mock(StorageService.class);
+    private final ImageVariantService imageVariantService = mock(ImageVariantService.class);
+    private final ImageReleaseService imageReleaseService = mock(ImageReleaseService.class);
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(DefaultPostService.POSTS_CACHE);
+    private final DefaultPostService postService = new DefaultPostService(postRepository,
+            storageService,
+            mock(LikeCounterService.class),
+            mock(TagIndexService.class),
+            postCountsService,
+            mock(SearchIndexService.class),
+            mock(TagFilterService.class),
+            imageVariantService,
+            imageReleaseService,
+            cacheManager,
+            new PostProperties(PostProperties.DetailsLoading.FAN_OUT, 20, 4, Duration.ofSeconds(2)),
+            Runnable::run);
+
+    @Test
+    void updatePost_shouldApplyOnlyChangedTags() {
+        when(postRepository.findTagsByPostId(1L)).thenReturn(Set.of("cats", "dogs"));
+
+        postService.updatePost(postDto("dogs, birds"));
+
+        verify(postRepository, times(1)).update(any(Post.class));
+        verify(postRepository).updateTags(1L, Set.of("birds"), Set.of("cats"));
+        verify(postRepository, never()).deleteTagsForPostId(anyLong());
+        verify(postCountsService).tagsChanged(Set.of("cats"), Set.of("birds"));
+    }
+
+    @Test
+    void updatePost_shouldEvictCachedPageAfterCommit() {
+        when(postRepository.findTagsByPostId(1L)).thenReturn(Set.of());
+        Cache cache = cacheManager.getCache(DefaultPostService.POSTS_CACHE);
+        cache.put(1L, postDto(""));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            postService.updatePost(postDto(""));
+
+            // a read before the commit sees the old post, it may cache it again
+            assertNotNull(cache.get(1L));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertNull(cache.get(1L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void updatePost_withSameTags_shouldNotWriteTags() {
+        when(postRepository.findTagsByPostId(1L)).thenReturn(Set.of("cats", "dogs"));
+
+        postService.updatePost(postDto("dogs | cats"));
+
+        verify(postRepository, times(1)).update(any(Post.class));
+        verify(postRepository, never()).updateTags(anyLong(), any(), any());
+        verifyNoInteractions(postCountsService);
+    }
+
+    @Test
+    void updatePost_withNewImage_shouldReleaseOldImage() {
+        when(postRepository.findTagsByPostId(1L)).thenReturn(Set.of());
+        when(postRepository.findImageUrl(1L)).thenReturn(Optional.of("/upload/ab/cd/old.jpg"));
+        when(storageService.handleFileUpload(any())).thenReturn("/upload/ef/01/new.jpg");
+        PostDto postDto = postDto("");
+        postDto.setImage(new MockMultipartFile("image", "new.jpg", "image/jpeg", new byte[]{1, 2, 3}));
+
+        postService.updatePost(postDto);
+
+        verify(imageVariantService).imageUploaded("/upload/ef/01/new.jpg");
+        verify(imageReleaseService).release("/upload/ab/cd/old.jpg");
+    }
+
+    @Test
+    void createPost_withUploadedImage_shouldNotStoreImageAgain() {
+        when(storageService.isStoredFile("/upload/ef/01/uploaded.jpg")).thenReturn(true);
+        PostDto postDto = postDto("");
+        postDto.setId(null);
+        postDto.setUploadedImageUrl("/upload/ef/01/uploaded.jpg");
+
+        postService.createPost(postDto);
+
+        verify(storageService, never()).handleFileUpload(any());
+        verify(postRepository).save(argThat(post -> "/upload/ef/01/uploaded.jpg".equals(post.imageUrl())));
+        verify(imageVariantService).imageUploaded("/upload/ef/01/uploaded.jpg");
+    }
+
+    @Test
+    void updatePost_withUnknownUploadedImage_shouldBeRejected() {
+        PostDto postDto = postDto("");
+        postDto.setUploadedImageUrl("/static/images/../../application.yml");
+
+        Assertions.assertThrows(InvalidImageException.class, () -> postService.updatePost(postDto));
+        verify(postRepository, never()).update(any());
+    }
+
+    @Test
+    void deletePost_shouldReleaseImage() {
+        when(postRepository.findImageUrl(1L)).thenReturn(Optional.of("/upload/ab/cd/own.jpg"));
+
+        postService.deletePost(1L);
+
+        verify(postRepository).delete(1L);
+        verify(imageReleaseService).release("/upload/ab/cd/own.jpg");
+    }
+
+    @Test
+    void createPost_whenTagsCanNotBeSaved_shouldNotCountPost() {
+        when(storageService.handleFileUpload(any())).thenReturn("/upload/ef/01/new.jpg");
+        when(postRepository.save(any())).thenReturn(1L);
+        doThrow(new DataIntegrityViolationException("value too long"))
+                .when(postRepository).insertTags(anySet(), eq(1L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            Assertions.assertThrows(DataIntegrityViolationException.class,
+                    () -> postService.createPost(postDto("cats")));
+
+            assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+            verifyNoInteractions(postCountsService);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void deletePost_shouldReleaseImageAfterCommit() {
+        when(postRepository.findTagsByPostId(1L)).thenReturn(Set.of("cats"));
+        when(postRepository.findImageUrl(1L)).thenReturn(Optional.of("/upload/ab/cd/own.jpg"));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            postService.deletePost(1L);
+
+            verify(postRepository).delete(1L);
+            // the counts service defers the change to the commit by itself
+            verify(postCountsService).postDeleted(Set.of("cats"));
+            verifyNoInteractions(imageReleaseService);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(imageReleaseService).release("/upload/ab/cd/own.jpg");
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static PostDto postDto(String tags) {
+        PostDto postDto = new PostDto(1L, "title", "description", "content", null);
+        postDto.setImage(new MockMultipartFile("image", new byte[0]));
+        postDto.setTags(tags);
+        return postDto;
+    }
+}
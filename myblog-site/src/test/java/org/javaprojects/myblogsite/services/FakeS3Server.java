@@ -0,0 +1,202 @@
+package org.javaprojects.myblogsite.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in of an S3-compatible object store with one bucket, it implements the operations
+ * {@link S3Client} uses, like MinIO would answer them, and records the requests. Signatures are not verified,
+ * only their presence.
+ */
+class FakeS3Server implements AutoCloseable {
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+    final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    final Map<String, SortedMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    final List<String> requests = new CopyOnWriteArrayList<>();
+    private final String bucket;
+    private final HttpServer server;
+
+    FakeS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            boolean copy = exchange.getRequestHeaders().containsKey("x-amz-copy-source");
+            requests.add(method + (copy ? " copy " : " ") + path
+                    + (query.isEmpty() ? "" : " " + new TreeMap<>(query).keySet()));
+            if (!path.startsWith("/" + bucket + "/")) {
+                send(exchange, 404, "<Error><Code>NoSuchBucket</Code></Error>");
+                return;
+            }
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (!query.containsKey("X-Amz-Signature")
+                    && (authorization == null || !authorization.startsWith("AWS4-HMAC-SHA256 Credential="))) {
+                send(exchange, 403, "<Error><Code>AccessDenied</Code></Error>");
+                return;
+            }
+            String key = path.substring(bucket.length() + 2);
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            switch (method) {
+                case "GET", "HEAD" -> read(exchange, key, "HEAD".equals(method));
+                case "PUT" -> write(exchange, key, query, body);
+                case "POST" -> upload(exchange, key, query, body);
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    send(exchange, 204, "");
+                }
+                default -> send(exchange, 405, "");
+            }
+        }
+    }
+
+    private void read(HttpExchange exchange, String key, boolean head) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            send(exchange, 404, head ? "" : "<Error><Code>NoSuchKey</Code></Error>");
+            return;
+        }
+        object.headers().forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+        exchange.getResponseHeaders().set("Last-Modified",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified().atOffset(ZoneOffset.UTC)));
+        if (head) {
+            exchange.sendResponseHeaders(200, -1);
+        } else {
+            exchange.sendResponseHeaders(200, object.content().length);
+            exchange.getResponseBody().write(object.content());
+        }
+    }
+
+    private void write(HttpExchange exchange, String key, Map<String, String> query, byte[] body) throws IOException {
+        if (query.containsKey("uploadId")) {
+            SortedMap<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+            if (parts == null) {
+                send(exchange, 404, "<Error><Code>NoSuchUpload</Code></Error>");
+                return;
+            }
+            int partNumber = Integer.parseInt(query.get("partNumber"));
+            parts.put(partNumber, body);
+            exchange.getResponseHeaders().set("ETag", "\"part-" + partNumber + "\"");
+            send(exchange, 200, "");
+            return;
+        }
+        String copySource = exchange.getRequestHeaders().getFirst("x-amz-copy-source");
+        if (copySource != null) {
+            StoredObject source = objects.get(URLDecoder.decode(copySource, StandardCharsets.UTF_8)
+                    .substring(bucket.length() + 2));
+            if (source == null) {
+                send(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>");
+                return;
+            }
+            objects.put(key, new StoredObject(source.content(), headers(exchange), Instant.now()));
+            send(exchange, 200, "<CopyObjectResult></CopyObjectResult>");
+            return;
+        }
+        objects.put(key, new StoredObject(body, headers(exchange), Instant.now()));
+        send(exchange, 200, "");
+    }
+
+    private void upload(HttpExchange exchange, String key, Map<String, String> query, byte[] body)
+            throws IOException {
+        if (query.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            uploads.put(uploadId, new TreeMap<>());
+            send(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+                    + "</UploadId></InitiateMultipartUploadResult>");
+            return;
+        }
+        SortedMap<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+        Matcher partNumbers = PART_NUMBER.matcher(new String(body, StandardCharsets.UTF_8));
+        int count = 0;
+        while (partNumbers.find()) {
+            count++;
+        }
+        if (parts == null || count != parts.size()) {
+            send(exchange, 400, "<Error><Code>InvalidPart</Code></Error>");
+            return;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        parts.values().forEach(content::writeBytes);
+        objects.put(key, new StoredObject(content.toByteArray(), headers(exchange), Instant.now()));
+        send(exchange, 200, "<CompleteMultipartUploadResult></CompleteMultipartUploadResult>");
+    }
+
+    private static Map<String, String> headers(HttpExchange exchange) {
+        Map<String, String> headers = new HashMap<>();
+        for (String name : Set.of("Content-Type", "Cache-Control")) {
+            String value = exchange.getRequestHeaders().getFirst(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return headers;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    record StoredObject(byte[] content, Map<String, String> headers, Instant lastModified) {
+    }
+}
@@ -10,8 +10,18 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Stream;
 
 @ActiveProfiles("test")
 @SpringBootTest
@@ -31,4 +41,91 @@ class FileSystemStorageServiceTest {
         }
 
     }
+
+    @Test
+    void handleFileUpload_sameContent_shouldBeStoredOnce() throws IOException {
+        byte[] content = png("the same picture");
+        String first = fileSystemStorageService.handleFileUpload(
+                new MockMultipartFile("image", "photo.PNG", MediaType.IMAGE_PNG_VALUE, content));
+        String second = fileSystemStorageService.handleFileUpload(
+                new MockMultipartFile("image", "other.png", MediaType.IMAGE_PNG_VALUE, content));
+        String different = fileSystemStorageService.handleFileUpload(
+                new MockMultipartFile("image", "photo.PNG", MediaType.IMAGE_PNG_VALUE, png("another picture")));
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertNotEquals(first, different);
+        Assertions.assertTrue(first.matches("/upload/[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.png"), first);
+        Path file = storedFile(first);
+        Assertions.assertArrayEquals(content, Files.readAllBytes(file));
+        try (Stream<Path> files = Files.list(file.getParent())) {
+            Assertions.assertEquals(1, files.count());
+        }
+        Files.delete(file);
+        Files.delete(storedFile(different));
+    }
+
+    @Test
+    void releaseFile_shouldDeleteFileUnlessStoredRecently() throws IOException {
+        String path = fileSystemStorageService.handleFileUpload(
+                new MockMultipartFile("image", "released.png", MediaType.IMAGE_PNG_VALUE, png("released")));
+        Path file = storedFile(path);
+
+        fileSystemStorageService.releaseFile(path);
+        Assertions.assertTrue(Files.exists(file));
+
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        fileSystemStorageService.releaseFile(path);
+        Assertions.assertFalse(Files.exists(file));
+        // the default image is not a stored file
+        fileSystemStorageService.releaseFile(fileSystemStorageService.getDefaultFilePath());
+    }
+
+    @Test
+    void handleStreamUpload_shouldNameFileByImageType() throws IOException {
+        byte[] content = png("streamed picture");
+        String path = fileSystemStorageService.handleStreamUpload(new ByteArrayInputStream(content));
+
+        Assertions.assertTrue(path.matches("/upload/[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.png"), path);
+        Assertions.assertTrue(fileSystemStorageService.isStoredFile(path));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(storedFile(path)));
+        Files.delete(storedFile(path));
+        Assertions.assertFalse(fileSystemStorageService.isStoredFile(path));
+        Assertions.assertFalse(fileSystemStorageService.isStoredFile("/upload/../application-test.yml"));
+        Assertions.assertFalse(fileSystemStorageService.isStoredFile(fileSystemStorageService.getDefaultFilePath()));
+    }
+
+    @Test
+    void handleStreamUpload_shouldRejectFilesThatAreNotImagesOrTooLarge() throws IOException {
+        Assertions.assertThrows(InvalidImageException.class, () -> fileSystemStorageService.handleStreamUpload(
+                new ByteArrayInputStream("<html>not an image</html>".getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertThrows(InvalidImageException.class, () -> fileSystemStorageService.handleStreamUpload(
+                new ByteArrayInputStream(new byte[0])));
+        // a JPEG header followed by more bytes than allowed, the upload is stopped without reading all of them
+        InputStream endless = new SequenceInputStream(
+                new ByteArrayInputStream(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0}),
+                new InputStream() {
+                    @Override
+                    public int read() {
+                        return 0;
+                    }
+                });
+        Assertions.assertThrows(InvalidImageException.class, () -> fileSystemStorageService.handleStreamUpload(endless));
+        // no temporary files are left behind
+        try (Stream<Path> files = Files.list(Path.of(fileSystemStorageService.getRootLocation()))) {
+            Assertions.assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(".upload-")));
+        }
+    }
+
+    private static byte[] png(String content) {
+        byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        byte[] png = Arrays.copyOf(signature, signature.length + bytes.length);
+        System.arraycopy(bytes, 0, png, signature.length, bytes.length);
+        return png;
+    }
+
+    private Path storedFile(String path) {
+        String relativePath = path.substring(fileSystemStorageService.getImageDirectory().length() + 1);
+        return Path.of(fileSystemStorageService.getRootLocation()).resolve(relativePath);
+    }
 }
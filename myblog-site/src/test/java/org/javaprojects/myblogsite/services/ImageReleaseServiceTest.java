@@ -0,0 +1,65 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ImageReleaseServiceTest {
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final StorageService storageService = mock(StorageService.class);
+    private final ImageVariantService imageVariantService = mock(ImageVariantService.class);
+    private final ImageReleaseService imageReleaseService =
+            new ImageReleaseService(postRepository, storageService, imageVariantService);
+
+    @BeforeEach
+    void setUp() {
+        when(storageService.getImageDirectory()).thenReturn("/upload");
+    }
+
+    @Test
+    void release_shouldKeepImageSharedWithOtherPostsOrNotStored() {
+        when(postRepository.countPostsByImageUrl("/upload/ab/cd/shared.jpg")).thenReturn(1L);
+
+        imageReleaseService.release("/upload/ab/cd/shared.jpg");
+        imageReleaseService.release("/static/images/default_image.jpg");
+
+        verify(storageService, never()).releaseFile(anyString());
+        verify(postRepository, never()).deferImageRelease(anyString(), any());
+    }
+
+    @Test
+    void release_shouldDeleteImageWithVariants() {
+        when(storageService.releaseFile("/upload/ef/01/own.jpg")).thenReturn(true);
+        when(imageVariantService.imageReleased("/upload/ef/01/own.jpg")).thenReturn(true);
+
+        imageReleaseService.release("/upload/ef/01/own.jpg");
+
+        verify(imageVariantService).imageReleased("/upload/ef/01/own.jpg");
+        verify(postRepository, never()).deferImageRelease(anyString(), any());
+    }
+
+    @Test
+    void release_ofImageKeptByStorage_shouldBeRetriedLater() {
+        when(storageService.releaseFile("/upload/ef/01/new.jpg")).thenReturn(false, true);
+        when(imageVariantService.imageReleased("/upload/ef/01/new.jpg")).thenReturn(true);
+
+        imageReleaseService.release("/upload/ef/01/new.jpg");
+
+        verify(imageVariantService, never()).imageReleased(anyString());
+        verify(postRepository).deferImageRelease(eq("/upload/ef/01/new.jpg"), any(LocalDateTime.class));
+
+        when(postRepository.findDeferredImageReleases(any())).thenReturn(List.of("/upload/ef/01/new.jpg"));
+        imageReleaseService.retryDeferredReleases();
+
+        verify(postRepository).deleteDeferredImageRelease("/upload/ef/01/new.jpg");
+        verify(imageVariantService).imageReleased("/upload/ef/01/new.jpg");
+        verify(postRepository, times(1)).deferImageRelease(anyString(), any());
+    }
+}
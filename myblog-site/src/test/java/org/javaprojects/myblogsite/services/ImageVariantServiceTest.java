@@ -0,0 +1,123 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.ImageVariantProperties;
+import org.javaprojects.myblogsite.dto.FeedPostDto;
+import org.javaprojects.myblogsite.dto.ImageVariant;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ImageVariantServiceTest {
+    private static final String IMAGE_URL = "/upload/ab/cd/abcd.jpg";
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final StorageService storageService = mock(StorageService.class);
+    private final ImageVariantService imageVariantService = new ImageVariantService(postRepository, storageService,
+            new ImageVariantProperties(List.of(640, 160, 320, 2000), 1, 10, 0.8f, 1_100_000), Runnable::run);
+
+    @Test
+    void imageUploaded_shouldStoreVariantsNarrowerThanImage() throws IOException {
+        when(storageService.getImageDirectory()).thenReturn("/upload");
+        when(storageService.readFile(IMAGE_URL)).thenReturn(new ByteArrayInputStream(jpeg(1200, 900)));
+
+        imageVariantService.imageUploaded(IMAGE_URL);
+
+        ArgumentCaptor<byte[]> content = ArgumentCaptor.forClass(byte[].class);
+        verify(storageService).storeFile(eq("/upload/ab/cd/abcd-160w.jpg"), content.capture());
+        verify(storageService).storeFile(eq("/upload/ab/cd/abcd-320w.jpg"), any());
+        verify(storageService).storeFile(eq("/upload/ab/cd/abcd-640w.jpg"), any());
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(content.getValue()));
+        assertEquals(160, thumbnail.getWidth());
+        assertEquals(120, thumbnail.getHeight());
+        verify(postRepository).saveImageVariants(IMAGE_URL, List.of(
+                new ImageVariant(160, "image/jpeg", "/upload/ab/cd/abcd-160w.jpg"),
+                new ImageVariant(320, "image/jpeg", "/upload/ab/cd/abcd-320w.jpg"),
+                new ImageVariant(640, "image/jpeg", "/upload/ab/cd/abcd-640w.jpg")));
+    }
+
+    @Test
+    void imageUploaded_withImageOverPixelBudget_shouldNotBeResized() throws IOException {
+        when(storageService.getImageDirectory()).thenReturn("/upload");
+        when(storageService.readFile(IMAGE_URL)).thenReturn(new ByteArrayInputStream(jpeg(1200, 1000)));
+
+        imageVariantService.imageUploaded(IMAGE_URL);
+
+        verify(storageService, never()).storeFile(anyString(), any());
+        verify(postRepository, never()).saveImageVariants(anyString(), any());
+    }
+
+    @Test
+    void imageUploaded_defaultImageOrKnownImage_shouldNotBeResized() {
+        when(storageService.getImageDirectory()).thenReturn("/upload");
+        when(postRepository.findImageVariants(List.of(IMAGE_URL)))
+                .thenReturn(Map.of(IMAGE_URL, List.of(new ImageVariant(160, "image/jpeg", "/upload/x-160w.jpg"))));
+
+        imageVariantService.imageUploaded("/static/images/default_image.jpg");
+        imageVariantService.imageUploaded(IMAGE_URL);
+
+        verify(storageService, never()).readFile(anyString());
+        verify(postRepository, never()).saveImageVariants(anyString(), any());
+    }
+
+    @Test
+    void imageReleased_withVariantKeptByStorage_shouldKeepVariantsForRetry() {
+        when(postRepository.findImageVariants(List.of(IMAGE_URL))).thenReturn(Map.of(IMAGE_URL, List.of(
+                new ImageVariant(160, "image/jpeg", "/upload/ab/cd/abcd-160w.jpg"),
+                new ImageVariant(320, "image/jpeg", "/upload/ab/cd/abcd-320w.jpg"))));
+        when(storageService.releaseFile("/upload/ab/cd/abcd-160w.jpg")).thenReturn(true);
+        when(storageService.releaseFile("/upload/ab/cd/abcd-320w.jpg")).thenReturn(false, true);
+
+        assertFalse(imageVariantService.imageReleased(IMAGE_URL));
+        verify(postRepository, never()).deleteImageVariants(anyString());
+
+        assertTrue(imageVariantService.imageReleased(IMAGE_URL));
+        verify(postRepository).deleteImageVariants(IMAGE_URL);
+    }
+
+    @Test
+    void setImageVariants_shouldSetSrcsetOfPostsWithVariants() {
+        when(storageService.getImageDirectory()).thenReturn("/upload");
+        when(postRepository.findImageVariants(List.of(IMAGE_URL))).thenReturn(Map.of(IMAGE_URL, List.of(
+                new ImageVariant(160, "image/jpeg", "/upload/ab/cd/abcd-160w.jpg"),
+                new ImageVariant(160, "image/webp", "/upload/ab/cd/abcd-160w.webp"),
+                new ImageVariant(320, "image/jpeg", "/upload/ab/cd/abcd-320w.jpg"))));
+        FeedPostDto post = new FeedPostDto();
+        post.setImageUrl(IMAGE_URL);
+        FeedPostDto postWithDefaultImage = new FeedPostDto();
+        postWithDefaultImage.setImageUrl("/static/images/default_image.jpg");
+
+        imageVariantService.setImageVariants(List.of(post, postWithDefaultImage));
+
+        assertEquals("/upload/ab/cd/abcd-160w.jpg 160w, /upload/ab/cd/abcd-320w.jpg 320w", post.getImageSrcset());
+        assertEquals("/upload/ab/cd/abcd-160w.webp 160w", post.getImageWebpSrcset());
+        assertNull(postWithDefaultImage.getImageSrcset());
+    }
+
+    private static byte[] jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,66 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+class LikeCounterServiceTest {
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final LikeCounterService likeCounterService = new LikeCounterService(postRepository);
+
+    @Test
+    void addLike_shouldReturnLiveCountWithoutWritingToDatabase() {
+        when(postRepository.getLikesNumberByPostId(1L)).thenReturn(10L);
+
+        assertEquals(11, likeCounterService.addLike(1L));
+        assertEquals(12, likeCounterService.addLike(1L));
+        assertEquals(12, likeCounterService.getLikes(1L));
+        assertEquals(2, likeCounterService.getPendingLikes());
+        verify(postRepository, never()).addLike(anyLong());
+        verify(postRepository, never()).addLikes(anyMap());
+    }
+
+    @Test
+    void flush_shouldWriteAccumulatedLikesInOneBatch() {
+        likeCounterService.addLike(1L);
+        likeCounterService.addLike(1L);
+        likeCounterService.addLike(2L);
+
+        likeCounterService.flush();
+
+        verify(postRepository).addLikes(Map.of(1L, 2L, 2L, 1L));
+        assertEquals(0, likeCounterService.getPendingLikes());
+        assertEquals(2, likeCounterService.getLikes(1L));
+    }
+
+    @Test
+    void flush_whenWriteFails_shouldKeepLikesForNextFlush() {
+        likeCounterService.addLike(1L);
+        doThrow(new IllegalStateException("database is down")).when(postRepository).addLikes(anyMap());
+
+        likeCounterService.flush();
+
+        assertEquals(1, likeCounterService.getPendingLikes());
+        assertEquals(1, likeCounterService.getLikes(1L));
+    }
+
+    @Test
+    void flush_shouldDropCountersOfPostsWithoutNewLikes() {
+        when(postRepository.getLikesNumberByPostId(1L)).thenReturn(10L, 11L);
+        likeCounterService.addLike(1L);
+
+        likeCounterService.flush();
+        assertEquals(11, likeCounterService.getLikes(1L));
+        likeCounterService.flush();
+
+        // the counter is gone, the count is read from the database again
+        assertEquals(11, likeCounterService.getLikes(1L));
+        assertEquals(12, likeCounterService.addLike(1L));
+        verify(postRepository, times(3)).getLikesNumberByPostId(1L);
+    }
+}
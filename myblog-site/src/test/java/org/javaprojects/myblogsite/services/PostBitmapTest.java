@@ -0,0 +1,87 @@
+package org.javaprojects.myblogsite.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostBitmapTest {
+
+    @Test
+    void addAndRemove_shouldSwitchContainersAndKeepValues() {
+        PostBitmap bitmap = new PostBitmap();
+        for (int value = 0; value < 10_000; value++) {
+            assertTrue(bitmap.add(value));
+        }
+        assertFalse(bitmap.add(5));
+        assertEquals(10_000, bitmap.cardinality());
+        for (int value = 0; value < 10_000; value += 2) {
+            assertTrue(bitmap.remove(value));
+        }
+        assertFalse(bitmap.remove(0));
+        assertEquals(5_000, bitmap.cardinality());
+        assertTrue(bitmap.contains(9_999));
+        assertFalse(bitmap.contains(9_998));
+        assertEquals(9_997, bitmap.previousValue(9_998));
+        assertEquals(1, bitmap.nextValue(0));
+        assertEquals(-1, bitmap.nextValue(10_000));
+    }
+
+    @Test
+    void operations_shouldMatchSortedSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            // sparse and dense chunks, so both kinds of containers meet each other
+            int range = round % 2 == 0 ? 300_000 : 70_000;
+            TreeSet<Integer> leftValues = new TreeSet<>();
+            TreeSet<Integer> rightValues = new TreeSet<>();
+            PostBitmap left = fill(random, range, leftValues);
+            PostBitmap right = fill(random, range, rightValues);
+
+            TreeSet<Integer> intersection = new TreeSet<>(leftValues);
+            intersection.retainAll(rightValues);
+            TreeSet<Integer> union = new TreeSet<>(leftValues);
+            union.addAll(rightValues);
+            assertEquals(List.copyOf(intersection), values(left.and(right)));
+            assertEquals(List.copyOf(union), values(left.or(right)));
+            assertEquals(union.size(), left.or(right).cardinality());
+
+            for (int i = 0; i < 200; i++) {
+                int from = random.nextInt(range + 10);
+                assertEquals(orMinusOne(leftValues.floor(from)), left.previousValue(from));
+                assertEquals(orMinusOne(leftValues.ceiling(from)), left.nextValue(from));
+            }
+        }
+    }
+
+    private static PostBitmap fill(Random random, int range, TreeSet<Integer> values) {
+        PostBitmap bitmap = new PostBitmap();
+        int count = random.nextInt(range / 2);
+        for (int i = 0; i < count; i++) {
+            int value = random.nextInt(range);
+            assertEquals(values.add(value), bitmap.add(value));
+        }
+        for (int i = 0; i < count / 4; i++) {
+            int value = random.nextInt(range);
+            assertEquals(values.remove(value), bitmap.remove(value));
+        }
+        assertEquals(values.size(), bitmap.cardinality());
+        return bitmap;
+    }
+
+    private static List<Integer> values(PostBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        return values;
+    }
+
+    private static int orMinusOne(Integer value) {
+        return value == null ? -1 : value;
+    }
+}
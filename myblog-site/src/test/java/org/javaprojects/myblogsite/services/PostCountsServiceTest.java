@@ -0,0 +1,89 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class PostCountsServiceTest {
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final TagIndexService tagIndexService = new TagIndexService(postRepository);
+    private final PostCountsService postCountsService = new PostCountsService(postRepository, tagIndexService);
+
+    @Test
+    void getTotalPosts_shouldCountOnceAndFollowChanges() {
+        when(postRepository.getTotalPostsCount()).thenReturn(5L);
+        when(postRepository.getTagPostCounts()).thenReturn(Map.of("cats", 2L));
+
+        assertEquals(5, postCountsService.getTotalPosts());
+        postCountsService.postCreated(Set.of("cats", "dogs"));
+        postCountsService.postDeleted(Set.of("cats"));
+        postCountsService.postCreated(Set.of("dogs"));
+        postCountsService.tagsChanged(Set.of("dogs"), Set.of("birds"));
+
+        assertEquals(6, postCountsService.getTotalPosts());
+        assertEquals(2, tagIndexService.getPostCount("cats"));
+        assertEquals(1, tagIndexService.getPostCount("dogs"));
+        assertEquals(1, tagIndexService.getPostCount("birds"));
+        verify(postRepository, times(1)).getTotalPostsCount();
+    }
+
+    @Test
+    void reconcile_shouldRepairDriftedCounts() {
+        when(postRepository.getTotalPostsCount()).thenReturn(5L, 3L);
+        when(postRepository.getTagPostCounts()).thenReturn(Map.of("cats", 2L)).thenReturn(Map.of("cats", 1L));
+
+        postCountsService.getTotalPosts();
+        tagIndexService.getPostCount("cats");
+        postCountsService.reconcile();
+
+        assertEquals(3, postCountsService.getTotalPosts());
+        assertEquals(1, tagIndexService.getPostCount("cats"));
+    }
+
+    @Test
+    void reconcile_whenTagsChangeDuringQuery_shouldKeepCountsInMemory() {
+        when(postRepository.getTotalPostsCount()).thenReturn(5L);
+        when(postRepository.getTagPostCounts()).thenReturn(Map.of("cats", 2L)).thenAnswer(invocation -> {
+            postCountsService.tagsChanged(Set.of("cats"), Set.of("dogs"));
+            return Map.of("cats", 2L);
+        });
+        postCountsService.getTotalPosts();
+
+        postCountsService.reconcile();
+
+        assertEquals(1, tagIndexService.getPostCount("cats"));
+        assertEquals(1, tagIndexService.getPostCount("dogs"));
+    }
+
+    @Test
+    void reconcile_whenCommittedPostIsNotCountedYet_shouldKeepCountsInMemory() {
+        when(postRepository.getTotalPostsCount()).thenReturn(5L, 6L);
+        when(postRepository.getTagPostCounts()).thenReturn(Map.of("cats", 2L), Map.of("cats", 3L));
+        postCountsService.getTotalPosts();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            postCountsService.postCreated(Set.of("cats"));
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+
+            // the database already has the post, the memory will count it after the commit
+            postCountsService.reconcile();
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+            synchronizations.forEach(synchronization ->
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(6, postCountsService.getTotalPosts());
+        assertEquals(3, tagIndexService.getPostCount("cats"));
+    }
+}
@@ -0,0 +1,158 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.ImageProperties;
+import org.javaprojects.myblogsite.configuration.StorageProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3StorageServiceTest {
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private FakeS3Server server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new FakeS3Server("images");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void handleStreamUpload_smallImage_shouldBeStoredOnceByContent() throws IOException {
+        S3StorageService storageService = storageService(DataSize.ofMegabytes(10), null, Clock.systemUTC());
+        byte[] content = jpeg(100);
+
+        String first = storageService.handleStreamUpload(new ByteArrayInputStream(content));
+        String second = storageService.handleStreamUpload(new ByteArrayInputStream(content));
+
+        assertEquals(first, second);
+        assertTrue(first.matches("/upload/[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.jpg"), first);
+        FakeS3Server.StoredObject object = server.objects.get(first.substring(1));
+        assertArrayEquals(content, object.content());
+        assertEquals("image/jpeg", object.headers().get("Content-Type"));
+        assertTrue(object.headers().get("Cache-Control").contains("immutable"));
+        // both uploads tried to touch the stored object, only the first one had to put it
+        assertEquals(1, server.requests.stream().filter(request -> request.startsWith("PUT /")).count());
+        assertEquals(2, server.requests.stream().filter(request -> request.startsWith("PUT copy")).count());
+        assertTrue(storageService.isStoredFile(first));
+        try (InputStream stored = storageService.readFile(first)) {
+            assertArrayEquals(content, stored.readAllBytes());
+        }
+    }
+
+    @Test
+    void handleStreamUpload_largeImage_shouldBeUploadedInParts() {
+        S3StorageService storageService = storageService(DataSize.ofMegabytes(10), null, Clock.systemUTC());
+        byte[] content = jpeg(5 * 1024 + 500);
+
+        String path = storageService.handleStreamUpload(new ByteArrayInputStream(content));
+
+        assertArrayEquals(content, server.objects.get(path.substring(1)).content());
+        assertEquals("image/jpeg", server.objects.get(path.substring(1)).headers().get("Content-Type"));
+        assertEquals(6, server.requests.stream().filter(request -> request.contains("partNumber")).count());
+        // the temporary object is gone
+        assertEquals(1, server.objects.size(), server.objects.keySet().toString());
+        assertTrue(server.uploads.isEmpty());
+    }
+
+    @Test
+    void handleStreamUpload_tooLargeOrNotAnImage_shouldLeaveNothingBehind() {
+        S3StorageService storageService = storageService(DataSize.ofKilobytes(3), null, Clock.systemUTC());
+
+        assertThrows(InvalidImageException.class,
+                () -> storageService.handleStreamUpload(new ByteArrayInputStream(jpeg(4 * 1024))));
+        assertThrows(InvalidImageException.class,
+                () -> storageService.handleStreamUpload(new ByteArrayInputStream("<html></html>".getBytes())));
+
+        assertTrue(server.objects.isEmpty(), server.objects.keySet().toString());
+        assertTrue(server.uploads.isEmpty());
+    }
+
+    @Test
+    void releaseFile_shouldDeleteObjectUnlessStoredRecently() {
+        String path = storageService(DataSize.ofMegabytes(10), null, Clock.systemUTC())
+                .handleStreamUpload(new ByteArrayInputStream(jpeg(100)));
+
+        assertFalse(storageService(DataSize.ofMegabytes(10), null, Clock.systemUTC()).releaseFile(path));
+        assertTrue(server.objects.containsKey(path.substring(1)));
+
+        S3StorageService later = storageService(DataSize.ofMegabytes(10), null,
+                Clock.offset(Clock.systemUTC(), Duration.ofHours(1)));
+        assertTrue(later.releaseFile(path));
+        assertFalse(server.objects.containsKey(path.substring(1)));
+        assertFalse(later.isStoredFile(path));
+        assertThrows(StorageFileNotFoundException.class, () -> later.readFile(path));
+        // the default image is not a stored file
+        assertFalse(later.releaseFile("/static/images/default_image.jpg"));
+    }
+
+    @Test
+    void getReadUrl_shouldRedirectToPresignedUrlThatIsStableWithinWindow() throws Exception {
+        Instant now = Instant.parse("2025-03-01T10:10:00Z");
+        S3StorageService storageService = storageService(DataSize.ofMegabytes(10), null,
+                Clock.fixed(now, ZoneOffset.UTC));
+        byte[] content = jpeg(100);
+        String path = storageService.handleStreamUpload(new ByteArrayInputStream(content));
+
+        StorageService.ReadUrl readUrl = storageService.getReadUrl(path).orElseThrow();
+        StorageService.ReadUrl sameWindow = storageService(DataSize.ofMegabytes(10), null,
+                Clock.fixed(now.plusSeconds(600), ZoneOffset.UTC)).getReadUrl(path).orElseThrow();
+
+        assertTrue(readUrl.url().toString().startsWith(server.endpoint() + "/images" + path + "?"), readUrl.url().toString());
+        assertTrue(readUrl.url().getQuery().contains("X-Amz-Date=20250301T100000Z"), readUrl.url().toString());
+        assertTrue(readUrl.url().getQuery().contains("X-Amz-Signature="));
+        assertEquals(readUrl.url(), sameWindow.url());
+        assertEquals(Duration.ofMinutes(20), readUrl.maxAge());
+        HttpResponse<byte[]> response = HTTP_CLIENT.send(HttpRequest.newBuilder(readUrl.url()).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertArrayEquals(content, response.body());
+        assertThrows(StorageFileNotFoundException.class, () -> storageService.getReadUrl("/upload/../secret.jpg"));
+        assertThrows(StorageFileNotFoundException.class, () -> storageService.getReadUrl("/upload/.upload-1"));
+    }
+
+    @Test
+    void getReadUrl_withPublicUrl_shouldRedirectToIt() {
+        S3StorageService storageService = storageService(DataSize.ofMegabytes(10), "https://cdn.example.com/",
+                Clock.systemUTC());
+
+        StorageService.ReadUrl readUrl = storageService.getReadUrl("/upload/ab/cd/abcd.jpg").orElseThrow();
+
+        assertEquals(URI.create("https://cdn.example.com/upload/ab/cd/abcd.jpg"), readUrl.url());
+    }
+
+    private S3StorageService storageService(DataSize maxFileSize, String publicUrl, Clock clock) {
+        StorageProperties.S3 properties = new StorageProperties.S3(server.endpoint(), "us-east-1", "images",
+                "access", "secret", true, DataSize.ofKilobytes(1), 2, Duration.ofHours(1), publicUrl);
+        ImageProperties imageProperties = new ImageProperties(null, "/static/images/default_image.jpg", "/upload",
+                maxFileSize);
+        return new S3StorageService(properties, imageProperties, HTTP_CLIENT, clock);
+    }
+
+    // random bytes after a JPEG signature, a different image every time
+    private static byte[] jpeg(int size) {
+        byte[] content = new byte[size];
+        new Random().nextBytes(content);
+        byte[] signature = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0};
+        System.arraycopy(signature, 0, content, 0, signature.length);
+        return content;
+    }
+}
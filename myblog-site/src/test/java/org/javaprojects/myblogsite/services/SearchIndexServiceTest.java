@@ -0,0 +1,171 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.configuration.SearchProperties;
+import org.javaprojects.myblogsite.models.Post;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SearchIndexServiceTest {
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final SearchIndexService searchIndexService = new SearchIndexService(postRepository,
+            new SearchProperties(""));
+
+    @Test
+    void rebuild_shouldIndexAllPostsOfDatabase() {
+        doAnswer(invocation -> {
+            Consumer<Post> consumer = invocation.getArgument(0);
+            consumer.accept(post(1, "Spring Boot caching", "How to cache pages", "Caffeine keeps pages in memory"));
+            consumer.accept(post(2, "Gardening", "Tomatoes", "Water them every day"));
+            return null;
+        }).when(postRepository).forEachPost(any());
+
+        searchIndexService.rebuild();
+
+        assertEquals(List.of(1L), searchIndexService.search("CACHING", 0, 10).postIds());
+        assertEquals(List.of(2L), searchIndexService.search("tomatoes!", 0, 10).postIds());
+        assertEquals(0, searchIndexService.search("the", 0, 10).total());
+    }
+
+    @Test
+    void search_shouldRankTitleMatchesAndRareTermsHigher() {
+        searchIndexService.postIndexed(post(1, "Notes", "Misc", "java java java and some h2"));
+        searchIndexService.postIndexed(post(2, "Java records", "Misc", "records are short"));
+        searchIndexService.postIndexed(post(3, "Python", "Misc", "nothing about it"));
+
+        SearchIndexService.SearchHits hits = searchIndexService.search("java h2", 0, 10);
+
+        assertEquals(2, hits.total());
+        assertEquals(List.of(1L, 2L), hits.postIds());
+        assertEquals(List.of(2L), searchIndexService.search("java", 0, 1).postIds());
+    }
+
+    @Test
+    void search_shouldPaginateResults() {
+        for (long id = 1; id <= 25; id++) {
+            searchIndexService.postIndexed(post(id, "Post", "About spring", "content"));
+        }
+
+        SearchIndexService.SearchHits first = searchIndexService.search("spring", 0, 10);
+        SearchIndexService.SearchHits last = searchIndexService.search("spring", 20, 10);
+
+        assertEquals(25, first.total());
+        assertEquals(10, first.postIds().size());
+        // equal scores, the newest posts first
+        assertEquals(25L, first.postIds().get(0));
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), last.postIds());
+        assertEquals(List.of(), searchIndexService.search("spring", 30, 10).postIds());
+        assertEquals(List.of(), searchIndexService.search("spring", 2_147_483_650L, 10).postIds());
+        assertEquals(last.postIds(), searchIndexService.search("spring", 20, Integer.MAX_VALUE).postIds());
+    }
+
+    @Test
+    void postIndexedAndRemoved_shouldUpdateIndexIncrementally() {
+        searchIndexService.postIndexed(post(1, "Kotlin", "Misc", "coroutines"));
+        searchIndexService.postIndexed(post(1, "Java", "Misc", "virtual threads"));
+
+        assertEquals(0, searchIndexService.search("coroutines", 0, 10).total());
+        assertEquals(List.of(1L), searchIndexService.search("threads", 0, 10).postIds());
+
+        searchIndexService.postRemoved(1);
+        assertEquals(0, searchIndexService.search("threads", 0, 10).total());
+    }
+
+    @Test
+    void postRemoved_shouldCompactIndexAndKeepLivePosts() {
+        for (long id = 1; id <= 3000; id++) {
+            searchIndexService.postIndexed(post(id, "Post " + id, "common", id % 2 == 0 ? "even" : "odd"));
+        }
+        for (long id = 1; id <= 2000; id++) {
+            searchIndexService.postRemoved(id);
+        }
+
+        assertEquals(1000, searchIndexService.search("common", 0, 10).total());
+        assertEquals(500, searchIndexService.search("even", 0, 10).total());
+        assertEquals(List.of(3000L), searchIndexService.search("3000", 0, 10).postIds());
+    }
+
+    @Test
+    void open_shouldLoadCheckpointAndCatchUpWithDatabase(@TempDir Path indexDirectory) {
+        SearchIndexService written = new SearchIndexService(postRepository,
+                new SearchProperties(indexDirectory.toString()));
+        written.postIndexed(post(1, "Spring Boot caching", "How to cache pages", "Caffeine keeps pages in memory"));
+        written.postIndexed(post(2, "Gardening", "Tomatoes", "Water them every day"));
+        written.postIndexed(post(3, "Java records", "Misc", "records are short"));
+        written.checkpoint();
+        assertTrue(Files.exists(indexDirectory.resolve("posts.segment")));
+        // changed after the checkpoint: post 2 is edited, post 3 is removed, post 4 is created,
+        // so the database has as many posts as the checkpoint
+        doAnswer(invocation -> {
+            Consumer<Post> consumer = invocation.getArgument(1);
+            consumer.accept(post(2, "Gardening", "Cucumbers", "Water them every day"));
+            consumer.accept(post(4, "Java streams", "Misc", "streams are lazy"));
+            return null;
+        }).when(postRepository).forEachPost(any(LocalDateTime.class), any());
+        doAnswer(invocation -> {
+            LongConsumer consumer = invocation.getArgument(0);
+            consumer.accept(1);
+            consumer.accept(2);
+            consumer.accept(4);
+            return null;
+        }).when(postRepository).forEachPostId(any());
+
+        SearchIndexService opened = new SearchIndexService(postRepository,
+                new SearchProperties(indexDirectory.toString()));
+        assertTrue(opened.open());
+
+        verify(postRepository, never()).forEachPost(any());
+        assertEquals(List.of(1L), opened.search("caching", 0, 10).postIds());
+        assertEquals(0, opened.search("tomatoes", 0, 10).total());
+        assertEquals(List.of(2L), opened.search("cucumbers", 0, 10).postIds());
+        assertEquals(List.of(4L), opened.search("java", 0, 10).postIds());
+        assertEquals(0, opened.search("records", 0, 10).total());
+    }
+
+    @Test
+    void checkpoint_shouldMergeChangesIntoNewSegment(@TempDir Path indexDirectory) {
+        SearchIndexService persisted = new SearchIndexService(postRepository,
+                new SearchProperties(indexDirectory.toString()));
+        for (long id = 1; id <= 25; id++) {
+            persisted.postIndexed(post(id, "Post", "About spring", id % 5 == 0 ? "java" : "content"));
+        }
+        persisted.checkpoint();
+        persisted.postIndexed(post(5, "Post", "About spring", "kotlin"));
+        persisted.postRemoved(10);
+        persisted.postIndexed(post(26, "Post", "About spring", "java"));
+
+        assertEquals(List.of(26L, 25L, 20L, 15L), persisted.search("java", 0, 10).postIds());
+        persisted.checkpoint();
+
+        assertEquals(25, persisted.search("spring", 0, 30).total());
+        assertEquals(List.of(26L, 25L, 20L, 15L), persisted.search("java", 0, 10).postIds());
+        assertEquals(List.of(5L), persisted.search("kotlin", 0, 10).postIds());
+    }
+
+    @Test
+    void open_shouldReportMissingOrBrokenSegment(@TempDir Path indexDirectory) throws Exception {
+        SearchIndexService searchIndexService = new SearchIndexService(postRepository,
+                new SearchProperties(indexDirectory.toString()));
+        assertFalse(searchIndexService.open());
+
+        Files.writeString(indexDirectory.resolve("posts.segment"), "not a segment");
+        assertFalse(searchIndexService.open());
+    }
+
+    private static Post post(long id, String title, String description, String content) {
+        return new Post(id, title, description, content, "/images/default_image.jpg", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,88 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.dto.PageCursor;
+import org.javaprojects.myblogsite.dto.PostTags;
+import org.javaprojects.myblogsite.dto.TagFilter;
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TagFilterServiceTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 12, 0);
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final TagFilterService tagFilterService = new TagFilterService(postRepository);
+
+    @Test
+    void findPostIds_shouldMatchAllOrAnyTagsNewestFirst() {
+        tagFilterService.postCreated(1, START, Set.of("java", "spring"));
+        tagFilterService.postCreated(2, START.plusMinutes(1), Set.of("java"));
+        tagFilterService.postCreated(3, START.plusMinutes(2), Set.of("spring", "h2"));
+        tagFilterService.postCreated(4, START.plusMinutes(3), Set.of("java", "spring", "h2"));
+
+        TagFilter all = new TagFilter(Set.of("java", "spring"), TagFilter.Mode.ALL);
+        TagFilter any = new TagFilter(Set.of("java", "h2"), TagFilter.Mode.ANY);
+        assertEquals(List.of(4L, 1L), tagFilterService.findPostIds(all, null, 10));
+        assertEquals(2, tagFilterService.countPosts(all));
+        assertEquals(List.of(4L, 3L, 2L, 1L), tagFilterService.findPostIds(any, null, 10));
+        assertEquals(0, tagFilterService.countPosts(new TagFilter(Set.of("java", "go"), TagFilter.Mode.ALL)));
+        assertEquals(List.of(4L, 3L),
+                tagFilterService.findPostIds(new TagFilter(Set.of("h2", "go"), TagFilter.Mode.ANY), null, 10));
+    }
+
+    @Test
+    void findPostIds_shouldPageForwardAndBackwardFromCursor() {
+        for (int id = 1; id <= 10; id++) {
+            tagFilterService.postCreated(id, START.plusMinutes(id), id % 2 == 0 ? Set.of("even") : Set.of("odd"));
+        }
+        TagFilter even = TagFilter.of("even");
+
+        List<Long> first = tagFilterService.findPostIds(even, null, 2);
+        assertEquals(List.of(10L, 8L), first);
+        List<Long> second = tagFilterService.findPostIds(even, PageCursor.next(START.plusMinutes(8), 8), 2);
+        assertEquals(List.of(6L, 4L), second);
+        assertEquals(List.of(10L, 8L),
+                tagFilterService.findPostIds(even, PageCursor.previous(START.plusMinutes(6), 6), 5));
+        // the post of the cursor is gone, the page starts at its time
+        tagFilterService.postRemoved(6);
+        assertEquals(List.of(4L, 2L), tagFilterService.findPostIds(even, PageCursor.next(START.plusMinutes(6), 6), 5));
+    }
+
+    @Test
+    void postCreated_shouldPlaceOlderPostsByTimeAndKeepTagChanges() {
+        tagFilterService.postCreated(10, START.plusMinutes(10), Set.of("news"));
+        tagFilterService.postCreated(20, START.plusMinutes(20), Set.of("news"));
+        // imported posts are older than the newest one
+        tagFilterService.postCreated(5, START.plusMinutes(15), Set.of("news"));
+        tagFilterService.postCreated(6, START.plusMinutes(5), Set.of("old"));
+        tagFilterService.tagsChanged(6, Set.of("old"), Set.of("news"));
+        tagFilterService.tagsChanged(10, Set.of("news"), Set.of("old"));
+
+        assertEquals(List.of(20L, 5L, 6L), tagFilterService.findPostIds(TagFilter.of("news"), null, 10));
+        assertEquals(List.of(10L), tagFilterService.findPostIds(TagFilter.of("old"), null, 10));
+    }
+
+    @Test
+    void rebuild_shouldIndexTagsOfAllPostsOfDatabase() {
+        doAnswer(invocation -> {
+            Consumer<PostTags> consumer = invocation.getArgument(0);
+            consumer.accept(new PostTags(1, START, Set.of("java")));
+            consumer.accept(new PostTags(2, START.plusMinutes(1), Set.of()));
+            consumer.accept(new PostTags(3, START.plusMinutes(2), Set.of("java", "h2")));
+            return null;
+        }).when(postRepository).forEachPostTags(any());
+        tagFilterService.postCreated(99, START, Set.of("stale"));
+
+        tagFilterService.rebuild();
+
+        assertEquals(List.of(3L, 1L), tagFilterService.findPostIds(TagFilter.of("java"), null, 10));
+        assertEquals(0, tagFilterService.countPosts(TagFilter.of("stale")));
+    }
+}
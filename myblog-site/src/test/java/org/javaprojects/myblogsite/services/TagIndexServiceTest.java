@@ -0,0 +1,41 @@
+package org.javaprojects.myblogsite.services;
+
+import org.javaprojects.myblogsite.repositories.PostRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class TagIndexServiceTest {
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final TagIndexService tagIndexService = new TagIndexService(postRepository);
+
+    @Test
+    void getAllTags_shouldLoadTagsOnceAndServeThemFromMemory() {
+        when(postRepository.getTagPostCounts()).thenReturn(Map.of("cats", 2L, "dogs", 1L));
+
+        assertEquals(List.of("cats", "dogs"), List.copyOf(tagIndexService.getAllTags()));
+        assertEquals(List.of("cats", "dogs"), List.copyOf(tagIndexService.getAllTags()));
+        assertEquals(2, tagIndexService.getPostCount("cats"));
+        verify(postRepository, times(1)).getTagPostCounts();
+    }
+
+    @Test
+    void tagsAddedAndRemoved_shouldMaintainPostCounts() {
+        when(postRepository.getTagPostCounts()).thenReturn(Map.of("cats", 1L));
+        tagIndexService.reload();
+
+        tagIndexService.tagsAdded(Set.of("cats", "birds"));
+        assertEquals(Set.of("birds", "cats"), tagIndexService.getAllTags());
+        assertEquals(2, tagIndexService.getPostCount("cats"));
+
+        tagIndexService.tagsRemoved(Set.of("cats", "birds"));
+        tagIndexService.tagsRemoved(Set.of("cats"));
+        assertEquals(Set.of(), tagIndexService.getAllTags());
+        assertEquals(0, tagIndexService.getPostCount("cats"));
+    }
+}